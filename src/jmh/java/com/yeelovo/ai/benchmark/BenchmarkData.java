@@ -0,0 +1,37 @@
+package com.yeelovo.ai.benchmark;
+
+import com.yeelovo.ai.model.openai.ChatRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试共用的请求数据
+ */
+public final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * 构造一段多轮对话：一条系统消息，之后用户和助手消息交替，中英文混合
+     */
+    public static ChatRequest conversation(int messageCount) {
+        List<ChatRequest.Message> messages = new ArrayList<>(messageCount);
+        messages.add(new ChatRequest.Message("system", "You are a helpful assistant. 请用简洁的中文回答。"));
+        for (int i = 1; i < messageCount; i++) {
+            boolean user = i % 2 == 1;
+            String content = user
+                    ? "第" + i + "个问题：How does the proxy handle \"streaming\" responses when the client disconnects?"
+                    : "第" + i + "个回答：客户端断开后，代理会取消上游订阅并归还准入名额。\nThe upstream connection is closed so no further tokens are generated.";
+            messages.add(new ChatRequest.Message(user ? "user" : "assistant", content));
+        }
+        return ChatRequest.builder()
+                       .model("gpt-4o")
+                       .messages(messages)
+                       .temperature(0.7)
+                       .max_tokens(512)
+                       .stream(true)
+                       .build();
+    }
+}
@@ -0,0 +1,23 @@
+package com.yeelovo.ai.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 基准测试入口
+ * 接受JMH标准命令行参数，始终附加GC分析器，报告每次操作的分配字节数（gc.alloc.rate.norm）
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+                                  .parent(commandLine)
+                                  .addProfiler(GCProfiler.class)
+                                  .build();
+        new Runner(options).run();
+    }
+}
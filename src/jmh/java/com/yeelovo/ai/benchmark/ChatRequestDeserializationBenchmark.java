@@ -0,0 +1,49 @@
+package com.yeelovo.ai.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yeelovo.ai.model.openai.ChatRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChatRequest 反序列化，覆盖单轮请求到前端重发完整历史的超长请求
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatRequestDeserializationBenchmark {
+
+    @Param({"2", "50", "2000"})
+    private int messages;
+
+    private ObjectMapper objectMapper;
+
+    private byte[] body;
+
+    @Setup
+    public void setup() throws Exception {
+        // 与Spring MVC消息转换器使用相同的默认配置
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        body = objectMapper.writeValueAsBytes(BenchmarkData.conversation(messages));
+    }
+
+    @Benchmark
+    public ChatRequest deserialize() throws Exception {
+        return objectMapper.readValue(body, ChatRequest.class);
+    }
+}
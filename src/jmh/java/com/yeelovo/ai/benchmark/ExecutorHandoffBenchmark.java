@@ -0,0 +1,94 @@
+package com.yeelovo.ai.benchmark;
+
+import com.yeelovo.ai.config.ThreadPoolConfig;
+import com.yeelovo.ai.monitor.ExecutorMonitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流式路径上的线程切换开销：
+ * 请求线程 -> streamTaskExecutor（订阅）-> boundedElastic（publishOn，每个数据块一次切换）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutorHandoffBenchmark {
+
+    // 模拟一次补全的数据块数
+    private static final int CHUNKS = 256;
+
+    private ThreadPoolTaskExecutor streamTaskExecutor;
+
+    @Setup
+    public void setup() {
+        // 与应用中的平台线程池配置一致
+        streamTaskExecutor = (ThreadPoolTaskExecutor) new ThreadPoolConfig(new ExecutorMonitor()).streamTaskExecutor();
+        streamTaskExecutor.initialize();
+    }
+
+    @TearDown
+    public void tearDown() {
+        streamTaskExecutor.shutdown();
+    }
+
+    /**
+     * 提交到 streamTaskExecutor 并等待执行完成的往返开销
+     */
+    @Benchmark
+    public Object streamTaskExecutorRoundTrip() {
+        return CompletableFuture.supplyAsync(() -> Boolean.TRUE, streamTaskExecutor).join();
+    }
+
+    /**
+     * publishOn(boundedElastic) 下每个数据块的切换开销
+     */
+    @Benchmark
+    @OperationsPerInvocation(CHUNKS)
+    public Object publishOnBoundedElastic() {
+        return Flux.range(0, CHUNKS).publishOn(Schedulers.boundedElastic()).blockLast();
+    }
+
+    /**
+     * 不切换线程的基线（响应式端点的做法）
+     */
+    @Benchmark
+    @OperationsPerInvocation(CHUNKS)
+    public Object sameThread() {
+        return Flux.range(0, CHUNKS).blockLast();
+    }
+
+    /**
+     * 完整的 SseEmitter 流式路径：在 streamTaskExecutor 上订阅，数据块经 boundedElastic 发出
+     */
+    @Benchmark
+    @OperationsPerInvocation(CHUNKS)
+    public long streamPath() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        long[] sum = new long[1];
+        streamTaskExecutor.execute(() -> Flux.range(0, CHUNKS)
+                                             .publishOn(Schedulers.boundedElastic())
+                                             .subscribe(i -> sum[0] += i, e -> done.countDown(), done::countDown));
+        done.await();
+        return sum[0];
+    }
+}
@@ -0,0 +1,145 @@
+package com.yeelovo.ai.benchmark;
+
+import com.yeelovo.ai.model.openai.ChatStreamResponse;
+import com.yeelovo.ai.stream.StreamChunkEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SseEmitter 写出吞吐：模拟 ResponseBodyEmitter 的处理器对每个数据项选择消息转换器并写入响应的过程。
+ * 对比 send(SseEventBuilder) + Jackson 的默认路径与 StreamChunkEncoder 预编码字节的路径
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SseWriteBenchmark {
+
+    private static final String TOKEN = " streaming";
+
+    private StreamChunkEncoder encoder;
+
+    private ChatStreamResponse response;
+
+    private final StringHttpMessageConverter stringConverter = new StringHttpMessageConverter(StandardCharsets.UTF_8);
+
+    private final ByteArrayHttpMessageConverter byteArrayConverter = new ByteArrayHttpMessageConverter();
+
+    private MappingJackson2HttpMessageConverter jacksonConverter;
+
+    private SinkOutputMessage output;
+
+    @Setup
+    public void setup() {
+        encoder = StreamChunkEncoder.forCompletion("gpt-4o");
+        response = encoder.toResponse(TOKEN, false);
+        jacksonConverter = new MappingJackson2HttpMessageConverter(Jackson2ObjectMapperBuilder.json().build());
+        output = new SinkOutputMessage();
+    }
+
+    /**
+     * 每个token构建对象并通过 SseEmitter.event() 发送（原实现的写法）
+     */
+    @Benchmark
+    public long jacksonEvent() throws IOException {
+        Set<ResponseBodyEmitter.DataWithMediaType> items = SseEmitter.event()
+                                                                   .data(encoder.toResponse(TOKEN, false))
+                                                                   .build();
+        for (ResponseBodyEmitter.DataWithMediaType item : items) {
+            write(item);
+        }
+        return output.sink.count;
+    }
+
+    /**
+     * 复用已构建的对象，只计Jackson序列化和写出
+     */
+    @Benchmark
+    public long jacksonPrebuiltObject() throws IOException {
+        for (ResponseBodyEmitter.DataWithMediaType item : SseEmitter.event().data(response).build()) {
+            write(item);
+        }
+        return output.sink.count;
+    }
+
+    /**
+     * 预编码的完整SSE帧（当前实现的写法）
+     */
+    @Benchmark
+    public long encodedFrame() throws IOException {
+        byteArrayConverter.write(encoder.encode(TOKEN), MediaType.TEXT_EVENT_STREAM, output);
+        return output.sink.count;
+    }
+
+    private void write(ResponseBodyEmitter.DataWithMediaType item) throws IOException {
+        Object data = item.getData();
+        MediaType mediaType = item.getMediaType();
+        if (data instanceof String text) {
+            stringConverter.write(text, mediaType, output);
+        } else if (data instanceof byte[] bytes) {
+            byteArrayConverter.write(bytes, mediaType, output);
+        } else {
+            jacksonConverter.write(data, mediaType, output);
+        }
+    }
+
+    /**
+     * 丢弃写出内容的响应，响应头在整个流中复用（与真实响应一致，只在首次写入时设置）
+     */
+    private static final class SinkOutputMessage implements HttpOutputMessage {
+
+        private final HttpHeaders headers = new HttpHeaders();
+
+        private final CountingSink sink = new CountingSink();
+
+        @Override
+        public OutputStream getBody() {
+            return sink;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+
+    private static final class CountingSink extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
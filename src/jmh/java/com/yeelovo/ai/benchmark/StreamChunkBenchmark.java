@@ -0,0 +1,60 @@
+package com.yeelovo.ai.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yeelovo.ai.stream.StreamChunkEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个流式数据块的编码开销：预编码字节帧 vs 构建 ChatStreamResponse 再用Jackson序列化
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamChunkBenchmark {
+
+    @Param({"ascii", "cjk", "escaped"})
+    private String content;
+
+    private String token;
+
+    private StreamChunkEncoder encoder;
+
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setup() {
+        token = switch (content) {
+            case "ascii" -> " streaming";
+            case "cjk" -> "流式响应";
+            default -> "\"quoted\"\n\tline";
+        };
+        encoder = StreamChunkEncoder.forCompletion("gpt-4o");
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    }
+
+    @Benchmark
+    public byte[] encoderFrame() {
+        return encoder.encode(token);
+    }
+
+    @Benchmark
+    public byte[] jacksonChunk() throws Exception {
+        return objectMapper.writeValueAsBytes(encoder.toResponse(token, false));
+    }
+}
@@ -0,0 +1,65 @@
+package com.yeelovo.ai.service.impl;
+
+import com.yeelovo.ai.benchmark.BenchmarkData;
+import com.yeelovo.ai.context.ContextProperties;
+import com.yeelovo.ai.context.ContextTrimmer;
+import com.yeelovo.ai.model.openai.ChatRequest;
+import com.yeelovo.ai.token.TokenCounter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 发往上游前的消息准备：createMessages 转换，以及转换后的token计数与预算裁剪
+ * 位于 service.impl 包中以直接调用包内可见的 createMessages
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CreateMessagesBenchmark {
+
+    @Param({"2", "50", "2000"})
+    private int messages;
+
+    private ChatRequest request;
+
+    private ContextTrimmer contextTrimmer;
+
+    @Setup
+    public void setup() {
+        request = BenchmarkData.conversation(messages);
+        // 限制提示词长度，使长历史走裁剪分支
+        ContextProperties properties = new ContextProperties();
+        properties.setMaxPromptTokens(4000);
+        contextTrimmer = new ContextTrimmer(properties, new TokenCounter());
+    }
+
+    @Benchmark
+    public List<Message> createMessages() {
+        return OpenAiCompatibleServiceImpl.createMessages(request);
+    }
+
+    /**
+     * 转换加裁剪；历史在预热阶段已计数，测得的是每轮重发历史时命中计数缓存的开销
+     */
+    @Benchmark
+    public ContextTrimmer.Result createAndTrim() {
+        return contextTrimmer.trim(request.getModel(), OpenAiCompatibleServiceImpl.createMessages(request),
+                request.getMax_tokens(), 0);
+    }
+}
@@ -0,0 +1,47 @@
+package com.yeelovo.ai.admission;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 准入许可
+ * 无论从完成、出错、超时还是断开哪个回调释放，都只会真正归还一次
+ */
+public final class AdmissionPermit implements AutoCloseable {
+
+    private final AdmissionService owner;
+    private final String key;
+    private final String model;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    AdmissionPermit(AdmissionService owner, String key, String model) {
+        this.owner = owner;
+        this.key = key;
+        this.model = model;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    String getModel() {
+        return model;
+    }
+
+    /**
+     * 归还许可，重复调用无副作用
+     */
+    public void release() {
+        if (released.compareAndSet(false, true)) {
+            owner.release(this);
+        }
+    }
+
+    public boolean isReleased() {
+        return released.get();
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+}
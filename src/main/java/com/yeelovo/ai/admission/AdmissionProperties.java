@@ -0,0 +1,37 @@
+package com.yeelovo.ai.admission;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 准入控制配置
+ */
+@Data
+@ConfigurationProperties(prefix = "proxy.admission")
+public class AdmissionProperties {
+
+    // 全局最大并发请求数（阻塞与流式共享）
+    private int maxConcurrent = 100;
+
+    // 每个API Key的默认并发上限，0表示不限制
+    private int perKeyLimit = 0;
+
+    // 指定API Key的并发上限，覆盖默认值
+    private Map<String, Integer> keyLimits = new HashMap<>();
+
+    // 指定模型的并发上限，未配置的模型只受全局上限约束
+    private Map<String, Integer> modelLimits = new HashMap<>();
+
+    // 等待队列容量，超过后直接拒绝
+    private int queueCapacity = 50;
+
+    // 排队最长等待时间，超时后拒绝
+    private Duration maxWait = Duration.ofSeconds(2);
+
+    // 拒绝时返回给客户端的 Retry-After 秒数
+    private int retryAfterSeconds = 1;
+}
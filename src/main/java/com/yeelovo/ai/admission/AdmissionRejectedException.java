@@ -0,0 +1,18 @@
+package com.yeelovo.ai.admission;
+
+import lombok.Getter;
+
+/**
+ * 准入被拒绝，对应HTTP 429
+ */
+@Getter
+public class AdmissionRejectedException extends RuntimeException {
+
+    // 建议客户端重试的等待秒数
+    private final int retryAfterSeconds;
+
+    public AdmissionRejectedException(String message, int retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,305 @@
+package com.yeelovo.ai.admission;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 准入控制
+ * 在全局、API Key、模型三个维度上限制并发。名额不足时进入有界等待队列，
+ * 释放名额时按Key轮询出队，避免单个Key的突发请求占满队列后饿死其他Key
+ */
+@Component
+@EnableConfigurationProperties(AdmissionProperties.class)
+public class AdmissionService implements MeterBinder {
+
+    public static final String ANONYMOUS_KEY = "anonymous";
+
+    private final AdmissionProperties properties;
+
+    // 状态只在持锁时修改，临界区内不做任何阻塞操作
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private int globalInUse;
+    private final Map<String, Integer> keyInUse = new HashMap<>();
+    private final Map<String, Integer> modelInUse = new HashMap<>();
+
+    // 每个Key一个等待队列，LinkedHashMap的顺序即轮询顺序
+    private final LinkedHashMap<String, ArrayDeque<Waiter>> waiting = new LinkedHashMap<>();
+    private int queued;
+
+    private final AtomicLong admittedTotal = new AtomicLong(0);
+    private final AtomicLong rejectedTotal = new AtomicLong(0);
+
+    public AdmissionService(AdmissionProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * 阻塞获取许可，最多等待配置的 max-wait
+     * @throws AdmissionRejectedException 队列已满或等待超时
+     */
+    public AdmissionPermit acquire(String key, String model) {
+        Waiter waiter = enqueue(normalize(key), model);
+        if (waiter.permit != null) {
+            return waiter.permit;
+        }
+        try {
+            return waiter.future.get(properties.getMaxWait().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            abandon(waiter);
+            throw reject("排队等待超时，请稍后再试");
+        } catch (InterruptedException e) {
+            abandon(waiter);
+            Thread.currentThread().interrupt();
+            throw reject("请求已中断");
+        } catch (ExecutionException e) {
+            throw reject("服务器当前负载过高，请稍后再试");
+        }
+    }
+
+    /**
+     * 异步获取许可，供响应式链路使用；取消订阅时自动退出队列或归还已获得的许可
+     */
+    public Mono<AdmissionPermit> acquireAsync(String key, String model) {
+        return Mono.defer(() -> {
+            Waiter waiter = enqueue(normalize(key), model);
+            if (waiter.permit != null) {
+                return Mono.just(waiter.permit);
+            }
+            return Mono.fromFuture(waiter.future, true)
+                           .timeout(properties.getMaxWait(),
+                                    Mono.defer(() -> {
+                                        abandon(waiter);
+                                        return Mono.error(reject("排队等待超时，请稍后再试"));
+                                    }))
+                           .doOnCancel(() -> abandon(waiter));
+        });
+    }
+
+    /**
+     * 当前状态快照
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            result.put("active", globalInUse);
+            result.put("queued", queued);
+            result.put("activeByModel", new HashMap<>(modelInUse));
+        } finally {
+            lock.unlock();
+        }
+        result.put("admitted", admittedTotal.get());
+        result.put("rejected", rejectedTotal.get());
+        return result;
+    }
+
+    /**
+     * 导出准入指标，只在采集时读取状态
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("ai.admission.active", this, AdmissionService::getActive)
+                .description("已获得许可的请求数")
+                .register(registry);
+        Gauge.builder("ai.admission.queued", this, AdmissionService::getQueued)
+                .description("排队等待许可的请求数")
+                .register(registry);
+        FunctionCounter.builder("ai.admission.admitted", admittedTotal, AtomicLong::get)
+                .register(registry);
+        FunctionCounter.builder("ai.admission.rejected", rejectedTotal, AtomicLong::get)
+                .register(registry);
+    }
+
+    public int getActive() {
+        lock.lock();
+        try {
+            return globalInUse;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getAdmittedTotal() {
+        return admittedTotal.get();
+    }
+
+    public long getRejectedTotal() {
+        return rejectedTotal.get();
+    }
+
+    /**
+     * 由 AdmissionPermit.release 调用，保证每个许可只归还一次
+     */
+    void release(AdmissionPermit permit) {
+        List<Waiter> granted;
+        lock.lock();
+        try {
+            globalInUse--;
+            decrement(keyInUse, permit.getKey());
+            decrement(modelInUse, permit.getModel());
+            granted = dispatch();
+        } finally {
+            lock.unlock();
+        }
+        complete(granted);
+    }
+
+    private Waiter enqueue(String key, String model) {
+        Waiter waiter = new Waiter(key, model);
+        List<Waiter> granted;
+        lock.lock();
+        try {
+            if (queued == 0 && canAdmit(key, model)) {
+                waiter.permit = grant(key, model);
+                return waiter;
+            }
+            if (queued >= properties.getQueueCapacity()) {
+                throw reject("服务器当前负载过高，请稍后再试");
+            }
+            waiting.computeIfAbsent(key, k -> new ArrayDeque<>()).addLast(waiter);
+            queued++;
+            // 队首可能只是受Key或模型上限阻塞，其他Key仍可按轮询顺序放行
+            granted = dispatch();
+        } finally {
+            lock.unlock();
+        }
+        complete(granted);
+        return waiter;
+    }
+
+    /**
+     * 放弃等待：仍在队列中则移除；若恰好已被授予许可则立即归还
+     */
+    private void abandon(Waiter waiter) {
+        boolean removed = false;
+        lock.lock();
+        try {
+            ArrayDeque<Waiter> queue = waiting.get(waiter.key);
+            if (queue != null && queue.remove(waiter)) {
+                queued--;
+                removed = true;
+                if (queue.isEmpty()) {
+                    waiting.remove(waiter.key);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!removed) {
+            waiter.future.thenAccept(AdmissionPermit::release);
+        }
+    }
+
+    /**
+     * 按Key轮询出队，直到没有可以放行的等待者
+     */
+    private List<Waiter> dispatch() {
+        List<Waiter> granted = new ArrayList<>();
+        boolean progress = true;
+        while (progress && queued > 0 && globalInUse < properties.getMaxConcurrent()) {
+            progress = false;
+            Iterator<Map.Entry<String, ArrayDeque<Waiter>>> it = waiting.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, ArrayDeque<Waiter>> entry = it.next();
+                Waiter head = entry.getValue().peekFirst();
+                if (head == null || !canAdmit(head.key, head.model)) {
+                    continue;
+                }
+                entry.getValue().pollFirst();
+                queued--;
+                head.permit = grant(head.key, head.model);
+                granted.add(head);
+                // 被服务的Key移到轮询末尾
+                it.remove();
+                if (!entry.getValue().isEmpty()) {
+                    waiting.put(entry.getKey(), entry.getValue());
+                }
+                progress = true;
+                break;
+            }
+        }
+        return granted;
+    }
+
+    private void complete(List<Waiter> granted) {
+        for (Waiter waiter : granted) {
+            // 等待者已经放弃时future仍会完成，由abandon挂上的回调负责归还
+            waiter.future.complete(waiter.permit);
+        }
+    }
+
+    private boolean canAdmit(String key, String model) {
+        if (globalInUse >= properties.getMaxConcurrent()) {
+            return false;
+        }
+        int keyLimit = properties.getKeyLimits().getOrDefault(key, properties.getPerKeyLimit());
+        if (keyLimit > 0 && keyInUse.getOrDefault(key, 0) >= keyLimit) {
+            return false;
+        }
+        Integer modelLimit = properties.getModelLimits().get(model);
+        return modelLimit == null || modelInUse.getOrDefault(model, 0) < modelLimit;
+    }
+
+    private AdmissionPermit grant(String key, String model) {
+        globalInUse++;
+        keyInUse.merge(key, 1, Integer::sum);
+        modelInUse.merge(model, 1, Integer::sum);
+        admittedTotal.incrementAndGet();
+        return new AdmissionPermit(this, key, model);
+    }
+
+    private static void decrement(Map<String, Integer> counts, String name) {
+        counts.computeIfPresent(name, (k, v) -> v <= 1 ? null : v - 1);
+    }
+
+    private AdmissionRejectedException reject(String message) {
+        rejectedTotal.incrementAndGet();
+        return new AdmissionRejectedException(message, properties.getRetryAfterSeconds());
+    }
+
+    private static String normalize(String key) {
+        return key == null || key.isBlank() ? ANONYMOUS_KEY : key;
+    }
+
+    private static final class Waiter {
+        private final String key;
+        private final String model;
+        private final CompletableFuture<AdmissionPermit> future = new CompletableFuture<>();
+        // 授予的许可，只在持锁时写入
+        private volatile AdmissionPermit permit;
+
+        private Waiter(String key, String model) {
+            this.key = key;
+            this.model = model;
+        }
+    }
+}
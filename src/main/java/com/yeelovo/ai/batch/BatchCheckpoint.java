@@ -0,0 +1,17 @@
+package com.yeelovo.ai.batch;
+
+/**
+ * 批次检查点
+ * line 之前的输入行都已有结果（或为空行），offset 是第 line 行在输入文件中的字节位置；
+ * line 之后已完成的行由输出文件中记录的行号识别，续跑时跳过
+ */
+record BatchCheckpoint(String id,
+                       String input,
+                       String output,
+                       int concurrency,
+                       double rate,
+                       long line,
+                       long offset,
+                       BatchJob.Status status,
+                       long updatedAt) {
+}
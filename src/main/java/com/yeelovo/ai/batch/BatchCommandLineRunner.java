@@ -0,0 +1,64 @@
+package com.yeelovo.ai.batch;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 命令行批处理：配置 proxy.batch.cli.input 时启动后执行该文件，定期输出进度，结束后按结果设置退出码退出
+ * 输出文件已存在时从检查点续跑，中断（Ctrl+C）后用同样的参数重新运行即可继续
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "proxy.batch.cli", name = "input")
+public class BatchCommandLineRunner implements ApplicationRunner {
+
+    private final BatchService batchService;
+    private final BatchProperties properties;
+    private final ConfigurableApplicationContext context;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        BatchProperties.Cli cli = properties.getCli();
+        Path input = Paths.get(cli.getInput()).toAbsolutePath();
+        if (!Files.isRegularFile(input)) {
+            throw new IllegalArgumentException("批处理输入文件不存在: " + input);
+        }
+        Path output = cli.getOutput() != null ? Paths.get(cli.getOutput()).toAbsolutePath()
+                              : input.resolveSibling(input.getFileName() + ".output.jsonl");
+
+        BatchJob job = batchService.runFile(input, output, cli.getConcurrency(), cli.getRate());
+        long reportMillis = Math.max(1000, properties.getProgressInterval().toMillis() * 5);
+        while (!job.await(reportMillis, TimeUnit.MILLISECONDS)) {
+            report(job.snapshot());
+        }
+        Map<String, Object> result = job.snapshot();
+        log.info("批处理结束: {}", result);
+
+        if (cli.isExit()) {
+            int code = job.getStatus() == BatchJob.Status.COMPLETED ? 0 : 1;
+            System.exit(SpringApplication.exit(context, () -> code));
+        }
+    }
+
+    private static void report(Map<String, Object> snapshot) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> progress = (Map<String, Object>) snapshot.get("progress");
+        log.info("批处理进度 {}%，成功 {}，失败 {}，跳过 {}，在途 {}，并发上限 {}，吞吐 {}/s，预计剩余 {} 秒",
+                progress.get("percent"), snapshot.get("succeeded"), snapshot.get("failed"), snapshot.get("skipped"),
+                snapshot.get("inFlight"), snapshot.get("currentConcurrency"), snapshot.get("throughput"),
+                progress.getOrDefault("etaSeconds", "-"));
+    }
+}
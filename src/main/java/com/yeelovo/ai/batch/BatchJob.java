@@ -0,0 +1,296 @@
+package com.yeelovo.ai.batch;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个批次的运行状态
+ * 成功和失败数包含续跑前已写入输出文件的结果，其余计数只统计本次运行
+ */
+public class BatchJob {
+
+    public enum Status {
+        RUNNING, COMPLETED, STOPPED, FAILED
+    }
+
+    // 直方图上限1小时，单位微秒
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    private final String id;
+    private final Path input;
+    private final Path output;
+    private final Path checkpoint;
+    private final int concurrency;
+    private final double rate;
+    private final String clientKey;
+    private final long startedAt;
+    private final long startNanos;
+    private final long inputBytes;
+
+    private volatile Status status = Status.RUNNING;
+    private volatile String error;
+    private volatile long finishedAt;
+    private volatile long finishedNanos;
+    private volatile boolean stopRequested;
+    // 运行中出现的不可继续的错误，在途请求全部结束后批次以FAILED结束
+    private volatile String failure;
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    // 已读到的输入位置（字节），续跑时从检查点位置开始
+    private volatile long inputPosition;
+    private volatile long resumedPosition;
+    // 当前并发上限，限流时减半，连续成功后逐步恢复
+    private volatile int currentLimit;
+
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder recovered = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder completionTokens = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    private final Histogram latency = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+
+    BatchJob(String id, Path input, Path output, Path checkpoint, int concurrency, double rate, String clientKey) {
+        this.id = id;
+        this.input = input;
+        this.output = output;
+        this.checkpoint = checkpoint;
+        this.concurrency = concurrency;
+        this.rate = rate;
+        this.clientKey = clientKey;
+        this.currentLimit = concurrency;
+        this.startedAt = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+        this.inputBytes = input.toFile().length();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Path getInput() {
+        return input;
+    }
+
+    public Path getOutput() {
+        return output;
+    }
+
+    Path getCheckpoint() {
+        return checkpoint;
+    }
+
+    int getConcurrency() {
+        return concurrency;
+    }
+
+    double getRate() {
+        return rate;
+    }
+
+    String getClientKey() {
+        return clientKey;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isRunning() {
+        return status == Status.RUNNING;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    boolean isStopRequested() {
+        return stopRequested;
+    }
+
+    void requestStop() {
+        stopRequested = true;
+    }
+
+    /**
+     * 记录不可继续的错误并停止提交新请求；批次仍处于运行状态，由调度线程等在途请求结束后以FAILED结束，
+     * 期间不能续跑，等待批次结束的调用方也不会提前返回
+     */
+    void fail(String message) {
+        synchronized (this) {
+            if (failure == null) {
+                failure = message;
+            }
+        }
+        requestStop();
+    }
+
+    String getFailure() {
+        return failure;
+    }
+
+    /**
+     * 等待批次结束，超时返回false
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+
+    int getCurrentLimit() {
+        return currentLimit;
+    }
+
+    void setCurrentLimit(int currentLimit) {
+        this.currentLimit = currentLimit;
+    }
+
+    void onResumedAt(long position) {
+        resumedPosition = position;
+        inputPosition = position;
+    }
+
+    void onLineRead(long position) {
+        lines.increment();
+        inputPosition = position;
+    }
+
+    /**
+     * 续跑时跳过已有结果的行
+     */
+    void onSkipped() {
+        skipped.increment();
+    }
+
+    /**
+     * 续跑前输出文件中已有的结果
+     */
+    void onRecovered(long succeededCount, long failedCount) {
+        succeeded.add(succeededCount);
+        failed.add(failedCount);
+        recovered.add(succeededCount + failedCount);
+    }
+
+    void onIssued() {
+        inFlight.incrementAndGet();
+    }
+
+    void onRetry(boolean limited) {
+        retries.increment();
+        if (limited) {
+            rateLimited.increment();
+        }
+    }
+
+    void onSuccess(long nanos, int tokens) {
+        succeeded.increment();
+        completionTokens.add(tokens);
+        latency.recordValue(Math.min(HIGHEST_TRACKABLE_MICROS, TimeUnit.NANOSECONDS.toMicros(nanos)));
+    }
+
+    void onFailure(String reason) {
+        failed.increment();
+        errors.computeIfAbsent(reason, k -> new LongAdder()).increment();
+    }
+
+    void onRequestFinished() {
+        inFlight.decrementAndGet();
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * 结束批次，只有第一次调用生效
+     */
+    synchronized void finish(Status finalStatus, String message) {
+        if (status != Status.RUNNING) {
+            return;
+        }
+        finishedNanos = System.nanoTime();
+        finishedAt = System.currentTimeMillis();
+        error = message;
+        status = finalStatus;
+        finished.countDown();
+    }
+
+    public Map<String, Object> snapshot() {
+        long end = isRunning() ? System.nanoTime() : finishedNanos;
+        double elapsedSeconds = Math.max(1e-9, (end - startNanos) / 1e9);
+        long completedThisRun = succeeded.sum() + failed.sum() - recovered.sum();
+
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("bytesRead", inputPosition);
+        progress.put("totalBytes", inputBytes);
+        progress.put("percent", inputBytes == 0 ? 100.0 : round(inputPosition * 100.0 / inputBytes));
+        // 按本次运行的读取速度估算剩余时间
+        double bytesPerSecond = (inputPosition - resumedPosition) / elapsedSeconds;
+        if (isRunning() && bytesPerSecond > 0 && completedThisRun > 0) {
+            progress.put("etaSeconds", Math.round((inputBytes - inputPosition) / bytesPerSecond));
+        }
+
+        Map<String, Long> errorCounts = new LinkedHashMap<>();
+        errors.forEach((reason, count) -> errorCounts.put(reason, count.sum()));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("id", id);
+        result.put("status", status);
+        result.put("input", input.toString());
+        result.put("output", output.toString());
+        result.put("concurrency", concurrency);
+        result.put("currentConcurrency", currentLimit);
+        result.put("rate", rate);
+        result.put("elapsedSeconds", round(elapsedSeconds));
+        result.put("progress", progress);
+        result.put("lines", lines.sum());
+        result.put("skipped", skipped.sum());
+        result.put("succeeded", succeeded.sum());
+        result.put("failed", failed.sum());
+        result.put("inFlight", inFlight.get());
+        result.put("retries", retries.sum());
+        result.put("rateLimited", rateLimited.sum());
+        result.put("throughput", round(completedThisRun / elapsedSeconds));
+        result.put("completionTokens", completionTokens.sum());
+        result.put("latencyMs", percentiles(latency));
+        result.put("errors", errorCounts);
+        if (error != null) {
+            result.put("error", error);
+        }
+        return result;
+    }
+
+    private static Map<String, Object> percentiles(Histogram histogram) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("count", histogram.getTotalCount());
+        if (histogram.getTotalCount() == 0) {
+            return result;
+        }
+        result.put("p50", round(histogram.getValueAtPercentile(50) / 1000.0));
+        result.put("p90", round(histogram.getValueAtPercentile(90) / 1000.0));
+        result.put("p99", round(histogram.getValueAtPercentile(99) / 1000.0));
+        result.put("max", round(histogram.getMaxValue() / 1000.0));
+        return result;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,67 @@
+package com.yeelovo.ai.batch;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 离线批处理配置
+ */
+@Data
+@ConfigurationProperties(prefix = "proxy.batch")
+public class BatchProperties {
+
+    // 通过接口上传的批次的存放目录，每个批次一个子目录（input.jsonl、output.jsonl、checkpoint.json）
+    private String directory = "batches";
+
+    // 未指定时的并发数
+    private int concurrency = 8;
+
+    // 单个批次的最大并发数
+    private int maxConcurrency = 64;
+
+    // 单个批次的发起速率上限（请求/秒），0表示不限制
+    private double rate = 0;
+
+    // 同时运行的批次数
+    private int maxRunningBatches = 2;
+
+    // 单个请求最多尝试次数（限流、超时、5xx时重试）
+    private int maxAttempts = 3;
+
+    // 首次重试的等待时间，之后每次翻倍；准入拒绝时使用其建议的等待时间
+    private Duration retryBackoff = Duration.ofSeconds(2);
+
+    // 检查点写入间隔，写入前先把输出文件刷到磁盘
+    private Duration checkpointInterval = Duration.ofSeconds(2);
+
+    // SSE进度推送间隔
+    private Duration progressInterval = Duration.ofSeconds(1);
+
+    // 已结束的批次在内存中的保留时间（磁盘上的文件不删除，可按ID续跑）
+    private Duration retention = Duration.ofHours(1);
+
+    private Cli cli = new Cli();
+
+    /**
+     * 命令行模式：配置 input 时启动后直接执行该批次，完成后退出
+     */
+    @Data
+    public static class Cli {
+
+        // 输入JSONL文件
+        private String input;
+
+        // 输出JSONL文件，默认为输入文件名加 .output.jsonl；检查点写在输出文件旁（.checkpoint.json）
+        private String output;
+
+        // 为空时使用 proxy.batch.concurrency / rate
+        private Integer concurrency;
+
+        private Double rate;
+
+        // 批次结束后退出进程
+        private boolean exit = true;
+    }
+}
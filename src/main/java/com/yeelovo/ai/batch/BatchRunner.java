@@ -0,0 +1,559 @@
+package com.yeelovo.ai.batch;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.yeelovo.ai.admission.AdmissionRejectedException;
+import com.yeelovo.ai.model.openai.ChatRequest;
+import com.yeelovo.ai.model.openai.ChatResponse;
+import com.yeelovo.ai.service.OpenAiCompatibleService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 执行一个批次
+ * 调度线程逐行读取输入（不整体加载），在并发上限和速率上限内把请求提交到 batchExecutor，
+ * 每个请求经 OpenAiCompatibleService 的阻塞接口执行（与普通请求一样经过准入、缓存和上游路由），结果按完成顺序追加到输出文件。
+ * 被限流时并发上限减半，之后每连续成功"当前上限"次加一，直到恢复到配置的并发数
+ */
+@Slf4j
+final class BatchRunner implements Runnable {
+
+    private static final String COMPLETIONS_URL = "/v1/chat/completions";
+
+    private final BatchJob job;
+    private final OpenAiCompatibleService openAiCompatibleService;
+    private final ObjectMapper objectMapper;
+    private final BatchProperties properties;
+    private final Executor batchExecutor;
+
+    // 保护输出文件、未完成行和检查点，保证检查点不会超前于已写入的结果
+    private final ReentrantLock outputLock = new ReentrantLock();
+    private FileChannel outputChannel;
+    // 已提交但结果还没写入的行：行号 -> 字节位置
+    private final TreeMap<Long, Long> pending = new TreeMap<>();
+    // 下一个待提交的行
+    private long frontierLine;
+    private long frontierOffset;
+    private long lastCheckpointAt;
+
+    // 并发上限，等待空闲名额
+    private final ReentrantLock limitLock = new ReentrantLock();
+    private final Condition slotReleased = limitLock.newCondition();
+    private int successesSinceIncrease;
+    private long lastDecreaseAt;
+
+    BatchRunner(BatchJob job, OpenAiCompatibleService openAiCompatibleService, ObjectMapper objectMapper,
+                BatchProperties properties, Executor batchExecutor) {
+        this.job = job;
+        this.openAiCompatibleService = openAiCompatibleService;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        this.batchExecutor = batchExecutor;
+    }
+
+    @Override
+    public void run() {
+        try {
+            Set<Long> completed = recover();
+            outputChannel = FileChannel.open(job.getOutput(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            checkpoint(true, BatchJob.Status.RUNNING);
+            dispatch(completed);
+            awaitIdle();
+            // 先写最终检查点再结束批次，等待批次结束的调用方（命令行模式）随后可能直接退出进程
+            BatchJob.Status status = job.getFailure() != null ? BatchJob.Status.FAILED
+                                             : job.isStopRequested() ? BatchJob.Status.STOPPED : BatchJob.Status.COMPLETED;
+            checkpoint(true, status);
+            job.finish(status, job.getFailure());
+            log.info("批次结束，ID: {}, 结果: {}", job.getId(), job.snapshot());
+        } catch (Exception e) {
+            log.error("批次异常结束，ID: {}", job.getId(), e);
+            awaitIdle();
+            try {
+                checkpoint(true, BatchJob.Status.FAILED);
+            } catch (Exception checkpointError) {
+                log.warn("批次检查点写入失败，ID: {}", job.getId(), checkpointError);
+            }
+            job.finish(BatchJob.Status.FAILED, e.getMessage());
+        } finally {
+            closeOutput();
+        }
+    }
+
+    /**
+     * 从检查点和输出文件恢复进度：检查点之后已完成的行号放入集合，输出文件末尾不完整的记录截掉
+     */
+    private Set<Long> recover() throws IOException {
+        if (Files.exists(job.getCheckpoint())) {
+            BatchCheckpoint checkpoint = objectMapper.readValue(job.getCheckpoint().toFile(), BatchCheckpoint.class);
+            frontierLine = checkpoint.line();
+            frontierOffset = checkpoint.offset();
+        }
+        Set<Long> completed = new HashSet<>();
+        if (!Files.exists(job.getOutput())) {
+            return completed;
+        }
+        long succeeded = 0;
+        long failed = 0;
+        long validLength = 0;
+        try (LineReader reader = new LineReader(job.getOutput(), 0, 0)) {
+            LineReader.Line line;
+            while ((line = reader.next()) != null) {
+                if (!line.terminated()) {
+                    break;
+                }
+                JsonNode record;
+                try {
+                    record = objectMapper.readTree(line.text());
+                } catch (IOException e) {
+                    // 只可能是进程中断时写了一半的最后一条记录
+                    break;
+                }
+                validLength = line.end();
+                if (record == null || !record.has("line")) {
+                    continue;
+                }
+                long index = record.get("line").asLong();
+                if (index >= frontierLine) {
+                    completed.add(index);
+                }
+                if (record.path("error").isNull() || record.path("error").isMissingNode()) {
+                    succeeded++;
+                } else {
+                    failed++;
+                }
+            }
+        }
+        if (validLength < Files.size(job.getOutput())) {
+            log.warn("批次 {} 的输出文件末尾有不完整的记录，截断到 {} 字节", job.getId(), validLength);
+            try (FileChannel channel = FileChannel.open(job.getOutput(), StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+        job.onRecovered(succeeded, failed);
+        if (succeeded + failed > 0) {
+            log.info("批次 {} 从第 {} 行续跑，已有结果 {} 条", job.getId(), frontierLine, succeeded + failed);
+        }
+        return completed;
+    }
+
+    private void dispatch(Set<Long> completed) throws IOException, InterruptedException {
+        job.onResumedAt(frontierOffset);
+        long intervalNanos = job.getRate() > 0 ? (long) (1_000_000_000L / job.getRate()) : 0;
+        long nextSendAt = System.nanoTime();
+        try (LineReader reader = new LineReader(job.getInput(), frontierOffset, frontierLine)) {
+            LineReader.Line line;
+            while (!job.isStopRequested() && (line = reader.next()) != null) {
+                job.onLineRead(line.end());
+                if (line.text().isBlank() || completed.remove(line.index())) {
+                    if (!line.text().isBlank()) {
+                        job.onSkipped();
+                    }
+                    advanceFrontier(line);
+                    continue;
+                }
+                if (!acquireSlot()) {
+                    break;
+                }
+                if (intervalNanos > 0) {
+                    long wait = nextSendAt - System.nanoTime();
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                    nextSendAt = Math.max(nextSendAt, System.nanoTime() - intervalNanos) + intervalNanos;
+                }
+                LineReader.Line submitted = line;
+                outputLock.lock();
+                try {
+                    pending.put(submitted.index(), submitted.offset());
+                } finally {
+                    outputLock.unlock();
+                }
+                advanceFrontier(submitted);
+                job.onIssued();
+                batchExecutor.execute(() -> process(submitted));
+            }
+        }
+    }
+
+    private void advanceFrontier(LineReader.Line line) {
+        outputLock.lock();
+        try {
+            frontierLine = line.index() + 1;
+            frontierOffset = line.end();
+        } finally {
+            outputLock.unlock();
+        }
+    }
+
+    /**
+     * 执行一行请求，可重试的错误按退避时间重试；批次停止时未完成的请求不写结果，续跑时重新执行
+     */
+    private void process(LineReader.Line line) {
+        boolean written = false;
+        try {
+            JsonNode node;
+            JsonNode body;
+            try {
+                node = objectMapper.readTree(line.text());
+                body = node.has("body") ? node.get("body") : node;
+                if (node.has("url") && !COMPLETIONS_URL.equals(node.get("url").asText())) {
+                    throw new IllegalArgumentException("不支持的url: " + node.get("url").asText());
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                written = writeError(line, null, "invalid_request", e.getMessage());
+                job.onFailure("invalid_request");
+                return;
+            }
+            String customId = node.hasNonNull("custom_id") ? node.get("custom_id").asText() : null;
+
+            for (int attempt = 1; ; attempt++) {
+                long start = System.nanoTime();
+                ChatResponse response;
+                try {
+                    ChatRequest request = objectMapper.treeToValue(body, ChatRequest.class);
+                    request.setStream(false);
+                    request.setClientKey(job.getClientKey());
+                    response = openAiCompatibleService.chat(request);
+                } catch (Exception e) {
+                    Failure failure = classify(e);
+                    if (failure.rateLimited()) {
+                        onRateLimited();
+                    }
+                    if (failure.retryable() && job.isStopRequested()) {
+                        return;
+                    }
+                    if (failure.retryable() && attempt < properties.getMaxAttempts()) {
+                        job.onRetry(failure.rateLimited());
+                        long delay = failure.retryAfterMillis() > 0 ? failure.retryAfterMillis()
+                                             : properties.getRetryBackoff().toMillis() << Math.min(attempt - 1, 10);
+                        Thread.sleep(delay);
+                        continue;
+                    }
+                    written = writeError(line, customId, failure.type(), String.valueOf(e.getMessage()));
+                    job.onFailure(failure.type());
+                    return;
+                }
+                written = writeResult(line, customId, response);
+                int tokens = response.getUsage() != null && response.getUsage().getCompletion_tokens() != null
+                                     ? response.getUsage().getCompletion_tokens() : 0;
+                job.onSuccess(System.nanoTime() - start, tokens);
+                onSuccess();
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // 只停止提交新请求，其余在途请求结束后由调度线程结束批次；该行未写入，续跑时重新执行
+            log.error("批次 {} 第 {} 行结果写入失败", job.getId(), line.index(), e);
+            job.fail(e.getMessage());
+        } finally {
+            finishLine(line, written);
+            job.onRequestFinished();
+            releaseSlot();
+        }
+    }
+
+    private boolean writeResult(LineReader.Line line, String customId, ChatResponse response) throws IOException {
+        ObjectNode record = record(line, customId);
+        ObjectNode result = record.putObject("response");
+        result.put("status_code", 200);
+        result.set("body", objectMapper.valueToTree(response));
+        record.putNull("error");
+        return append(record);
+    }
+
+    private boolean writeError(LineReader.Line line, String customId, String code, String message) throws IOException {
+        ObjectNode record = record(line, customId);
+        record.putNull("response");
+        ObjectNode error = record.putObject("error");
+        error.put("code", code);
+        error.put("message", message);
+        return append(record);
+    }
+
+    private ObjectNode record(LineReader.Line line, String customId) {
+        ObjectNode record = objectMapper.createObjectNode();
+        record.put("id", job.getId() + "-" + line.index());
+        record.put("custom_id", customId);
+        record.put("line", line.index());
+        return record;
+    }
+
+    private boolean append(ObjectNode record) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(record);
+        byte[] bytes = Arrays.copyOf(json, json.length + 1);
+        bytes[json.length] = '\n';
+        outputLock.lock();
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                outputChannel.write(buffer);
+            }
+        } finally {
+            outputLock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * 结果已写入的行移出未完成集合；未写入的行保留，检查点不会越过它
+     */
+    private void finishLine(LineReader.Line line, boolean written) {
+        if (written) {
+            outputLock.lock();
+            try {
+                pending.remove(line.index());
+            } finally {
+                outputLock.unlock();
+            }
+        }
+        try {
+            checkpoint(false, BatchJob.Status.RUNNING);
+        } catch (IOException e) {
+            log.warn("批次检查点写入失败，ID: {}", job.getId(), e);
+        }
+    }
+
+    /**
+     * 先把输出刷到磁盘再原子替换检查点文件
+     */
+    private void checkpoint(boolean force, BatchJob.Status status) throws IOException {
+        outputLock.lock();
+        try {
+            long now = System.nanoTime();
+            if (!force && now - lastCheckpointAt < properties.getCheckpointInterval().toNanos()) {
+                return;
+            }
+            lastCheckpointAt = now;
+            if (outputChannel != null && outputChannel.isOpen()) {
+                outputChannel.force(false);
+            }
+            Map.Entry<Long, Long> first = pending.firstEntry();
+            BatchCheckpoint checkpoint = new BatchCheckpoint(job.getId(), job.getInput().toString(), job.getOutput().toString(),
+                    job.getConcurrency(), job.getRate(),
+                    first != null ? first.getKey() : frontierLine, first != null ? first.getValue() : frontierOffset,
+                    status, System.currentTimeMillis());
+            Path temp = job.getCheckpoint().resolveSibling(job.getCheckpoint().getFileName() + ".tmp");
+            objectMapper.writeValue(temp.toFile(), checkpoint);
+            Files.move(temp, job.getCheckpoint(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            outputLock.unlock();
+        }
+    }
+
+    /**
+     * 等待在途数低于当前并发上限；批次停止时返回false
+     */
+    private boolean acquireSlot() throws InterruptedException {
+        limitLock.lock();
+        try {
+            while (job.getInFlight() >= job.getCurrentLimit()) {
+                if (job.isStopRequested()) {
+                    return false;
+                }
+                slotReleased.await(100, TimeUnit.MILLISECONDS);
+            }
+            return !job.isStopRequested();
+        } finally {
+            limitLock.unlock();
+        }
+    }
+
+    private void releaseSlot() {
+        limitLock.lock();
+        try {
+            slotReleased.signalAll();
+        } finally {
+            limitLock.unlock();
+        }
+    }
+
+    /**
+     * 等待在途请求全部结束
+     */
+    private void awaitIdle() {
+        limitLock.lock();
+        try {
+            while (job.getInFlight() > 0) {
+                slotReleased.await(100, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            limitLock.unlock();
+        }
+    }
+
+    private void onSuccess() {
+        limitLock.lock();
+        try {
+            int limit = job.getCurrentLimit();
+            if (limit < job.getConcurrency() && ++successesSinceIncrease >= limit) {
+                successesSinceIncrease = 0;
+                job.setCurrentLimit(limit + 1);
+            }
+        } finally {
+            limitLock.unlock();
+        }
+    }
+
+    /**
+     * 限流时并发上限减半；同时在途的多个请求一起被限流时只减一次
+     */
+    private void onRateLimited() {
+        limitLock.lock();
+        try {
+            long now = System.nanoTime();
+            if (now - lastDecreaseAt < properties.getRetryBackoff().toNanos()) {
+                return;
+            }
+            lastDecreaseAt = now;
+            successesSinceIncrease = 0;
+            int limit = Math.max(1, job.getCurrentLimit() / 2);
+            if (limit != job.getCurrentLimit()) {
+                log.info("批次 {} 被限流，并发上限降为 {}", job.getId(), limit);
+            }
+            job.setCurrentLimit(limit);
+        } finally {
+            limitLock.unlock();
+        }
+    }
+
+    private void closeOutput() {
+        if (outputChannel != null) {
+            try {
+                outputChannel.close();
+            } catch (IOException e) {
+                log.warn("关闭批次输出文件失败，ID: {}", job.getId(), e);
+            }
+        }
+    }
+
+    private record Failure(String type, boolean retryable, boolean rateLimited, long retryAfterMillis) {
+    }
+
+    /**
+     * 阻塞接口把上游错误包装在 RuntimeException 中，按原因链分类
+     */
+    private static Failure classify(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof JsonProcessingException) {
+                return new Failure("invalid_request", false, false, 0);
+            }
+            if (cause instanceof AdmissionRejectedException rejected) {
+                return new Failure("rate_limited", true, true, TimeUnit.SECONDS.toMillis(rejected.getRetryAfterSeconds()));
+            }
+            if (cause instanceof NonTransientAiException) {
+                // 4xx被转换为NonTransientAiException，消息以状态码开头
+                String message = String.valueOf(cause.getMessage());
+                if (message.startsWith("429")) {
+                    return new Failure("rate_limited", true, true, 0);
+                }
+                if (message.startsWith("408")) {
+                    return new Failure("timeout", true, false, 0);
+                }
+                return new Failure("upstream_rejected", false, false, 0);
+            }
+            if (cause instanceof TransientAiException) {
+                return new Failure("upstream_error", true, false, 0);
+            }
+            if (cause instanceof TimeoutException || cause instanceof ResourceAccessException) {
+                return new Failure("timeout", true, false, 0);
+            }
+        }
+        return new Failure("error", false, false, 0);
+    }
+
+    /**
+     * 按字节读取JSONL，记录每行的行号和起止位置，便于从检查点位置继续读
+     */
+    static final class LineReader implements Closeable {
+
+        record Line(long index, long offset, long end, String text, boolean terminated) {
+        }
+
+        private final InputStream in;
+        private final byte[] buffer = new byte[64 * 1024];
+        private int length;
+        private int position;
+        private long offset;
+        private long index;
+        private byte[] line = new byte[1024];
+
+        LineReader(Path path, long offset, long index) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            channel.position(offset);
+            this.in = Channels.newInputStream(channel);
+            this.offset = offset;
+            this.index = index;
+        }
+
+        /**
+         * 下一行，文件结束时返回null；最后一行没有换行符时 terminated=false
+         */
+        Line next() throws IOException {
+            int size = 0;
+            long start = offset;
+            while (true) {
+                if (position == length) {
+                    length = in.read(buffer);
+                    position = 0;
+                    if (length <= 0) {
+                        length = 0;
+                        if (size == 0) {
+                            return null;
+                        }
+                        return new Line(index++, start, offset, decode(size), false);
+                    }
+                }
+                byte b = buffer[position++];
+                offset++;
+                if (b == '\n') {
+                    return new Line(index++, start, offset, decode(size), true);
+                }
+                if (size == line.length) {
+                    line = Arrays.copyOf(line, size * 2);
+                }
+                line[size++] = b;
+            }
+        }
+
+        private String decode(int size) {
+            // 兼容CRLF换行
+            int end = size > 0 && line[size - 1] == '\r' ? size - 1 : size;
+            return new String(line, 0, end, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.yeelovo.ai.batch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yeelovo.ai.service.OpenAiCompatibleService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 离线批处理
+ * 通过接口上传的批次保存在 proxy.batch.directory 下，命令行批次直接读写指定的文件；
+ * 两者都可以按检查点续跑，已有结果的行不会重复请求
+ */
+@Slf4j
+@Service
+@EnableConfigurationProperties(BatchProperties.class)
+public class BatchService {
+
+    private static final String INPUT_FILE = "input.jsonl";
+    private static final String OUTPUT_FILE = "output.jsonl";
+    private static final String CHECKPOINT_FILE = "checkpoint.json";
+
+    private static final Pattern BATCH_ID = Pattern.compile("[A-Za-z0-9_-]+");
+
+    private final OpenAiCompatibleService openAiCompatibleService;
+    private final ObjectMapper objectMapper;
+    private final BatchProperties properties;
+    private final Executor batchExecutor;
+
+    private final Map<String, BatchJob> jobs = new ConcurrentHashMap<>();
+
+    public BatchService(OpenAiCompatibleService openAiCompatibleService,
+                        ObjectMapper objectMapper,
+                        BatchProperties properties,
+                        @Qualifier("batchExecutor") Executor batchExecutor) {
+        this.openAiCompatibleService = openAiCompatibleService;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        this.batchExecutor = batchExecutor;
+    }
+
+    /**
+     * 保存上传的JSONL（边读边写，不在内存中缓存）并启动批次
+     * @throws IllegalStateException 运行中的批次数已达上限
+     */
+    public BatchJob create(InputStream body, Integer concurrency, Double rate, String clientKey) throws IOException {
+        // 先检查一次，避免上传完才发现无法运行
+        checkCapacity();
+        String id = "batch_" + UUID.randomUUID().toString().replace("-", "").substring(0, 16);
+        Path directory = Paths.get(properties.getDirectory(), id);
+        Files.createDirectories(directory);
+        Files.copy(body, directory.resolve(INPUT_FILE));
+        return start(new BatchJob(id, directory.resolve(INPUT_FILE), directory.resolve(OUTPUT_FILE),
+                directory.resolve(CHECKPOINT_FILE), concurrency(concurrency), rate(rate), clientKey));
+    }
+
+    /**
+     * 执行本地文件，输出文件已存在时按检查点续跑（命令行模式）
+     */
+    public BatchJob runFile(Path input, Path output, Integer concurrency, Double rate) {
+        Path checkpoint = output.resolveSibling(output.getFileName() + ".checkpoint.json");
+        String name = input.getFileName().toString();
+        String id = "file_" + (name.endsWith(".jsonl") ? name.substring(0, name.length() - ".jsonl".length()) : name);
+        return start(new BatchJob(id, input, output, checkpoint, concurrency(concurrency), rate(rate), null));
+    }
+
+    /**
+     * 按检查点续跑已停止、失败或进程中断的批次；并发和速率未指定时沿用上次的设置
+     * @return 批次不存在时返回null
+     * @throws IllegalStateException 批次仍在运行，或运行中的批次数已达上限
+     */
+    public BatchJob resume(String id, Integer concurrency, Double rate, String clientKey) throws IOException {
+        BatchJob existing = jobs.get(id);
+        if (existing != null && existing.isRunning()) {
+            throw new IllegalStateException("批次仍在运行: " + id);
+        }
+        Path checkpointFile = existing != null ? existing.getCheckpoint()
+                                      : BATCH_ID.matcher(id).matches() ? Paths.get(properties.getDirectory(), id, CHECKPOINT_FILE) : null;
+        if (checkpointFile == null || !Files.exists(checkpointFile)) {
+            return null;
+        }
+        BatchCheckpoint checkpoint = objectMapper.readValue(checkpointFile.toFile(), BatchCheckpoint.class);
+        return start(new BatchJob(id, Paths.get(checkpoint.input()), Paths.get(checkpoint.output()), checkpointFile,
+                concurrency != null ? concurrency(concurrency) : checkpoint.concurrency(),
+                rate != null ? rate(rate) : checkpoint.rate(),
+                clientKey));
+    }
+
+    /**
+     * 停止批次：不再提交新请求，在途请求结束并写入结果后批次结束
+     */
+    public boolean stop(String id) {
+        BatchJob job = jobs.get(id);
+        if (job == null) {
+            return false;
+        }
+        job.requestStop();
+        return true;
+    }
+
+    public BatchJob get(String id) {
+        evictFinished();
+        return jobs.get(id);
+    }
+
+    public List<BatchJob> list() {
+        evictFinished();
+        return jobs.values().stream()
+                       .sorted(Comparator.comparingLong(BatchJob::getStartedAt).reversed())
+                       .toList();
+    }
+
+    /**
+     * 批次结束前按固定间隔推送进度，结束后推送最终结果
+     */
+    public Flux<Map<String, Object>> progress(BatchJob job) {
+        return Flux.interval(Duration.ZERO, properties.getProgressInterval())
+                       .map(tick -> job.snapshot())
+                       .takeUntil(snapshot -> snapshot.get("status") != BatchJob.Status.RUNNING);
+    }
+
+    /**
+     * 关闭时停止所有批次并等待在途请求写入结果，之后可以从检查点续跑
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        List<BatchJob> running = jobs.values().stream().filter(BatchJob::isRunning).toList();
+        running.forEach(BatchJob::requestStop);
+        for (BatchJob job : running) {
+            if (!job.await(30, TimeUnit.SECONDS)) {
+                log.warn("批次 {} 未能在关闭前结束，在途请求的结果将在续跑时重新请求", job.getId());
+            }
+        }
+    }
+
+    private BatchJob start(BatchJob job) {
+        synchronized (jobs) {
+            checkCapacity();
+            BatchJob existing = jobs.get(job.getId());
+            if (existing != null && existing.isRunning()) {
+                throw new IllegalStateException("批次仍在运行: " + job.getId());
+            }
+            jobs.put(job.getId(), job);
+        }
+        Thread dispatcher = new Thread(new BatchRunner(job, openAiCompatibleService, objectMapper, properties, batchExecutor),
+                "batch-" + job.getId());
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        log.info("开始批次，ID: {}, 输入: {}, 输出: {}, 并发: {}, 速率: {}",
+                job.getId(), job.getInput(), job.getOutput(), job.getConcurrency(), job.getRate());
+        return job;
+    }
+
+    private void checkCapacity() {
+        evictFinished();
+        long running = jobs.values().stream().filter(BatchJob::isRunning).count();
+        if (running >= properties.getMaxRunningBatches()) {
+            throw new IllegalStateException("运行中的批次已达上限: " + properties.getMaxRunningBatches());
+        }
+    }
+
+    private int concurrency(Integer concurrency) {
+        int value = concurrency != null ? concurrency : properties.getConcurrency();
+        return Math.max(1, Math.min(value, properties.getMaxConcurrency()));
+    }
+
+    private double rate(Double rate) {
+        return Math.max(0, rate != null ? rate : properties.getRate());
+    }
+
+    /**
+     * 淘汰超过保留时间的已结束批次（只从内存中移除，文件保留）
+     */
+    private void evictFinished() {
+        long expireBefore = System.currentTimeMillis() - properties.getRetention().toMillis();
+        jobs.values().removeIf(job -> !job.isRunning() && job.getFinishedAt() < expireBefore);
+    }
+}
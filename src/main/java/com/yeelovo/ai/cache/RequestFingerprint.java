@@ -0,0 +1,68 @@
+package com.yeelovo.ai.cache;
+
+import com.yeelovo.ai.model.openai.ChatRequest;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.TreeMap;
+
+/**
+ * 请求指纹
+ * 对规范化后的请求（模型、消息角色小写、内容原样、温度、max_tokens、指定的工具名和tool_choice、按键排序的options）计算SHA-256，
+ * 内容相同的请求得到相同的指纹，用于响应缓存和在途请求合并
+ */
+public final class RequestFingerprint {
+
+    private RequestFingerprint() {
+    }
+
+    public static String of(ChatRequest request) {
+        MessageDigest digest = sha256();
+        update(digest, request.getModel());
+        for (ChatRequest.Message message : request.getMessages()) {
+            update(digest, message.getRole() == null ? null : message.getRole().toLowerCase());
+            update(digest, message.getContent());
+        }
+        update(digest, String.valueOf(request.getTemperature()));
+        update(digest, String.valueOf(request.getMax_tokens()));
+        // 工具选择不同，模型可用的工具不同；未指定（按规则选择）与空列表（不携带工具）也不同
+        update(digest, request.getTools() == null ? null : String.valueOf(request.getTools().size()));
+        if (request.getTools() != null) {
+            for (ChatRequest.Tool tool : request.getTools()) {
+                update(digest, tool == null || tool.getFunction() == null ? null : tool.getFunction().getName());
+            }
+        }
+        update(digest, String.valueOf(request.getTool_choice()));
+        if (request.getOptions() != null) {
+            new TreeMap<>(request.getOptions()).forEach((name, value) -> {
+                update(digest, name);
+                update(digest, String.valueOf(value));
+            });
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * 写入带长度前缀的字段，避免字段拼接产生歧义（如 "ab"+"c" 与 "a"+"bc"）
+     */
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            digest.update(ByteBuffer.allocate(4).putInt(-1).array());
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.yeelovo.ai.cache;
+
+import com.yeelovo.ai.model.openai.ChatRequest;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 确定性请求的精确匹配响应缓存
+ * 只缓存 temperature=0、n≤1 且不使用服务端会话记忆的请求；键为调用方Key加规范化请求的指纹，默认不跨Key命中。
+ * 按条数和字节数做LRU淘汰，过期条目在读取时丢弃
+ */
+@Component
+@EnableConfigurationProperties(ResponseCacheProperties.class)
+public class ResponseCache {
+
+    private final ResponseCacheProperties properties;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // accessOrder=true，迭代顺序即LRU顺序
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong evictions = new AtomicLong(0);
+    private final AtomicLong savedNanos = new AtomicLong(0);
+
+    public ResponseCache(ResponseCacheProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * 请求是否可以走缓存：结果必须只由请求内容决定
+     */
+    public boolean isCacheable(ChatRequest request) {
+        return properties.isEnabled()
+                && request.getTemperature() != null && request.getTemperature() == 0.0
+                && (request.getN() == null || request.getN() <= 1)
+                && !request.isMemoryEnabled()
+                && request.getMessages() != null && !request.getMessages().isEmpty();
+    }
+
+    /**
+     * 查询缓存，命中时累计节省的上游耗时
+     * @return 缓存的回复内容，未命中返回null
+     */
+    public String get(String key) {
+        long now = System.nanoTime();
+        Entry entry;
+        lock.lock();
+        try {
+            entry = entries.get(key);
+            if (entry != null && now - entry.expiresAt > 0) {
+                entries.remove(key);
+                bytes -= entry.weight;
+                entry = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        savedNanos.addAndGet(entry.upstreamNanos);
+        return entry.content;
+    }
+
+    /**
+     * 写入缓存
+     * @param upstreamNanos 本次上游调用耗时，用于统计命中节省的时间
+     */
+    public void put(String key, String content, long upstreamNanos) {
+        if (content == null) {
+            return;
+        }
+        long weight = weigh(key, content);
+        if (weight > properties.getMaxBytes()) {
+            return;
+        }
+        Entry entry = new Entry(content, weight, upstreamNanos, System.nanoTime() + properties.getTtl().toNanos());
+        lock.lock();
+        try {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                bytes -= previous.weight;
+            }
+            bytes += weight;
+
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext() && (entries.size() > properties.getMaxEntries() || bytes > properties.getMaxBytes())) {
+                Map.Entry<String, Entry> eldest = it.next();
+                it.remove();
+                bytes -= eldest.getValue().weight;
+                evictions.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 计算规范化请求的键，未开启 share-across-clients 时带上调用方Key
+     */
+    public String key(ChatRequest request) {
+        String fingerprint = RequestFingerprint.of(request);
+        if (properties.isShareAcrossClients()) {
+            return fingerprint;
+        }
+        return (request.getClientKey() == null ? "" : request.getClientKey()) + ":" + fingerprint;
+    }
+
+    public int getReplayChunkSize() {
+        return properties.getReplayChunkSize();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            result.put("entries", entries.size());
+            result.put("bytes", bytes);
+        } finally {
+            lock.unlock();
+        }
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        result.put("hits", hitCount);
+        result.put("misses", misses.get());
+        result.put("hitRatio", total == 0 ? 0.0 : (double) hitCount / total);
+        result.put("evictions", evictions.get());
+        result.put("latencySavedMs", savedNanos.get() / 1_000_000);
+        return result;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getBytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getSavedNanos() {
+        return savedNanos.get();
+    }
+
+    private static long weigh(String key, String content) {
+        // 字符串按UTF-16计，外加条目对象的固定开销
+        return 2L * (key.length() + content.length()) + 64;
+    }
+
+    private record Entry(String content, long weight, long upstreamNanos, long expiresAt) {
+    }
+}
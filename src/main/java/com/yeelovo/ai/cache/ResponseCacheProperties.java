@@ -0,0 +1,32 @@
+package com.yeelovo.ai.cache;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 响应缓存配置
+ */
+@Data
+@ConfigurationProperties(prefix = "proxy.cache")
+public class ResponseCacheProperties {
+
+    // 是否启用响应缓存
+    private boolean enabled = true;
+
+    // 最大缓存条数
+    private int maxEntries = 10000;
+
+    // 缓存内容总字节数上限（按UTF-16估算）
+    private long maxBytes = 64L * 1024 * 1024;
+
+    // 缓存有效期
+    private Duration ttl = Duration.ofMinutes(10);
+
+    // 不同调用方Key的相同请求是否共享缓存；默认每个Key各自缓存，与在途合并的隔离方式一致
+    private boolean shareAcrossClients = false;
+
+    // 流式请求命中缓存时，每个回放数据块的字符数
+    private int replayChunkSize = 32;
+}
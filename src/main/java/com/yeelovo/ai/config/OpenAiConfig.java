@@ -1,37 +1,61 @@
 package com.yeelovo.ai.config;
 
+import com.yeelovo.ai.memory.BoundedChatMemory;
+import com.yeelovo.ai.memory.ChatMemoryProperties;
+import com.yeelovo.ai.memory.JdbcChatMemory;
 import io.modelcontextprotocol.client.McpSyncClient;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
-import org.springframework.ai.chat.memory.InMemoryChatMemory;
+import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.mcp.SyncMcpToolCallbackProvider;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.openai.OpenAiChatOptions;
-import org.springframework.ai.tool.ToolCallbackProvider;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
 
 @Component
+@EnableConfigurationProperties(ChatMemoryProperties.class)
 public class OpenAiConfig {
     @Autowired
     private OpenAiChatModel openAiChatModel;
     @Autowired
-    private ToolCallbackProvider toolCallbackProvider;
-    @Autowired
     private ChatModel chatModel;
 
     @Bean
     public ChatClient openAiChatClient() {
         ChatClient.Builder builder = ChatClient.builder(openAiChatModel);
-        builder.defaultTools(toolCallbackProvider.getToolCallbacks());
-        builder.defaultAdvisors(new MessageChatMemoryAdvisor(new InMemoryChatMemory()));
+        // 不挂载默认工具：每个请求携带的工具由ToolCatalog按请求选择
         builder.defaultOptions(OpenAiChatOptions.builder().model("gpt-4o").build());
         return builder.build();
     }
 
+    /**
+     * 有界的按会话存储的聊天记忆
+     * proxy.memory.store=jdbc 时以内存为热数据层，批量异步持久化到数据库
+     */
+    @Bean
+    public ChatMemory chatMemory(ChatMemoryProperties chatMemoryProperties, ObjectProvider<JdbcTemplate> jdbcTemplate) {
+        BoundedChatMemory hotTier = new BoundedChatMemory(chatMemoryProperties);
+        if ("jdbc".equalsIgnoreCase(chatMemoryProperties.getStore())) {
+            return new JdbcChatMemory(hotTier, jdbcTemplate.getObject(), chatMemoryProperties);
+        }
+        return hotTier;
+    }
+
+    /**
+     * 记忆顾问不作为默认顾问注册，只在请求携带会话ID时按请求挂载
+     */
+    @Bean
+    public MessageChatMemoryAdvisor chatMemoryAdvisor(ChatMemory chatMemory) {
+        return new MessageChatMemoryAdvisor(chatMemory);
+    }
+
 }
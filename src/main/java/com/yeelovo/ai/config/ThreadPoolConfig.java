@@ -1,7 +1,12 @@
 package com.yeelovo.ai.config;
 
+import com.yeelovo.ai.monitor.ExecutorMonitor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
@@ -11,6 +16,7 @@ import java.util.concurrent.ThreadPoolExecutor;
 /**
  * 线程池统一配置类
  * 为不同业务场景提供专用线程池，优化资源利用
+ * 开启 spring.threads.virtual.enabled 且运行在Java 21+ 时，改用虚拟线程执行器；否则使用下面的平台线程池
  */
 @Configuration
 @EnableAsync
@@ -18,6 +24,12 @@ public class ThreadPoolConfig {
 
     // CPU核心数
     private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+
+    private final ExecutorMonitor executorMonitor;
+
+    public ThreadPoolConfig(ExecutorMonitor executorMonitor) {
+        this.executorMonitor = executorMonitor;
+    }
     
     /**
      * 流式处理专用线程池
@@ -25,8 +37,11 @@ public class ThreadPoolConfig {
      * 特点：线程数量相对更多，避免阻塞
      */
     @Bean("streamTaskExecutor")
+    @ConditionalOnThreading(Threading.PLATFORM)
     public Executor streamTaskExecutor() {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        // 统计在途任务数
+        executor.setTaskDecorator(executorMonitor.decorator("streamTaskExecutor"));
         
         // 核心线程数 = CPU核心数 * 2
         // I/O密集型任务适合更多的线程数
@@ -69,8 +84,11 @@ public class ThreadPoolConfig {
      * 特点：线程数与CPU核心数相近，减少上下文切换
      */
     @Bean("blockingTaskExecutor")
+    @ConditionalOnThreading(Threading.PLATFORM)
     public Executor blockingTaskExecutor() {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        // 统计在途任务数
+        executor.setTaskDecorator(executorMonitor.decorator("blockingTaskExecutor"));
         
         // 核心线程数 = CPU核心数 + 1
         // 计算密集型任务适合接近CPU核心数的线程数
@@ -107,8 +125,11 @@ public class ThreadPoolConfig {
      * 特点：更大的容量和更多的线程，适合高并发测试场景
      */
     @Bean("loadTestExecutor")
+    @ConditionalOnThreading(Threading.PLATFORM)
     public Executor loadTestExecutor() {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        // 统计在途任务数
+        executor.setTaskDecorator(executorMonitor.decorator("loadTestExecutor"));
         
         // 支持高并发的核心线程数
         executor.setCorePoolSize(CPU_COUNT * 4);
@@ -136,4 +157,169 @@ public class ThreadPoolConfig {
         
         return executor;
     }
-} 
\ No newline at end of file
+
+    /**
+     * 离线批处理线程池
+     * 每个任务是一次阻塞的上游调用，并发由各批次的并发上限控制，因此不排队：需要时直接创建线程
+     */
+    @Bean("batchExecutor")
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public Executor batchExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        // 统计在途任务数
+        executor.setTaskDecorator(executorMonitor.decorator("batchExecutor"));
+
+        executor.setCorePoolSize(CPU_COUNT * 2);
+
+        // 覆盖 proxy.batch.max-concurrency × max-running-batches 的默认值
+        executor.setMaxPoolSize(256);
+
+        // 不排队，超过核心线程数时创建新线程
+        executor.setQueueCapacity(0);
+
+        // 线程空闲时间（秒）
+        executor.setKeepAliveSeconds(60);
+
+        // 线程名前缀
+        executor.setThreadNamePrefix("batch-task-");
+
+        // 拒绝策略：由批次调度线程执行，相当于暂停读取输入
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+
+        // 等待所有任务结束后再关闭线程池
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+
+        // 关闭线程池等待时间（秒）
+        executor.setAwaitTerminationSeconds(60);
+
+        executor.setAllowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    /**
+     * 工具调用线程池
+     * 同一轮回复的多个工具调用并发执行（见ParallelToolCallingManager），超时时中断执行线程；
+     * 不排队，线程用满时由发起调用的线程直接执行
+     */
+    @Bean("toolExecutor")
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public Executor toolExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        // 统计在途任务数
+        executor.setTaskDecorator(executorMonitor.decorator("toolExecutor"));
+
+        executor.setCorePoolSize(CPU_COUNT * 2);
+
+        // 工具调用多为等待MCP进程或外部接口的阻塞调用
+        executor.setMaxPoolSize(64);
+
+        // 不排队，超过核心线程数时创建新线程
+        executor.setQueueCapacity(0);
+
+        // 线程空闲时间（秒）
+        executor.setKeepAliveSeconds(60);
+
+        // 线程名前缀
+        executor.setThreadNamePrefix("tool-call-");
+
+        // 拒绝策略：调用者线程执行，退化为顺序执行
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+
+        // 等待所有任务结束后再关闭线程池
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+
+        // 关闭线程池等待时间（秒）
+        executor.setAwaitTerminationSeconds(30);
+
+        executor.setAllowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    /**
+     * Spring MVC异步请求执行器
+     * 控制器返回Flux时（批处理、负载测试的进度推送），MVC在该执行器上把每个元素写入响应（同一响应的写入不会并发）；
+     * 不配置时MVC使用每个任务新建一个线程的SimpleAsyncTaskExecutor。
+     * 补全的响应式流式端点不经过MVC，不使用该执行器，见 ReactiveChatEndpointConfig
+     */
+    @Bean("mvcAsyncExecutor")
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public AsyncTaskExecutor mvcAsyncExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setTaskDecorator(executorMonitor.decorator("mvcAsyncExecutor"));
+        executor.setCorePoolSize(CPU_COUNT * 4);
+        executor.setMaxPoolSize(CPU_COUNT * 4);
+        executor.setQueueCapacity(10000);
+        executor.setKeepAliveSeconds(60);
+        executor.setThreadNamePrefix("mvc-async-");
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * 虚拟线程模式下的流式处理执行器
+     * 每个任务一个虚拟线程，SSE发送阻塞时只挂起虚拟线程，不占用平台线程
+     */
+    @Bean("streamTaskExecutor")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public Executor virtualStreamTaskExecutor() {
+        return virtualExecutor("stream-vt-", "streamTaskExecutor");
+    }
+
+    /**
+     * 虚拟线程模式下的阻塞调用执行器
+     */
+    @Bean("blockingTaskExecutor")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public Executor virtualBlockingTaskExecutor() {
+        return virtualExecutor("blocking-vt-", "blockingTaskExecutor");
+    }
+
+    /**
+     * 虚拟线程模式下的负载测试执行器
+     */
+    @Bean("loadTestExecutor")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public Executor virtualLoadTestExecutor() {
+        return virtualExecutor("load-test-vt-", "loadTestExecutor");
+    }
+
+    /**
+     * 虚拟线程模式下的批处理执行器
+     */
+    @Bean("batchExecutor")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public Executor virtualBatchExecutor() {
+        return virtualExecutor("batch-vt-", "batchExecutor");
+    }
+
+    /**
+     * 虚拟线程模式下的工具调用执行器
+     */
+    @Bean("toolExecutor")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public Executor virtualToolExecutor() {
+        return virtualExecutor("tool-vt-", "toolExecutor");
+    }
+
+    /**
+     * 虚拟线程模式下的MVC异步请求执行器
+     */
+    @Bean("mvcAsyncExecutor")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public AsyncTaskExecutor virtualMvcAsyncExecutor() {
+        return virtualExecutor("mvc-async-vt-", "mvcAsyncExecutor");
+    }
+
+    private SimpleAsyncTaskExecutor virtualExecutor(String threadNamePrefix, String executorName) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+        executor.setVirtualThreads(true);
+        executor.setTaskDecorator(executorMonitor.decorator(executorName));
+        // 关闭时等待在途任务结束
+        executor.setTaskTerminationTimeout(60_000);
+        return executor;
+    }
+}
@@ -0,0 +1,85 @@
+package com.yeelovo.ai.config;
+
+import com.yeelovo.ai.upstream.ConnectionPoolStats;
+import com.yeelovo.ai.upstream.UpstreamProperties;
+import io.netty.channel.ChannelOption;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.http.client.ClientHttpRequestFactoryBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ReactorClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * 上游HTTP客户端配置
+ * 阻塞调用（RestClient）和流式调用（WebClient）共用同一个 Reactor Netty 连接池；
+ * 两个Bean替换Spring Boot自动配置的默认实现，Spring AI 的默认上游和 UpstreamClientFactory 构建的端点都通过它们访问上游。
+ * 两种调用都按数据到达逐块读取响应体，流式响应不会被聚合
+ */
+@Configuration
+@EnableConfigurationProperties(UpstreamProperties.class)
+public class UpstreamHttpConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider upstreamConnectionProvider(UpstreamProperties upstreamProperties,
+                                                         ConnectionPoolStats connectionPoolStats) {
+        UpstreamProperties.Http http = upstreamProperties.getHttp();
+        ConnectionProvider.Builder builder = ConnectionProvider.builder("upstream")
+                                                     .maxConnections(http.getMaxConnections())
+                                                     .pendingAcquireMaxCount(http.getPendingAcquireMaxCount() < 0
+                                                             ? http.getMaxConnections() * 2 : http.getPendingAcquireMaxCount())
+                                                     .pendingAcquireTimeout(http.getPendingAcquireTimeout())
+                                                     .maxIdleTime(http.getMaxIdleTime())
+                                                     .maxLifeTime(http.getMaxLifeTime())
+                                                     // 优先复用最近归还的连接，让多余的连接空闲到期后被回收
+                                                     .lifo()
+                                                     .metrics(true, () -> connectionPoolStats);
+        if (!http.getEvictInBackground().isZero()) {
+            builder.evictInBackground(http.getEvictInBackground());
+        }
+        return builder.build();
+    }
+
+    @Bean
+    public HttpClient upstreamHttpClient(ConnectionProvider upstreamConnectionProvider, UpstreamProperties upstreamProperties) {
+        UpstreamProperties.Http http = upstreamProperties.getHttp();
+        HttpClient client = HttpClient.create(upstreamConnectionProvider)
+                                    .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) http.getConnectTimeout().toMillis())
+                                    .option(ChannelOption.SO_KEEPALIVE, http.isTcpKeepAlive())
+                                    .responseTimeout(http.getResponseTimeout());
+        if (http.isHttp2()) {
+            client = client.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        }
+        if (http.isMetrics()) {
+            // 去掉查询参数，避免标签基数膨胀
+            client = client.metrics(true, UpstreamHttpConfig::uriTag);
+        }
+        return client;
+    }
+
+    /**
+     * WebClient（流式调用）使用的连接器
+     */
+    @Bean
+    public ClientHttpConnector upstreamClientHttpConnector(HttpClient upstreamHttpClient) {
+        return new ReactorClientHttpConnector(upstreamHttpClient);
+    }
+
+    /**
+     * RestClient（阻塞调用）使用的请求工厂，超时由共用的 HttpClient 控制，忽略 spring.http.client.* 的超时设置
+     */
+    @Bean
+    public ClientHttpRequestFactoryBuilder<ReactorClientHttpRequestFactory> upstreamClientHttpRequestFactoryBuilder(
+            HttpClient upstreamHttpClient) {
+        return settings -> new ReactorClientHttpRequestFactory(upstreamHttpClient);
+    }
+
+    private static String uriTag(String uri) {
+        int query = uri.indexOf('?');
+        return query < 0 ? uri : uri.substring(0, query);
+    }
+}
@@ -0,0 +1,33 @@
+package com.yeelovo.ai.context;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 上下文token预算配置
+ */
+@Data
+@ConfigurationProperties(prefix = "proxy.context")
+public class ContextProperties {
+
+    // 是否在调用上游前按token预算裁剪历史消息
+    private boolean enabled = true;
+
+    // 未配置的模型使用的上下文窗口大小
+    private int defaultContextWindow = 128_000;
+
+    // 各模型的上下文窗口，按模型名最长前缀匹配（如 gpt-4o 匹配 gpt-4o-2024-08-06）
+    private Map<String, Integer> contextWindows = new HashMap<>();
+
+    // 提示词token上限，0表示只受上下文窗口限制；调小可以缩短长对话的首token时间
+    private int maxPromptTokens = 0;
+
+    // 请求未指定 max_tokens 时为补全预留的token数
+    private int defaultCompletionReserve = 1024;
+
+    // 裁剪后是否插入一条说明省略了多少条消息的系统消息
+    private boolean insertOmissionNote = true;
+}
@@ -0,0 +1,194 @@
+package com.yeelovo.ai.context;
+
+import com.yeelovo.ai.token.TokenCounter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 上下文token预算裁剪
+ * 位于消息转换和上游调用之间：提示词超出模型预算时保留所有系统消息和最近的对话轮次，
+ * 丢弃中间较早的轮次并用一条说明消息代替。预算 = 上下文窗口 - max_tokens预留 - 会话记忆预留，
+ * 消息计数走 TokenCounter 的按内容缓存，客户端重发的历史不会被重复分词
+ */
+@Slf4j
+@Component
+@EnableConfigurationProperties(ContextProperties.class)
+public class ContextTrimmer {
+
+    private final ContextProperties properties;
+    private final TokenCounter tokenCounter;
+
+    private final AtomicLong trimmedRequests = new AtomicLong(0);
+    private final AtomicLong droppedMessages = new AtomicLong(0);
+    private final AtomicLong droppedTokens = new AtomicLong(0);
+    private final AtomicLong overBudgetRequests = new AtomicLong(0);
+
+    public ContextTrimmer(ContextProperties properties, TokenCounter tokenCounter) {
+        this.properties = properties;
+        this.tokenCounter = tokenCounter;
+    }
+
+    /**
+     * 按预算裁剪消息
+     * @param maxTokens 请求的 max_tokens，为空时使用默认预留
+     * @param reservedTokens 额外预留的token数（如服务端会话记忆会追加的历史）
+     */
+    public Result trim(String model, List<Message> messages, Integer maxTokens, int reservedTokens) {
+        int[] counts = new int[messages.size()];
+        int total = TokenCounter.TOKENS_PER_REPLY;
+        for (int i = 0; i < counts.length; i++) {
+            Message message = messages.get(i);
+            counts[i] = tokenCounter.countMessage(model, message.getMessageType().getValue(), message.getText());
+            total += counts[i];
+        }
+
+        int budget = budget(model, maxTokens, reservedTokens);
+        if (!properties.isEnabled() || total <= budget || messages.size() <= 1) {
+            return new Result(messages, total, 0);
+        }
+
+        // 系统消息和最后一条消息无论如何都保留
+        int last = messages.size() - 1;
+        boolean[] keep = new boolean[messages.size()];
+        int used = TokenCounter.TOKENS_PER_REPLY + counts[last];
+        keep[last] = true;
+        for (int i = 0; i < last; i++) {
+            if (messages.get(i).getMessageType() == MessageType.SYSTEM) {
+                keep[i] = true;
+                used += counts[i];
+            }
+        }
+
+        String note = null;
+        int noteTokens = 0;
+        if (properties.isInsertOmissionNote()) {
+            // 预留说明消息的位置，条数的位数变化对token数影响可以忽略
+            note = omissionNote(last);
+            noteTokens = tokenCounter.countMessage(model, MessageType.SYSTEM.getValue(), note);
+            used += noteTokens;
+        }
+
+        // 从后往前保留最近的轮次，遇到放不下的消息即停止，保证保留的历史是连续的
+        int firstKept = last;
+        for (int i = last - 1; i >= 0; i--) {
+            if (keep[i]) {
+                continue;
+            }
+            if (used + counts[i] > budget) {
+                break;
+            }
+            keep[i] = true;
+            used += counts[i];
+            firstKept = i;
+        }
+
+        // 保留的历史不以助手消息开头，避免出现没有提问的回答
+        while (firstKept < last && messages.get(firstKept).getMessageType() == MessageType.ASSISTANT) {
+            keep[firstKept] = false;
+            used -= counts[firstKept];
+            firstKept++;
+            while (firstKept < last && messages.get(firstKept).getMessageType() == MessageType.SYSTEM) {
+                firstKept++;
+            }
+        }
+
+        int dropped = 0;
+        for (boolean kept : keep) {
+            if (!kept) {
+                dropped++;
+            }
+        }
+        if (dropped == 0) {
+            // 系统消息和最后一条消息本身已超出预算，无法再裁剪
+            overBudgetRequests.incrementAndGet();
+            return new Result(messages, total, 0);
+        }
+
+        List<Message> result = new ArrayList<>(messages.size() - dropped + 1);
+        boolean noteInserted = note == null;
+        int tokens = TokenCounter.TOKENS_PER_REPLY;
+        for (int i = 0; i < messages.size(); i++) {
+            if (!keep[i]) {
+                continue;
+            }
+            // 说明消息放在前置系统消息之后、保留的第一条对话消息之前
+            if (!noteInserted && messages.get(i).getMessageType() != MessageType.SYSTEM) {
+                note = omissionNote(dropped);
+                result.add(new SystemMessage(note));
+                tokens += tokenCounter.countMessage(model, MessageType.SYSTEM.getValue(), note);
+                noteInserted = true;
+            }
+            result.add(messages.get(i));
+            tokens += counts[i];
+        }
+        if (tokens > budget) {
+            overBudgetRequests.incrementAndGet();
+        }
+
+        trimmedRequests.incrementAndGet();
+        droppedMessages.addAndGet(dropped);
+        droppedTokens.addAndGet(Math.max(0, total - tokens));
+        log.debug("上下文超出预算，模型 {} 预算 {}，裁剪 {} 条消息，{} -> {} tokens", model, budget, dropped, total, tokens);
+        return new Result(result, tokens, dropped);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>(tokenCounter.snapshot());
+        result.put("trimmedRequests", trimmedRequests.get());
+        result.put("droppedMessages", droppedMessages.get());
+        result.put("droppedTokens", droppedTokens.get());
+        result.put("overBudgetRequests", overBudgetRequests.get());
+        return result;
+    }
+
+    /**
+     * 计算提示词可用的token预算
+     */
+    int budget(String model, Integer maxTokens, int reservedTokens) {
+        int window = contextWindow(model);
+        int reserve = maxTokens != null && maxTokens > 0 ? maxTokens : properties.getDefaultCompletionReserve();
+        int budget = window - reserve - reservedTokens;
+        if (properties.getMaxPromptTokens() > 0) {
+            budget = Math.min(budget, properties.getMaxPromptTokens());
+        }
+        return Math.max(0, budget);
+    }
+
+    private int contextWindow(String model) {
+        Integer window = null;
+        int matched = -1;
+        if (model != null) {
+            for (Map.Entry<String, Integer> entry : properties.getContextWindows().entrySet()) {
+                String prefix = entry.getKey();
+                if (prefix.length() > matched && model.startsWith(prefix)) {
+                    window = entry.getValue();
+                    matched = prefix.length();
+                }
+            }
+        }
+        return window != null ? window : properties.getDefaultContextWindow();
+    }
+
+    private static String omissionNote(int dropped) {
+        return "（为控制上下文长度，已省略 " + dropped + " 条较早的对话消息）";
+    }
+
+    /**
+     * 裁剪结果
+     * @param messages 发往上游的消息
+     * @param promptTokens 本地计数的提示词token数
+     * @param droppedMessages 被丢弃的消息数，0表示未裁剪
+     */
+    public record Result(List<Message> messages, int promptTokens, int droppedMessages) {
+    }
+}
@@ -1,20 +1,41 @@
 package com.yeelovo.ai.controller;
 
+import com.yeelovo.ai.admission.AdmissionService;
+import com.yeelovo.ai.cache.ResponseCache;
+import com.yeelovo.ai.context.ContextTrimmer;
+import com.yeelovo.ai.hedge.RequestHedger;
+import com.yeelovo.ai.mcp.CompletionMcpTools;
+import com.yeelovo.ai.mcp.McpClientPools;
+import com.yeelovo.ai.memory.BoundedChatMemory;
+import com.yeelovo.ai.memory.JdbcChatMemory;
+import com.yeelovo.ai.monitor.ExecutorMonitor;
+import com.yeelovo.ai.monitor.StreamCancellationStats;
+import com.yeelovo.ai.stream.DeltaBatcher;
+import com.yeelovo.ai.stream.StreamCoalescer;
+import com.yeelovo.ai.token.TokenUsageStats;
+import com.yeelovo.ai.tool.ParallelToolCallingManager;
+import com.yeelovo.ai.tool.ToolCatalog;
+import com.yeelovo.ai.tool.ToolResultCache;
+import com.yeelovo.ai.upstream.ConnectionPoolStats;
+import com.yeelovo.ai.upstream.UpstreamRouter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
 import reactor.core.publisher.Flux;
 
 import java.io.IOException;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 
 @RestController
 @RequestMapping("/api/test")
@@ -25,9 +46,47 @@ public class ApiTestController {
     @Qualifier("openaiChatClient")
     private final ChatClient openaiChatClient;
 
+    // 复用配置的流式执行器（虚拟线程模式下为每任务一个虚拟线程），不再每个请求新建线程池
+    @Qualifier("streamTaskExecutor")
+    private final Executor streamTaskExecutor;
+
+    private final ExecutorMonitor executorMonitor;
+
+    private final AdmissionService admissionService;
+
+    private final ChatMemory chatMemory;
+
+    private final ResponseCache responseCache;
+
+    private final StreamCoalescer streamCoalescer;
+
+    private final DeltaBatcher deltaBatcher;
+
+    private final StreamCancellationStats streamCancellationStats;
+
+    private final TokenUsageStats tokenUsageStats;
+
+    private final ContextTrimmer contextTrimmer;
+
+    private final UpstreamRouter upstreamRouter;
+
+    private final RequestHedger requestHedger;
+
+    private final ConnectionPoolStats connectionPoolStats;
+
+    private final ToolResultCache toolResultCache;
+
+    private final McpClientPools mcpClientPools;
+
+    private final CompletionMcpTools completionMcpTools;
+
+    private final ParallelToolCallingManager toolCallingManager;
+
+    private final ToolCatalog toolCatalog;
+
     @GetMapping("/blocking")
     public String testBlocking(@RequestParam String prompt) {
-        return openaiChatClient.prompt().user(prompt).call().content();
+        return openaiChatClient.prompt().user(prompt).tools(toolCatalog.select(prompt)).call().content();
     }
 
     @GetMapping("/streaming")
@@ -38,29 +97,30 @@ public class ApiTestController {
         // 线程安全的列表，用于收集所有内容
         CopyOnWriteArrayList<String> contentBuffer = new CopyOnWriteArrayList<>();
         
-        ExecutorService executor = Executors.newSingleThreadExecutor();
+        // 上游订阅句柄，客户端断开或超时时取消上游生成
+        Disposable.Swap upstream = Disposables.swap();
 
         // 设置回调处理
         emitter.onCompletion(() -> {
             log.info("客户端断开连接");
-            executor.shutdown();
+            upstream.dispose();
         });
-        
+
         emitter.onTimeout(() -> {
             log.info("连接超时");
-            executor.shutdown();
+            upstream.dispose();
         });
-        
+
         emitter.onError(error -> {
             log.error("SSE错误: {}", error.getMessage());
-            executor.shutdown();
+            upstream.dispose();
         });
 
-        executor.execute(() -> {
+        streamTaskExecutor.execute(() -> {
             try {
-                Flux<String> contentFlux = openaiChatClient.prompt().user(prompt).stream().content();
+                Flux<String> contentFlux = openaiChatClient.prompt().user(prompt).tools(toolCatalog.select(prompt)).stream().content();
 
-                contentFlux.subscribe(
+                upstream.update(contentFlux.subscribe(
                     // 处理每个数据项
                     content -> {
                         try {
@@ -68,9 +128,11 @@ public class ApiTestController {
                             contentBuffer.add(content);
                             // 发送到客户端
                             emitter.send(content);
-                            log.info("发送流式内容: {}", content);
-                        } catch (IOException e) {
-                            log.error("发送流式响应失败", e);
+                            log.debug("发送流式内容: {}", content);
+                        } catch (IOException | IllegalStateException e) {
+                            log.info("发送流式响应失败，取消上游生成: {}", e.getMessage());
+                            upstream.dispose();
+                            emitter.completeWithError(e);
                         }
                     },
                     // 处理错误
@@ -86,7 +148,6 @@ public class ApiTestController {
                         } catch (IOException e) {
                             log.error("发送错误响应失败", e);
                         }
-                        executor.shutdown();
                     },
                     // 处理完成
                     () -> {
@@ -98,17 +159,157 @@ public class ApiTestController {
                         } catch (IOException e) {
                             log.error("发送完成响应失败", e);
                         }
-                        executor.shutdown();
                     }
-                );
+                ));
 
             } catch (Exception e) {
                 log.error("流式调用异常", e);
                 emitter.completeWithError(e);
-                executor.shutdown();
             }
         });
 
         return emitter;
     }
-} 
\ No newline at end of file
+
+    /**
+     * 查看执行模式（虚拟线程/平台线程）、各执行器在途任务数和虚拟线程钉住次数
+     */
+    @GetMapping("/threads")
+    public Map<String, Object> threads() {
+        return executorMonitor.snapshot();
+    }
+
+    /**
+     * 查看准入控制状态：活跃数、排队数、放行和拒绝次数
+     */
+    @GetMapping("/admission")
+    public Map<String, Object> admission() {
+        return admissionService.snapshot();
+    }
+
+    /**
+     * 查看会话记忆状态：命中率、淘汰次数和容量
+     */
+    @GetMapping("/memory")
+    public Map<String, Object> memory() {
+        if (chatMemory instanceof JdbcChatMemory jdbcChatMemory) {
+            return jdbcChatMemory.snapshot();
+        }
+        if (chatMemory instanceof BoundedChatMemory boundedChatMemory) {
+            return boundedChatMemory.snapshot();
+        }
+        return Map.of("type", chatMemory.getClass().getSimpleName());
+    }
+
+    /**
+     * 查看响应缓存状态：命中率、缓存字节数和节省的上游耗时
+     */
+    @GetMapping("/cache")
+    public Map<String, Object> cache() {
+        return responseCache.snapshot();
+    }
+
+    /**
+     * 查看工具结果缓存状态：各工具的命中率、缓存条数和节省的调用耗时
+     */
+    @GetMapping("/tool-cache")
+    public Map<String, Object> toolCache() {
+        return toolResultCache.snapshot();
+    }
+
+    /**
+     * 查看工具调用执行状态：每轮调用数、平均并行度、超时次数和各工具耗时
+     */
+    @GetMapping("/tools")
+    public Map<String, Object> tools() {
+        return toolCallingManager.snapshot();
+    }
+
+    /**
+     * 查看工具目录和按请求选择工具的统计：已注册的工具、各选择方式的请求数和未携带的工具定义字节数
+     */
+    @GetMapping("/tool-catalog")
+    public Map<String, Object> toolCatalog() {
+        return toolCatalog.snapshot();
+    }
+
+    /**
+     * 查看MCP工作进程池状态：各服务的进程数、在途调用、崩溃和启动失败次数
+     */
+    @GetMapping("/mcp-pool")
+    public Map<String, Object> mcpPool() {
+        return mcpClientPools.snapshot();
+    }
+
+    /**
+     * 查看MCP服务端状态：会话数、在途调用、进度通知数和各工具的调用结果
+     */
+    @GetMapping("/mcp-server")
+    public Map<String, Object> mcpServer() {
+        return completionMcpTools.snapshot();
+    }
+
+    /**
+     * 查看在途请求合并状态：首发请求数和合并加入的请求数
+     */
+    @GetMapping("/coalescing")
+    public Map<String, Object> coalescing() {
+        return streamCoalescer.snapshot();
+    }
+
+    /**
+     * 查看流式增量合并：启用合并的流数、上游增量数、发出的数据块数和平均每块合并的增量数
+     */
+    @GetMapping("/delta-batching")
+    public Map<String, Object> deltaBatching() {
+        return deltaBatcher.snapshot();
+    }
+
+    /**
+     * 查看流式请求提前取消统计：取消次数和估算节省的token数
+     */
+    @GetMapping("/cancellation")
+    public Map<String, Object> cancellation() {
+        return streamCancellationStats.snapshot();
+    }
+
+    /**
+     * 查看token用量：按模型和API Key累计的提示词与补全token数
+     */
+    @GetMapping("/usage")
+    public Map<String, Object> usage() {
+        return tokenUsageStats.snapshot();
+    }
+
+    /**
+     * 查看上下文裁剪统计：裁剪的请求数、丢弃的消息和token数，以及消息计数缓存命中情况
+     */
+    @GetMapping("/context")
+    public Map<String, Object> context() {
+        return contextTrimmer.snapshot();
+    }
+
+    /**
+     * 查看上游端点：状态、在途数、延迟EWMA、失败和摘除次数
+     */
+    @GetMapping("/upstreams")
+    public Map<String, Object> upstreams() {
+        return upstreamRouter.snapshot();
+    }
+
+    /**
+     * 查看阻塞请求对冲：对冲率、对冲胜出率、剩余预算和各模型当前的对冲延迟
+     */
+    @GetMapping("/hedging")
+    public Map<String, Object> hedging() {
+        return requestHedger.snapshot();
+    }
+
+    /**
+     * 查看上游连接池：按上游地址的活跃、空闲、等待数和上限
+     */
+    @GetMapping("/http-client")
+    public Map<String, Object> httpClient() {
+        return connectionPoolStats.snapshot();
+    }
+}
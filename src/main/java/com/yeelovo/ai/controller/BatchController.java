@@ -0,0 +1,142 @@
+package com.yeelovo.ai.controller;
+
+import com.yeelovo.ai.batch.BatchJob;
+import com.yeelovo.ai.batch.BatchService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 离线批处理接口
+ * 请求体为JSONL，每行一个聊天补全请求（ChatRequest），或OpenAI批处理格式 {"custom_id", "method", "url", "body"}；
+ * 结果写入输出JSONL，每行带输入行号和 custom_id，顺序为完成顺序
+ */
+@RestController
+@RequestMapping("/v1/batches")
+@RequiredArgsConstructor
+public class BatchController {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private final BatchService batchService;
+
+    /**
+     * 上传JSONL并启动批次，请求体边接收边写入磁盘
+     * @param concurrency 并发数，被限流时自动降低
+     * @param rate 发起速率上限（请求/秒），0表示不限制
+     */
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> create(HttpServletRequest request,
+                                                      @RequestParam(required = false) Integer concurrency,
+                                                      @RequestParam(required = false) Double rate,
+                                                      @RequestHeader HttpHeaders headers) throws IOException {
+        BatchJob job;
+        try {
+            job = batchService.create(request.getInputStream(), concurrency, rate, clientKey(headers));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", e.getMessage()));
+        }
+        return ResponseEntity.ok(describe(job));
+    }
+
+    @GetMapping
+    public List<Map<String, Object>> list() {
+        return batchService.list().stream().map(BatchJob::snapshot).toList();
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> get(@PathVariable String id) {
+        BatchJob job = batchService.get(id);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(job.snapshot());
+    }
+
+    /**
+     * 下载输出文件，批次运行中也可以下载已完成的部分
+     */
+    @GetMapping("/{id}/output")
+    public ResponseEntity<Resource> output(@PathVariable String id) {
+        BatchJob job = batchService.get(id);
+        if (job == null || !job.getOutput().toFile().exists()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok().contentType(NDJSON).body(new FileSystemResource(job.getOutput()));
+    }
+
+    /**
+     * 通过SSE实时推送进度，批次结束后推送最终结果并关闭连接
+     */
+    @GetMapping(value = "/{id}/progress", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<Map<String, Object>>>> progress(@PathVariable String id) {
+        BatchJob job = batchService.get(id);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(batchService.progress(job)
+                                         .map(snapshot -> ServerSentEvent.builder(snapshot).event("progress").build()));
+    }
+
+    /**
+     * 停止批次，在途请求结束并写入结果后停止，之后可以续跑
+     */
+    @PostMapping("/{id}/cancel")
+    public ResponseEntity<Map<String, Object>> cancel(@PathVariable String id) {
+        if (!batchService.stop(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(batchService.get(id).snapshot());
+    }
+
+    /**
+     * 从检查点续跑已停止、失败或因进程退出而中断的批次
+     */
+    @PostMapping("/{id}/resume")
+    public ResponseEntity<Map<String, Object>> resume(@PathVariable String id,
+                                                      @RequestParam(required = false) Integer concurrency,
+                                                      @RequestParam(required = false) Double rate,
+                                                      @RequestHeader HttpHeaders headers) throws IOException {
+        BatchJob job;
+        try {
+            job = batchService.resume(id, concurrency, rate, clientKey(headers));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", e.getMessage()));
+        }
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(describe(job));
+    }
+
+    private Map<String, Object> describe(BatchJob job) {
+        Map<String, Object> result = new LinkedHashMap<>(job.snapshot());
+        result.put("progressUrl", "/v1/batches/" + job.getId() + "/progress");
+        result.put("outputUrl", "/v1/batches/" + job.getId() + "/output");
+        return result;
+    }
+
+    /**
+     * 批次内的请求使用提交者的API Key参与准入控制
+     */
+    private static String clientKey(HttpHeaders headers) {
+        String authorization = headers.getFirst(HttpHeaders.AUTHORIZATION);
+        if (authorization == null) {
+            return null;
+        }
+        return authorization.startsWith("Bearer ") ? authorization.substring(7).trim() : authorization.trim();
+    }
+}
@@ -0,0 +1,101 @@
+package com.yeelovo.ai.controller;
+
+import com.yeelovo.ai.admission.AdmissionRejectedException;
+import com.yeelovo.ai.memory.InvalidConversationIdException;
+import com.yeelovo.ai.tool.UnknownToolException;
+import com.yeelovo.ai.upstream.UnknownModelException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+
+/**
+ * 统一异常处理，错误体与OpenAI的错误格式保持一致
+ */
+@RestControllerAdvice
+@Slf4j
+public class GlobalExceptionHandler {
+
+    /**
+     * 准入被拒绝：返回429和Retry-After，而不是500
+     */
+    @ExceptionHandler(AdmissionRejectedException.class)
+    public ResponseEntity<Map<String, Object>> handleAdmissionRejected(AdmissionRejectedException e) {
+        log.warn("请求被拒绝: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                       .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .body(error(e.getMessage(), "rate_limit_exceeded"));
+    }
+
+    /**
+     * 请求指定了未注册的工具：返回400
+     */
+    @ExceptionHandler(UnknownToolException.class)
+    public ResponseEntity<Map<String, Object>> handleUnknownTool(UnknownToolException e) {
+        log.warn("请求的工具不存在: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .body(error(e.getMessage(), "invalid_request_error"));
+    }
+
+    /**
+     * 会话ID不能用于服务端会话记忆：返回400
+     */
+    @ExceptionHandler(InvalidConversationIdException.class)
+    public ResponseEntity<Map<String, Object>> handleInvalidConversationId(InvalidConversationIdException e) {
+        log.warn("会话ID无效: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .body(error(e.getMessage(), "invalid_request_error"));
+    }
+
+    /**
+     * 没有上游端点服务请求的模型：与OpenAI一致返回404
+     */
+    @ExceptionHandler(UnknownModelException.class)
+    public ResponseEntity<Map<String, Object>> handleUnknownModel(UnknownModelException e) {
+        log.warn("请求的模型不可用: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .body(error(e.getMessage(), "invalid_request_error"));
+    }
+
+    /**
+     * 响应式端点不经过MVC的异常处理，按相同规则把异常转换为错误响应，其余异常返回500
+     */
+    ResponseEntity<Map<String, Object>> toResponse(Throwable e) {
+        if (e instanceof AdmissionRejectedException rejected) {
+            return handleAdmissionRejected(rejected);
+        }
+        if (e instanceof UnknownToolException unknownTool) {
+            return handleUnknownTool(unknownTool);
+        }
+        if (e instanceof UnknownModelException unknownModel) {
+            return handleUnknownModel(unknownModel);
+        }
+        if (e instanceof InvalidConversationIdException invalidConversationId) {
+            return handleInvalidConversationId(invalidConversationId);
+        }
+        if (e instanceof ResponseStatusException status) {
+            log.warn("请求无效: {}", status.getMessage());
+            return ResponseEntity.status(status.getStatusCode())
+                           .contentType(MediaType.APPLICATION_JSON)
+                           .body(error(status.getReason() != null ? status.getReason() : status.getMessage(), "invalid_request_error"));
+        }
+        log.error("响应式流式调用异常", e);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .body(error("调用AI服务失败", "server_error"));
+    }
+
+    static Map<String, Object> error(String message, String type) {
+        return Map.of("error", Map.of("message", message, "type", type));
+    }
+}
@@ -1,26 +1,24 @@
 package com.yeelovo.ai.controller;
 
-import com.yeelovo.ai.model.openai.ChatRequest;
-import com.yeelovo.ai.service.OpenAiCompatibleService;
+import com.yeelovo.ai.loadtest.LoadTestPlan;
+import com.yeelovo.ai.loadtest.LoadTestService;
+import com.yeelovo.ai.loadtest.LoadTestSession;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executor;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 负载测试控制器
- * 用于测试系统在高并发下的性能表现
+ * 用于测试系统在高并发下的性能表现，支持开环（固定到达速率）和闭环（固定并发用户）两种模式
  */
 @RestController
 @RequestMapping("/api/load-test")
@@ -28,138 +26,99 @@ import java.util.concurrent.atomic.AtomicInteger;
 @Slf4j
 public class LoadTestController {
 
-    private final OpenAiCompatibleService openAiCompatibleService;
-    
-    // 使用注入的线程池，而不是默认的ForkJoinPool
-    @Qualifier("streamTaskExecutor") 
-    private final Executor streamTaskExecutor;
-    
-    // 专用于处理测试任务的线程池
-    @Qualifier("blockingTaskExecutor")
-    private final Executor blockingTaskExecutor;
-    
-    // 用于记录测试会话
-    private final Map<String, List<SseEmitter>> testSessions = new ConcurrentHashMap<>();
-    
-    // 计数器
-    private final AtomicInteger successCounter = new AtomicInteger(0);
-    private final AtomicInteger failureCounter = new AtomicInteger(0);
-    
+    private final LoadTestService loadTestService;
+
     /**
      * 开始负载测试
-     * @param concurrentUsers 并发用户数
+     * @param mode closed 固定并发用户；open 固定到达速率
+     * @param concurrentUsers 闭环模式的并发用户数；开环模式的最大在途请求数
+     * @param rate 开环模式的到达速率（请求/秒）
+     * @param durationSeconds 持续时间（秒）
+     * @param requests 请求总数上限，0表示只受持续时间限制
+     * @param distinct 每个请求带唯一标记，避免被在途合并或响应缓存吸收
      * @param prompt 提示词
      * @return 测试会话ID
      */
     @PostMapping("/start")
-    public ResponseEntity<Map<String, String>> startLoadTest(
+    public ResponseEntity<Map<String, Object>> startLoadTest(
+            @RequestParam(defaultValue = "closed") String mode,
             @RequestParam(defaultValue = "10") int concurrentUsers,
+            @RequestParam(defaultValue = "10") double rate,
+            @RequestParam(defaultValue = "60") long durationSeconds,
+            @RequestParam(defaultValue = "0") int requests,
+            @RequestParam(defaultValue = "gpt-4o") String model,
+            @RequestParam(required = false) Integer maxTokens,
+            @RequestParam(defaultValue = "true") boolean distinct,
             @RequestParam(defaultValue = "你好，请介绍一下自己") String prompt) {
-        
-        // 安全检查：限制最大并发用户数
-        if (concurrentUsers > 100) {
-            concurrentUsers = 100;
+
+        LoadTestPlan plan = LoadTestPlan.builder()
+                                    .mode("open".equalsIgnoreCase(mode) ? LoadTestPlan.Mode.OPEN : LoadTestPlan.Mode.CLOSED)
+                                    .concurrency(concurrentUsers)
+                                    .rate(rate)
+                                    .duration(Duration.ofSeconds(durationSeconds))
+                                    .requests(requests)
+                                    .model(model)
+                                    .maxTokens(maxTokens)
+                                    .distinct(distinct)
+                                    .prompt(prompt)
+                                    .build();
+
+        LoadTestSession session;
+        try {
+            session = loadTestService.start(plan);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", e.getMessage()));
         }
-        
-        // 生成测试会话ID
-        String sessionId = "test-" + System.currentTimeMillis();
-        
-        // 重置计数器
-        successCounter.set(0);
-        failureCounter.set(0);
-        
-        // 创建存储该会话的SSE发射器列表
-        List<SseEmitter> emitters = Collections.synchronizedList(new ArrayList<>());
-        testSessions.put(sessionId, emitters);
-        
-        log.info("开始负载测试，会话ID: {}, 并发用户数: {}", sessionId, concurrentUsers);
-        
-        // 使用注入的线程池执行测试，而不是默认的ForkJoinPool
-        final int finalConcurrentUsers = concurrentUsers;
-        blockingTaskExecutor.execute(() -> {
-            try {
-                // 创建请求对象
-                ChatRequest request = createChatRequest(prompt);
-                
-                // 启动多个并发任务
-                List<CompletableFuture<Void>> futures = new ArrayList<>();
-                
-                for (int i = 0; i < finalConcurrentUsers; i++) {
-                    CompletableFuture<Void> future = CompletableFuture.supplyAsync(() -> {
-                        try {
-                            // 调用流式接口
-                            SseEmitter emitter = openAiCompatibleService.chatStream(request);
-                            emitters.add(emitter);
-                            
-                            // 记录成功数
-                            successCounter.incrementAndGet();
-                            return emitter;
-                        } catch (Exception e) {
-                            // 记录失败数
-                            failureCounter.incrementAndGet();
-                            log.error("负载测试任务失败: {}", e.getMessage());
-                            throw new RuntimeException(e);
-                        }
-                    }, streamTaskExecutor).thenApply(result -> null);
-                    
-                    futures.add(future);
-                }
-                
-                // 等待所有任务完成
-                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-                
-                log.info("负载测试完成，会话ID: {}, 成功: {}, 失败: {}", 
-                        sessionId, successCounter.get(), failureCounter.get());
-                
-            } catch (Exception e) {
-                log.error("负载测试执行失败", e);
-            }
-        });
-        
+
         return ResponseEntity.ok(Map.of(
-                "sessionId", sessionId,
-                "message", "负载测试已启动，并发用户数: " + concurrentUsers
+                "sessionId", session.getId(),
+                "message", "负载测试已启动",
+                "plan", session.snapshot().get("plan"),
+                "progress", "/api/load-test/progress/" + session.getId()
         ));
     }
-    
+
     /**
-     * 获取测试状态
+     * 获取测试状态：请求数、吞吐、首token时间和端到端延迟分位数、错误分类
      */
     @GetMapping("/status/{sessionId}")
     public ResponseEntity<Map<String, Object>> getTestStatus(@PathVariable String sessionId) {
-        // 检查会话是否存在
-        if (!testSessions.containsKey(sessionId)) {
+        LoadTestSession session = loadTestService.get(sessionId);
+        if (session == null) {
             return ResponseEntity.notFound().build();
         }
-        
-        List<SseEmitter> emitters = testSessions.get(sessionId);
-        
-        // 统计结果
-        int total = emitters.size();
-        int success = successCounter.get();
-        int failure = failureCounter.get();
-        int inProgress = total - (success + failure);
-        
-        return ResponseEntity.ok(Map.of(
-                "sessionId", sessionId,
-                "total", total,
-                "success", success,
-                "failure", failure,
-                "inProgress", inProgress
-        ));
+        return ResponseEntity.ok(session.snapshot());
+    }
+
+    /**
+     * 通过SSE实时推送测试进度，测试结束后推送最终结果并关闭连接
+     */
+    @GetMapping(value = "/progress/{sessionId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<Map<String, Object>>>> progress(@PathVariable String sessionId) {
+        LoadTestSession session = loadTestService.get(sessionId);
+        if (session == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(loadTestService.progress(session)
+                                         .map(snapshot -> ServerSentEvent.builder(snapshot).event("progress").build()));
+    }
+
+    /**
+     * 停止测试，在途请求会被取消
+     */
+    @PostMapping("/stop/{sessionId}")
+    public ResponseEntity<Map<String, Object>> stop(@PathVariable String sessionId) {
+        if (!loadTestService.stop(sessionId)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(loadTestService.get(sessionId).snapshot());
     }
-    
+
     /**
-     * 创建一个聊天请求
+     * 列出保留中的测试（最新的在前）
      */
-    private ChatRequest createChatRequest(String prompt) {
-        List<ChatRequest.Message> messages = new ArrayList<>();
-        messages.add(new ChatRequest.Message("user", prompt));
-        
-        return ChatRequest.builder()
-                .model("gpt-4o")
-                .messages(messages)
-                .stream(true)
-                .build();
+    @GetMapping("/sessions")
+    public List<Map<String, Object>> sessions() {
+        return loadTestService.list().stream().map(LoadTestSession::snapshot).toList();
     }
-} 
\ No newline at end of file
+}
@@ -4,9 +4,11 @@ import com.yeelovo.ai.model.openai.ChatRequest;
 import com.yeelovo.ai.model.openai.ChatResponse;
 import com.yeelovo.ai.service.OpenAiCompatibleService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
@@ -16,15 +18,19 @@ import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 @RequiredArgsConstructor
 public class OpenAiCompatibleController {
 
+    private static final String CONVERSATION_ID_HEADER = "X-Conversation-Id";
+
     private final OpenAiCompatibleService openAiCompatibleService;
 
     /**
      * 聊天补全API - 阻塞式或流式（根据请求中的stream参数）
      */
     @PostMapping("/chat/completions")
-    public Object chatCompletions(@RequestBody ChatRequest request) {
+    public Object chatCompletions(@RequestBody ChatRequest request,
+                                  @RequestHeader HttpHeaders headers) {
+        bindHeaders(request, headers);
         if (Boolean.TRUE.equals(request.getStream())) {
-            return chatCompletionsStream(request);
+            return openAiCompatibleService.chatStream(request);
         } else {
             return chatCompletionsBlocking(request);
         }
@@ -41,9 +47,28 @@ public class OpenAiCompatibleController {
      * 流式调用
      */
     @PostMapping(value = "/chat/completions/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter chatCompletionsStream(@RequestBody ChatRequest request) {
+    public SseEmitter chatCompletionsStream(@RequestBody ChatRequest request,
+                                            @RequestHeader HttpHeaders headers) {
+        bindHeaders(request, headers);
         // 强制设置为流式
         request.setStream(true);
         return openAiCompatibleService.chatStream(request);
     }
-} 
\ No newline at end of file
+
+    // 响应式流式调用 /chat/completions/reactive 不经过MVC，见 ReactiveChatEndpointConfig
+
+    /**
+     * 从请求头中提取调用方API Key和会话ID
+     */
+    static void bindHeaders(ChatRequest request, HttpHeaders headers) {
+        String authorization = headers.getFirst(HttpHeaders.AUTHORIZATION);
+        if (authorization != null) {
+            request.setClientKey(authorization.startsWith("Bearer ") ? authorization.substring(7).trim() : authorization.trim());
+        }
+        // 请求体中的会话ID优先
+        String conversationId = headers.getFirst(CONVERSATION_ID_HEADER);
+        if (request.getConversation_id() == null && conversationId != null) {
+            request.setConversation_id(conversationId);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.yeelovo.ai.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yeelovo.ai.model.openai.ChatRequest;
+import com.yeelovo.ai.model.openai.ChatStreamResponse;
+import com.yeelovo.ai.service.OpenAiCompatibleService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServletHttpHandlerAdapter;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RequestPredicates;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
+import org.springframework.web.server.WebExceptionHandler;
+import org.springframework.web.server.i18n.AcceptHeaderLocaleContextResolver;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * 响应式流式端点 /v1/chat/completions/reactive
+ * 不经过Spring MVC：MVC处理Flux返回值时每个元素都要提交到异步执行器写出。这里与MCP服务端一样，
+ * 把WebFlux路由通过ServletHttpHandlerAdapter挂到Servlet下，以Servlet非阻塞I/O写出，没有执行器切换；
+ * 数据块在上游连接的事件循环线程上直接写入，客户端写不动时由背压暂停上游读取，慢客户端不占用线程
+ */
+@Configuration
+public class ReactiveChatEndpointConfig {
+
+    static final String PATH = "/v1/chat/completions/reactive";
+
+    private static final ParameterizedTypeReference<ServerSentEvent<ChatStreamResponse>> EVENT_TYPE =
+            new ParameterizedTypeReference<>() {
+            };
+
+    @Bean
+    public ServletRegistrationBean<ServletHttpHandlerAdapter> reactiveChatServlet(OpenAiCompatibleService openAiCompatibleService,
+                                                                                GlobalExceptionHandler exceptionHandler,
+                                                                                ObjectMapper objectMapper,
+                                                                                ObjectProvider<CodecCustomizer> codecCustomizers) {
+        // 与MVC使用同一个ObjectMapper，请求体缓冲上限由 spring.codec.max-in-memory-size 配置；
+        // 不使用默认策略中只设置状态码的异常处理，所有异常都按OpenAI的错误格式返回
+        HandlerStrategies strategies = HandlerStrategies.empty()
+                                               .codecs(configurer -> {
+                                                   configurer.registerDefaults(true);
+                                                   codecCustomizers.orderedStream().forEach(customizer -> customizer.customize(configurer));
+                                               })
+                                               .localeContextResolver(new AcceptHeaderLocaleContextResolver())
+                                               .exceptionHandler(errorHandler(exceptionHandler, objectMapper))
+                                               .build();
+        // 路由相对Servlet映射匹配，映射路径本身即为该端点
+        ServletHttpHandlerAdapter servlet = new ServletHttpHandlerAdapter(RouterFunctions.toHttpHandler(
+                RouterFunctions.route(RequestPredicates.method(HttpMethod.POST), request -> chat(openAiCompatibleService, request)),
+                strategies));
+        ServletRegistrationBean<ServletHttpHandlerAdapter> registration = new ServletRegistrationBean<>(servlet, PATH + "/*");
+        registration.setName("reactiveChat");
+        registration.setAsyncSupported(true);
+        registration.setLoadOnStartup(1);
+        return registration;
+    }
+
+    /**
+     * 与 /chat/completions 一样不限制Accept头（OpenAI SDK发送 Accept: application/json），总是以SSE输出
+     */
+    private static Mono<ServerResponse> chat(OpenAiCompatibleService openAiCompatibleService, ServerRequest request) {
+        return request.bodyToMono(ChatRequest.class)
+                       .switchIfEmpty(Mono.error(() -> new ServerWebInputException("请求体不能为空")))
+                       .flatMap(body -> {
+                           OpenAiCompatibleController.bindHeaders(body, request.headers().asHttpHeaders());
+                           body.setStream(true);
+                           return ServerResponse.ok()
+                                          .contentType(MediaType.TEXT_EVENT_STREAM)
+                                          .body(openAiCompatibleService.chatStreamReactive(body), EVENT_TYPE);
+                       });
+    }
+
+    /**
+     * 首个数据块写出前的异常（准入拒绝、未注册的工具、没有端点服务的模型等）按MVC端点相同的规则返回错误响应；
+     * 已开始输出后只能断开连接
+     */
+    private static WebExceptionHandler errorHandler(GlobalExceptionHandler exceptionHandler, ObjectMapper objectMapper) {
+        return (exchange, ex) -> {
+            ServerHttpResponse response = exchange.getResponse();
+            if (response.isCommitted()) {
+                return Mono.error(ex);
+            }
+            ResponseEntity<Map<String, Object>> entity = exceptionHandler.toResponse(ex);
+            byte[] body;
+            try {
+                body = objectMapper.writeValueAsBytes(entity.getBody());
+            } catch (JsonProcessingException e) {
+                return Mono.error(e);
+            }
+            response.setStatusCode(entity.getStatusCode());
+            response.getHeaders().putAll(entity.getHeaders());
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+        };
+    }
+}
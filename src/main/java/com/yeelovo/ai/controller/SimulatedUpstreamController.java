@@ -0,0 +1,42 @@
+package com.yeelovo.ai.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.yeelovo.ai.simulated.SimulatedUpstream;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 内置的OpenAI兼容模拟上游，只在 simulated profile 下注册
+ * spring.ai.openai.base-url 指向 /simulated 后，代理经由真实的HTTP客户端调用本接口
+ */
+@RestController
+@Profile("simulated")
+@RequestMapping("/simulated")
+@RequiredArgsConstructor
+public class SimulatedUpstreamController {
+
+    private final SimulatedUpstream simulatedUpstream;
+
+    /**
+     * 聊天补全 - 阻塞式或流式（根据请求中的stream参数）
+     */
+    @PostMapping("/v1/chat/completions")
+    public Object chatCompletions(@RequestBody JsonNode request) {
+        return simulatedUpstream.complete(request);
+    }
+
+    /**
+     * 模拟上游的请求、注入和token统计
+     */
+    @GetMapping("/stats")
+    public Map<String, Object> stats() {
+        return simulatedUpstream.snapshot();
+    }
+}
@@ -0,0 +1,44 @@
+package com.yeelovo.ai.hedge;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 阻塞请求对冲配置
+ * 首个请求在延迟阈值内没有返回时再发一个请求，取先返回的结果
+ */
+@Data
+@ConfigurationProperties(prefix = "proxy.hedging")
+public class HedgingProperties {
+
+    // 默认关闭：对冲会增加上游用量
+    private boolean enabled = false;
+
+    // 启用对冲的模型（按前缀匹配），为空表示所有模型
+    private List<String> models = new ArrayList<>();
+
+    // 对冲延迟取该模型最近一个窗口内请求耗时的该百分位
+    private double delayPercentile = 95.0;
+
+    // 统计窗口，每个窗口结束时更新对冲延迟
+    private Duration window = Duration.ofMinutes(1);
+
+    // 窗口内样本数少于该值时沿用上一个窗口的延迟（从未有过足够样本时使用 initialDelay）
+    private int minSamples = 50;
+
+    private Duration initialDelay = Duration.ofSeconds(5);
+
+    private Duration minDelay = Duration.ofMillis(200);
+
+    private Duration maxDelay = Duration.ofSeconds(30);
+
+    // 对冲预算：对冲请求数不超过可对冲请求数的该百分比
+    private double budgetPercent = 10.0;
+
+    // 预算可累积的上限，允许短时间内的突发对冲
+    private int maxBurst = 10;
+}
@@ -0,0 +1,291 @@
+package com.yeelovo.ai.hedge;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 阻塞请求对冲
+ * 首个请求超过该模型近期耗时的百分位仍未返回时，在预算允许的情况下再发一个请求（由上游路由重新选择端点），
+ * 取先成功返回的结果并取消另一个。两个请求都在专用的线程池上执行，取消时中断执行线程以中止阻塞的HTTP调用；
+ * 线程池不设上限（boundedElastic 只有 10×CPU 个线程，挂起的上游调用会占满它），并发由准入控制和对冲预算约束
+ */
+@Component
+@EnableConfigurationProperties(HedgingProperties.class)
+public class RequestHedger implements MeterBinder {
+
+    private static final int MAX_MODELS = 64;
+
+    private static final String OTHER_MODEL = "other";
+
+    private static final long MILLI = 1000;
+
+    private final HedgingProperties properties;
+
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor;
+
+    private final Scheduler scheduler;
+
+    // 预算以千分之一个请求为单位累积
+    private final AtomicLong budget;
+
+    private final AtomicLong requests = new AtomicLong(0);
+    private final AtomicLong hedges = new AtomicLong(0);
+    private final AtomicLong hedgeWins = new AtomicLong(0);
+    private final AtomicLong budgetExhausted = new AtomicLong(0);
+
+    public RequestHedger(HedgingProperties properties) {
+        this.properties = properties;
+        this.budget = new AtomicLong(properties.getMaxBurst() * MILLI);
+
+        AtomicInteger threadCount = new AtomicInteger(0);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "hedged-call-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 取消时中断执行线程
+        this.scheduler = Schedulers.fromExecutorService(executor, "hedged-call");
+    }
+
+    /**
+     * 一次上游调用
+     */
+    @FunctionalInterface
+    public interface Attempt<T> {
+
+        /**
+         * @param cancelled 该次调用是否因另一个调用先返回而被取消
+         */
+        T call(BooleanSupplier cancelled) throws Exception;
+    }
+
+    public boolean isEnabled(String model) {
+        if (!properties.isEnabled()) {
+            return false;
+        }
+        if (properties.getModels().isEmpty()) {
+            return true;
+        }
+        for (String prefix : properties.getModels()) {
+            if (model != null && model.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 执行可对冲的调用，阻塞当前线程直到有一个调用成功，或所有已发出的调用都失败
+     */
+    public <T> T execute(String model, Attempt<T> attempt) throws Exception {
+        requests.incrementAndGet();
+        deposit();
+        Window window = window(model);
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        // 仍在执行的调用数，全部失败时以最后一个错误结束
+        AtomicInteger pending = new AtomicInteger(1);
+        Disposable.Composite attempts = Disposables.composite();
+        attempts.add(launch(window, attempt, false, result, pending));
+
+        Disposable timer = Mono.delay(Duration.ofNanos(delayNanos(window))).subscribe(tick -> {
+            if (result.isDone()) {
+                return;
+            }
+            if (!withdraw()) {
+                budgetExhausted.incrementAndGet();
+                return;
+            }
+            pending.incrementAndGet();
+            hedges.incrementAndGet();
+            attempts.add(launch(window, attempt, true, result, pending));
+        });
+
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception exception ? exception : e;
+        } finally {
+            // 取消未返回的调用和尚未触发的对冲
+            timer.dispose();
+            attempts.dispose();
+        }
+    }
+
+    private <T> Disposable launch(Window window, Attempt<T> attempt, boolean hedge, CompletableFuture<T> result,
+                                  AtomicInteger pending) {
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        return Mono.fromCallable(() -> {
+                    long start = System.nanoTime();
+                    try {
+                        T value = attempt.call(cancelled::get);
+                        window.record(System.nanoTime() - start);
+                        return value;
+                    } catch (Exception e) {
+                        // 被取消的调用以中断异常结束，结果已由另一个调用给出
+                        if (cancelled.get()) {
+                            return null;
+                        }
+                        throw e;
+                    }
+                })
+                .subscribeOn(scheduler)
+                .doOnCancel(() -> cancelled.set(true))
+                .subscribe(value -> {
+                            if (result.complete(value) && hedge) {
+                                hedgeWins.incrementAndGet();
+                            }
+                        },
+                        error -> {
+                            if (pending.decrementAndGet() == 0) {
+                                result.completeExceptionally(error);
+                            }
+                        },
+                        () -> result.complete(null));
+    }
+
+    private long delayNanos(Window window) {
+        long delay = window.delayNanos >= 0 ? window.delayNanos : properties.getInitialDelay().toNanos();
+        window.maybeRotate(properties);
+        return Math.max(properties.getMinDelay().toNanos(), Math.min(properties.getMaxDelay().toNanos(), delay));
+    }
+
+    /**
+     * 每个可对冲请求向预算存入 budgetPercent% 个请求，不超过 maxBurst
+     */
+    private void deposit() {
+        long amount = (long) (properties.getBudgetPercent() * MILLI / 100);
+        long max = properties.getMaxBurst() * MILLI;
+        budget.getAndUpdate(current -> Math.min(max, current + amount));
+    }
+
+    private boolean withdraw() {
+        long current;
+        do {
+            current = budget.get();
+            if (current < MILLI) {
+                return false;
+            }
+        } while (!budget.compareAndSet(current, current - MILLI));
+        return true;
+    }
+
+    private Window window(String model) {
+        String name = model == null ? OTHER_MODEL : model;
+        Window existing = windows.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        if (windows.size() >= MAX_MODELS) {
+            name = OTHER_MODEL;
+        }
+        return windows.computeIfAbsent(name, key -> new Window());
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        long requestCount = requests.get();
+        long hedgeCount = hedges.get();
+        result.put("enabled", properties.isEnabled());
+        result.put("requests", requestCount);
+        result.put("hedges", hedgeCount);
+        result.put("hedgeWins", hedgeWins.get());
+        result.put("budgetExhausted", budgetExhausted.get());
+        result.put("hedgeRate", requestCount == 0 ? 0.0 : (double) hedgeCount / requestCount);
+        result.put("winRate", hedgeCount == 0 ? 0.0 : (double) hedgeWins.get() / hedgeCount);
+        result.put("budget", budget.get() / (double) MILLI);
+        Map<String, Object> delays = new LinkedHashMap<>();
+        windows.forEach((model, window) -> delays.put(model, window.delayNanos >= 0
+                ? TimeUnit.NANOSECONDS.toMillis(window.delayNanos) : null));
+        result.put("delayMs", delays);
+        return result;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("ai.hedge.requests", requests, AtomicLong::get)
+                .description("可对冲的阻塞请求数")
+                .register(registry);
+        FunctionCounter.builder("ai.hedge.sent", hedges, AtomicLong::get)
+                .description("发出的对冲请求数")
+                .register(registry);
+        FunctionCounter.builder("ai.hedge.wins", hedgeWins, AtomicLong::get)
+                .description("对冲请求先于首个请求返回的次数")
+                .register(registry);
+        FunctionCounter.builder("ai.hedge.budget.exhausted", budgetExhausted, AtomicLong::get)
+                .description("达到对冲延迟但预算不足的次数")
+                .register(registry);
+        Gauge.builder("ai.hedge.budget", budget, value -> value.get() / (double) MILLI)
+                .description("剩余对冲预算（请求数）")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.dispose();
+        executor.shutdownNow();
+    }
+
+    /**
+     * 单个模型的耗时窗口：当前窗口持续记录，窗口结束时用其百分位更新对冲延迟
+     */
+    private static final class Window {
+
+        private final Recorder recorder = new Recorder(3);
+        private final AtomicBoolean rotating = new AtomicBoolean(false);
+        private Histogram interval;
+        private volatile long rotatedAt = System.nanoTime();
+
+        // 小于0表示还没有足够样本
+        private volatile long delayNanos = -1;
+
+        void record(long nanos) {
+            recorder.recordValue(Math.max(1, TimeUnit.NANOSECONDS.toMicros(nanos)));
+        }
+
+        void maybeRotate(HedgingProperties properties) {
+            long now = System.nanoTime();
+            if (now - rotatedAt < properties.getWindow().toNanos() || !rotating.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                interval = recorder.getIntervalHistogram(interval);
+                rotatedAt = now;
+                if (interval.getTotalCount() >= properties.getMinSamples()) {
+                    delayNanos = TimeUnit.MICROSECONDS.toNanos(interval.getValueAtPercentile(properties.getDelayPercentile()));
+                }
+            } finally {
+                rotating.set(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.yeelovo.ai.loadtest;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+
+/**
+ * 负载测试计划
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoadTestPlan {
+
+    public enum Mode {
+        // 开环：按固定速率发起请求，不受已发请求是否完成的影响，延迟从计划发起时间算起（避免协调遗漏）
+        OPEN,
+        // 闭环：固定数量的并发用户，每个用户上一个请求结束后立即发起下一个
+        CLOSED
+    }
+
+    private Mode mode;
+
+    // 闭环模式的并发用户数；开环模式的最大在途请求数，超出的到达请求计为丢弃
+    private int concurrency;
+
+    // 开环模式的到达速率（请求/秒）
+    private double rate;
+
+    // 持续时间
+    private Duration duration;
+
+    // 请求总数上限，0表示只受持续时间限制
+    private int requests;
+
+    private String prompt;
+
+    private String model;
+
+    private Integer maxTokens;
+
+    // 每个请求带唯一标记，避免被在途合并或响应缓存吸收
+    private boolean distinct;
+}
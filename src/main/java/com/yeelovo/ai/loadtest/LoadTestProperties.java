@@ -0,0 +1,38 @@
+package com.yeelovo.ai.loadtest;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 负载测试配置，限制单次测试可以施加的压力
+ */
+@Data
+@ConfigurationProperties(prefix = "proxy.load-test")
+public class LoadTestProperties {
+
+    // 闭环模式的最大并发数，也是开环模式的最大在途请求数
+    private int maxConcurrency = 500;
+
+    // 开环模式的最大到达速率（请求/秒）
+    private double maxRate = 1000;
+
+    // 单次测试的最长持续时间
+    private Duration maxDuration = Duration.ofMinutes(30);
+
+    // 单个请求的超时时间
+    private Duration requestTimeout = Duration.ofMinutes(5);
+
+    // 同时运行的测试数
+    private int maxRunningSessions = 2;
+
+    // 已结束的测试保留时间，超过后淘汰
+    private Duration retention = Duration.ofMinutes(30);
+
+    // 最多保留的测试数（含运行中），超过后从最早结束的开始淘汰
+    private int maxSessions = 20;
+
+    // SSE进度推送间隔
+    private Duration progressInterval = Duration.ofSeconds(1);
+}
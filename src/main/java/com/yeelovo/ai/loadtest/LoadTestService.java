@@ -0,0 +1,254 @@
+package com.yeelovo.ai.loadtest;
+
+import com.yeelovo.ai.admission.AdmissionRejectedException;
+import com.yeelovo.ai.model.openai.ChatRequest;
+import com.yeelovo.ai.model.openai.ChatStreamResponse;
+import com.yeelovo.ai.service.OpenAiCompatibleService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 负载测试引擎
+ * 通过响应式流式接口在进程内发起请求（与真实请求一样经过准入、裁剪、合并和上游调用），
+ * 以流结束作为请求完成，记录首token时间、端到端延迟、token吞吐和错误分类。
+ * 请求在 loadTestExecutor 上发起，不占用请求处理和流式发送线程
+ */
+@Slf4j
+@Service
+@EnableConfigurationProperties(LoadTestProperties.class)
+public class LoadTestService {
+
+    private final OpenAiCompatibleService openAiCompatibleService;
+    private final LoadTestProperties properties;
+    private final Scheduler loadTestScheduler;
+
+    private final Map<String, LoadTestSession> sessions = new ConcurrentHashMap<>();
+
+    public LoadTestService(OpenAiCompatibleService openAiCompatibleService,
+                           LoadTestProperties properties,
+                           @Qualifier("loadTestExecutor") Executor loadTestExecutor) {
+        this.openAiCompatibleService = openAiCompatibleService;
+        this.properties = properties;
+        this.loadTestScheduler = Schedulers.fromExecutor(loadTestExecutor);
+    }
+
+    /**
+     * 启动一次负载测试，计划参数超出配置上限时按上限执行
+     * @throws IllegalStateException 运行中的测试数已达上限
+     */
+    public LoadTestSession start(LoadTestPlan plan) {
+        evictFinished();
+        LoadTestPlan bounded = bound(plan);
+        LoadTestSession session;
+        synchronized (sessions) {
+            long running = sessions.values().stream().filter(LoadTestSession::isRunning).count();
+            if (running >= properties.getMaxRunningSessions()) {
+                throw new IllegalStateException("运行中的负载测试已达上限: " + properties.getMaxRunningSessions());
+            }
+            session = new LoadTestSession("test-" + UUID.randomUUID().toString().substring(0, 8), bounded);
+            sessions.put(session.getId(), session);
+        }
+
+        Flux<Void> driver = bounded.getMode() == LoadTestPlan.Mode.OPEN ? openLoop(session) : closedLoop(session);
+        session.getDriver().update(driver.subscribe(
+                null,
+                error -> {
+                    log.error("负载测试异常结束，会话ID: {}", session.getId(), error);
+                    session.finish(LoadTestSession.Status.FAILED);
+                },
+                () -> {
+                    session.finish(LoadTestSession.Status.COMPLETED);
+                    log.info("负载测试完成，会话ID: {}, 结果: {}", session.getId(), session.snapshot());
+                }));
+
+        log.info("开始负载测试，会话ID: {}, 计划: {}", session.getId(), bounded);
+        return session;
+    }
+
+    /**
+     * 停止测试，在途请求会被取消
+     */
+    public boolean stop(String sessionId) {
+        LoadTestSession session = sessions.get(sessionId);
+        if (session == null) {
+            return false;
+        }
+        session.finish(LoadTestSession.Status.STOPPED);
+        session.getDriver().dispose();
+        return true;
+    }
+
+    public LoadTestSession get(String sessionId) {
+        evictFinished();
+        return sessions.get(sessionId);
+    }
+
+    public List<LoadTestSession> list() {
+        evictFinished();
+        return sessions.values().stream()
+                       .sorted(Comparator.comparingLong(LoadTestSession::getStartedAt).reversed())
+                       .toList();
+    }
+
+    /**
+     * 测试结束前按固定间隔推送进度，结束后推送最终结果
+     */
+    public Flux<Map<String, Object>> progress(LoadTestSession session) {
+        return Flux.interval(Duration.ZERO, properties.getProgressInterval())
+                       .map(tick -> session.snapshot())
+                       .takeUntil(snapshot -> snapshot.get("status") != LoadTestSession.Status.RUNNING);
+    }
+
+    /**
+     * 开环：按固定速率到达，延迟从计划发起时间算起；在途请求达到上限时丢弃新到达的请求而不是排队
+     */
+    private Flux<Void> openLoop(LoadTestSession session) {
+        LoadTestPlan plan = session.getPlan();
+        long periodNanos = Math.max(1, (long) (1_000_000_000L / plan.getRate()));
+        return Flux.defer(() -> {
+            // 计划发起时间以到达序列开始的时刻为起点，第0个请求在订阅时立即到达
+            long origin = System.nanoTime();
+            Flux<Long> arrivals = Flux.interval(Duration.ZERO, Duration.ofNanos(periodNanos))
+                                          .take(plan.getDuration());
+            if (plan.getRequests() > 0) {
+                arrivals = arrivals.take(plan.getRequests());
+            }
+            return arrivals.onBackpressureDrop(seq -> session.onDropped())
+                           .flatMap(seq -> execute(session, seq, origin + seq * periodNanos),
+                                   plan.getConcurrency(), 1);
+        });
+    }
+
+    /**
+     * 闭环：固定数量的并发用户，上一个请求结束后才发起下一个；到达持续时间后不再发起新请求，等待在途请求结束
+     */
+    private Flux<Void> closedLoop(LoadTestSession session) {
+        LoadTestPlan plan = session.getPlan();
+        long deadline = session.getStartNanos() + plan.getDuration().toNanos();
+        int total = plan.getRequests() > 0 ? plan.getRequests() : Integer.MAX_VALUE;
+        return Flux.range(0, total)
+                       .takeWhile(seq -> System.nanoTime() - deadline < 0)
+                       .flatMap(seq -> execute(session, seq, -1), plan.getConcurrency(), 1);
+    }
+
+    /**
+     * 执行一个流式请求，流正常结束才计为成功
+     * @param intendedStartNanos 计划发起时间，-1表示以实际发起时间为准
+     */
+    private Mono<Void> execute(LoadTestSession session, long seq, long intendedStartNanos) {
+        return Mono.defer(() -> {
+            long start = intendedStartNanos < 0 ? System.nanoTime() : intendedStartNanos;
+            session.onIssued();
+            RequestProgress progress = new RequestProgress();
+            return openAiCompatibleService.chatStreamReactive(createChatRequest(session.getPlan(), seq))
+                           .doOnNext(event -> progress.onEvent(session, event, start))
+                           .timeout(properties.getRequestTimeout())
+                           .then()
+                           .doOnSuccess(ignored -> session.onSuccess(System.nanoTime() - start, progress.tokens))
+                           .onErrorResume(error -> {
+                               session.onFailure(classify(error), progress.tokens);
+                               return Mono.empty();
+                           })
+                           .doFinally(signal -> session.onRequestFinished());
+        }).subscribeOn(loadTestScheduler);
+    }
+
+    private ChatRequest createChatRequest(LoadTestPlan plan, long seq) {
+        ChatRequest.ChatRequestBuilder builder = ChatRequest.builder()
+                                                         .model(plan.getModel())
+                                                         .messages(List.of(new ChatRequest.Message("user", plan.getPrompt())))
+                                                         .max_tokens(plan.getMaxTokens())
+                                                         .stream(true)
+                                                         // 补全token数取自用量数据块
+                                                         .stream_options(new ChatRequest.StreamOptions(true));
+        if (plan.isDistinct()) {
+            // options 参与请求指纹但不发往上游，只用于区分请求
+            builder.options(Map.of("load_test_request", seq));
+        }
+        return builder.build();
+    }
+
+    private LoadTestPlan bound(LoadTestPlan plan) {
+        Duration duration = plan.getDuration() == null || plan.getDuration().compareTo(properties.getMaxDuration()) > 0
+                                    ? properties.getMaxDuration() : plan.getDuration();
+        return plan.toBuilder()
+                       .mode(plan.getMode() == null ? LoadTestPlan.Mode.CLOSED : plan.getMode())
+                       .concurrency(Math.max(1, Math.min(plan.getConcurrency(), properties.getMaxConcurrency())))
+                       .rate(Math.max(0.01, Math.min(plan.getRate(), properties.getMaxRate())))
+                       .duration(duration)
+                       .requests(Math.max(0, plan.getRequests()))
+                       .build();
+    }
+
+    /**
+     * 淘汰超过保留时间的已结束测试，总数超限时从最早结束的开始淘汰
+     */
+    private void evictFinished() {
+        long expireBefore = System.currentTimeMillis() - properties.getRetention().toMillis();
+        sessions.values().removeIf(session -> !session.isRunning() && session.getFinishedAt() < expireBefore);
+
+        int excess = sessions.size() - properties.getMaxSessions();
+        if (excess > 0) {
+            sessions.values().stream()
+                    .filter(session -> !session.isRunning())
+                    .sorted(Comparator.comparingLong(LoadTestSession::getFinishedAt))
+                    .limit(excess)
+                    .map(LoadTestSession::getId)
+                    .toList()
+                    .forEach(sessions::remove);
+        }
+    }
+
+    private static String classify(Throwable error) {
+        if (error instanceof AdmissionRejectedException) {
+            return "admission_rejected";
+        }
+        if (error instanceof TimeoutException) {
+            return "timeout";
+        }
+        if (error instanceof WebClientResponseException responseException) {
+            return "http_" + responseException.getStatusCode().value();
+        }
+        return error.getClass().getSimpleName();
+    }
+
+    /**
+     * 单个请求的流内进度，只在流的发射线程上串行访问
+     */
+    private static final class RequestProgress {
+        private boolean firstChunk = true;
+        private int tokens;
+
+        private void onEvent(LoadTestSession session, ServerSentEvent<ChatStreamResponse> event, long start) {
+            ChatStreamResponse data = event.data();
+            if (data == null) {
+                return;
+            }
+            if (data.getUsage() != null) {
+                tokens = data.getUsage().getCompletion_tokens();
+                return;
+            }
+            if (firstChunk) {
+                firstChunk = false;
+                session.onFirstChunk(System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.yeelovo.ai.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单次负载测试的状态
+ * 计数和直方图都支持并发写入，不同测试之间互不影响
+ */
+public class LoadTestSession {
+
+    public enum Status {
+        RUNNING, COMPLETED, STOPPED, FAILED
+    }
+
+    // 直方图上限1小时，3位有效数字（与HdrHistogram常用配置一致），单位微秒
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    private final String id;
+    private final LoadTestPlan plan;
+    private final long startedAt;
+    private final long startNanos;
+
+    private volatile Status status = Status.RUNNING;
+    private volatile long finishedAt;
+    private volatile long finishedNanos;
+
+    // 测试驱动订阅，停止测试时取消，在途请求随之取消
+    private final Disposable.Swap driver = Disposables.swap();
+
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final LongAdder completionTokens = new LongAdder();
+
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    private final Histogram ttft = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+    private final Histogram latency = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+
+    LoadTestSession(String id, LoadTestPlan plan) {
+        this.id = id;
+        this.plan = plan;
+        this.startedAt = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public LoadTestPlan getPlan() {
+        return plan;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isRunning() {
+        return status == Status.RUNNING;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    long getStartNanos() {
+        return startNanos;
+    }
+
+    Disposable.Swap getDriver() {
+        return driver;
+    }
+
+    void onIssued() {
+        issued.increment();
+        inFlight.incrementAndGet();
+    }
+
+    void onDropped() {
+        dropped.increment();
+    }
+
+    void onFirstChunk(long nanosSinceStart) {
+        ttft.recordValue(clamp(nanosSinceStart));
+    }
+
+    void onSuccess(long nanosSinceStart, int tokens) {
+        succeeded.increment();
+        completionTokens.add(tokens);
+        latency.recordValue(clamp(nanosSinceStart));
+    }
+
+    void onFailure(String reason, int tokens) {
+        failed.increment();
+        completionTokens.add(tokens);
+        errors.computeIfAbsent(reason, k -> new LongAdder()).increment();
+    }
+
+    void onRequestFinished() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * 结束测试，只有第一次调用生效
+     */
+    synchronized void finish(Status finalStatus) {
+        if (status != Status.RUNNING) {
+            return;
+        }
+        finishedNanos = System.nanoTime();
+        finishedAt = System.currentTimeMillis();
+        status = finalStatus;
+    }
+
+    /**
+     * 当前进度和统计
+     */
+    public Map<String, Object> snapshot() {
+        long end = isRunning() ? System.nanoTime() : finishedNanos;
+        double elapsedSeconds = Math.max(1e-9, (end - startNanos) / 1e9);
+
+        Map<String, Object> planInfo = new LinkedHashMap<>();
+        planInfo.put("mode", plan.getMode());
+        planInfo.put("concurrency", plan.getConcurrency());
+        if (plan.getMode() == LoadTestPlan.Mode.OPEN) {
+            planInfo.put("rate", plan.getRate());
+        }
+        planInfo.put("durationSeconds", plan.getDuration().toSeconds());
+        planInfo.put("requests", plan.getRequests());
+        planInfo.put("model", plan.getModel());
+
+        Map<String, Long> errorCounts = new LinkedHashMap<>();
+        errors.forEach((reason, count) -> errorCounts.put(reason, count.sum()));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("sessionId", id);
+        result.put("status", status);
+        result.put("plan", planInfo);
+        result.put("elapsedSeconds", round(elapsedSeconds));
+        result.put("issued", issued.sum());
+        result.put("succeeded", succeeded.sum());
+        result.put("failed", failed.sum());
+        result.put("dropped", dropped.sum());
+        result.put("inFlight", inFlight.get());
+        result.put("throughput", round(succeeded.sum() / elapsedSeconds));
+        result.put("completionTokens", completionTokens.sum());
+        result.put("tokensPerSecond", round(completionTokens.sum() / elapsedSeconds));
+        result.put("ttftMs", percentiles(ttft));
+        result.put("latencyMs", percentiles(latency));
+        result.put("errors", errorCounts);
+        return result;
+    }
+
+    private static Map<String, Object> percentiles(Histogram histogram) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("count", histogram.getTotalCount());
+        if (histogram.getTotalCount() == 0) {
+            return result;
+        }
+        result.put("mean", toMillis(histogram.getMean()));
+        result.put("p50", toMillis(histogram.getValueAtPercentile(50)));
+        result.put("p90", toMillis(histogram.getValueAtPercentile(90)));
+        result.put("p99", toMillis(histogram.getValueAtPercentile(99)));
+        result.put("p999", toMillis(histogram.getValueAtPercentile(99.9)));
+        result.put("max", toMillis(histogram.getMaxValue()));
+        return result;
+    }
+
+    private static long clamp(long nanos) {
+        return Math.min(HIGHEST_TRACKABLE_MICROS, Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)));
+    }
+
+    private static double toMillis(double micros) {
+        return round(micros / 1000.0);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,363 @@
+package com.yeelovo.ai.mcp;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yeelovo.ai.admission.AdmissionRejectedException;
+import com.yeelovo.ai.model.openai.ChatRequest;
+import com.yeelovo.ai.model.openai.ChatStreamResponse;
+import com.yeelovo.ai.service.OpenAiCompatibleService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.modelcontextprotocol.server.McpAsyncServerExchange;
+import io.modelcontextprotocol.server.McpServerFeatures.AsyncToolSpecification;
+import io.modelcontextprotocol.spec.McpSchema;
+import io.modelcontextprotocol.spec.McpSchema.CallToolResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiFunction;
+
+/**
+ * 以MCP工具提供的补全能力
+ * chat 流式生成并按间隔推送增量，summarize_batch 并发摘要多篇文档并在每篇完成时推送进度；
+ * 两者都经过 OpenAiCompatibleService，与HTTP接口共用准入控制、缓存和上游路由
+ */
+@Slf4j
+@Component
+@EnableConfigurationProperties(McpToolServerProperties.class)
+public class CompletionMcpTools {
+
+    static final String CHAT_TOOL = "chat";
+    static final String SUMMARIZE_TOOL = "summarize_batch";
+
+    // 一条进度通知最多合并的增量数
+    private static final int MAX_DELTAS_PER_NOTIFICATION = 256;
+
+    private static final String CHAT_SCHEMA = """
+            {
+              "type": "object",
+              "properties": {
+                "prompt": {"type": "string", "description": "用户输入，与 messages 二选一"},
+                "messages": {
+                  "type": "array",
+                  "description": "OpenAI格式的消息列表",
+                  "items": {
+                    "type": "object",
+                    "properties": {
+                      "role": {"type": "string", "enum": ["system", "user", "assistant"]},
+                      "content": {"type": "string"}
+                    },
+                    "required": ["role", "content"]
+                  }
+                },
+                "system": {"type": "string", "description": "系统提示词"},
+                "model": {"type": "string"},
+                "temperature": {"type": "number"},
+                "max_tokens": {"type": "integer"}
+              }
+            }
+            """;
+
+    private static final String SUMMARIZE_SCHEMA = """
+            {
+              "type": "object",
+              "properties": {
+                "documents": {"type": "array", "items": {"type": "string"}, "description": "待摘要的文档"},
+                "instructions": {"type": "string", "description": "附加的摘要要求"},
+                "model": {"type": "string"},
+                "max_tokens": {"type": "integer", "description": "每篇摘要的token上限"}
+              },
+              "required": ["documents"]
+            }
+            """;
+
+    private final OpenAiCompatibleService openAiCompatibleService;
+    private final McpToolServerProperties properties;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry registry;
+
+    // 每个会话的在途调用数；exchange与会话一一对应，会话关闭后随之回收
+    private final Map<McpAsyncServerExchange, AtomicInteger> sessions = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final AtomicLong notifications = new AtomicLong(0);
+    private final Map<String, Map<String, AtomicLong>> outcomes = new ConcurrentHashMap<>();
+
+    public CompletionMcpTools(OpenAiCompatibleService openAiCompatibleService,
+                              McpToolServerProperties properties,
+                              ObjectMapper objectMapper,
+                              MeterRegistry registry) {
+        this.openAiCompatibleService = openAiCompatibleService;
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.registry = registry;
+        registry.gauge("ai.mcp.server.inflight", inFlight);
+    }
+
+    public List<AsyncToolSpecification> specifications() {
+        return List.of(
+                specification(new McpSchema.Tool(CHAT_TOOL,
+                        "调用大模型生成回复。生成过程中以日志通知（logger=chat）推送增量文本，最终结果为完整回复", CHAT_SCHEMA),
+                        this::chat),
+                specification(new McpSchema.Tool(SUMMARIZE_TOOL,
+                        "并发摘要多篇文档，每篇完成时以日志通知（logger=summarize_batch）推送进度，结果为按输入顺序排列的JSON数组",
+                        SUMMARIZE_SCHEMA),
+                        this::summarizeBatch));
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", properties.isEnabled());
+        result.put("sseEndpoint", properties.getBasePath() + properties.getSseEndpoint());
+        result.put("perSessionConcurrency", properties.getPerSessionConcurrency());
+        result.put("clientKey", properties.getClientKey());
+        result.put("sessions", sessions.size());
+        result.put("inFlight", inFlight.get());
+        result.put("notifications", notifications.get());
+        Map<String, Object> tools = new LinkedHashMap<>();
+        outcomes.forEach((tool, counts) -> {
+            Map<String, Long> byOutcome = new LinkedHashMap<>();
+            counts.forEach((outcome, count) -> byOutcome.put(outcome, count.get()));
+            tools.put(tool, byOutcome);
+        });
+        result.put("calls", tools);
+        return result;
+    }
+
+    /**
+     * 包装工具处理函数：会话并发超限时直接返回错误结果，异常转换为错误结果，记录耗时和结果
+     */
+    private AsyncToolSpecification specification(McpSchema.Tool tool,
+                                                 BiFunction<McpAsyncServerExchange, Map<String, Object>, Mono<CallToolResult>> handler) {
+        return new AsyncToolSpecification(tool, (exchange, arguments) -> Mono.defer(() -> {
+            AtomicInteger active = sessions.computeIfAbsent(exchange, session -> new AtomicInteger(0));
+            if (active.incrementAndGet() > properties.getPerSessionConcurrency()) {
+                active.decrementAndGet();
+                record(tool.name(), "rejected", 0);
+                return Mono.just(new CallToolResult("当前会话的并发调用数已达上限 " + properties.getPerSessionConcurrency()
+                                                            + "，请等待之前的调用完成后重试", true));
+            }
+            inFlight.incrementAndGet();
+            long start = System.nanoTime();
+            AtomicReference<String> outcome = new AtomicReference<>("cancelled");
+            return Mono.defer(() -> handler.apply(exchange, arguments == null ? Map.of() : arguments))
+                           .onErrorResume(error -> {
+                               if (!(error instanceof AdmissionRejectedException) && !(error instanceof IllegalArgumentException)) {
+                                   log.warn("MCP工具 {} 调用失败", tool.name(), error);
+                               }
+                               return Mono.just(new CallToolResult(errorMessage(error), true));
+                           })
+                           .doOnNext(result -> outcome.set(Boolean.TRUE.equals(result.isError()) ? "error" : "success"))
+                           .doFinally(signal -> {
+                               active.decrementAndGet();
+                               inFlight.decrementAndGet();
+                               record(tool.name(), outcome.get(), System.nanoTime() - start);
+                           });
+        }));
+    }
+
+    private Mono<CallToolResult> chat(McpAsyncServerExchange exchange, Map<String, Object> arguments) {
+        ChatRequest request = chatRequest(arguments);
+        StringBuilder text = new StringBuilder();
+        // 增量在合并时间内攒成一条通知，通知按顺序逐条发送，length 为已推送的总长度
+        return content(request)
+                       .bufferTimeout(MAX_DELTAS_PER_NOTIFICATION, properties.getProgressInterval(), true)
+                       .concatMap(deltas -> {
+                           String delta = String.join("", deltas);
+                           text.append(delta);
+                           return notify(exchange, CHAT_TOOL, Map.of("delta", delta, "length", text.length()));
+                       })
+                       .then(Mono.fromSupplier(() -> new CallToolResult(text.toString(), false)));
+    }
+
+    private Mono<CallToolResult> summarizeBatch(McpAsyncServerExchange exchange, Map<String, Object> arguments) {
+        if (!(arguments.get("documents") instanceof List<?> list) || list.isEmpty()) {
+            throw new IllegalArgumentException("documents 不能为空");
+        }
+        if (list.size() > properties.getMaxDocuments()) {
+            throw new IllegalArgumentException("documents 最多 " + properties.getMaxDocuments() + " 篇");
+        }
+        List<String> documents = list.stream().map(String::valueOf).toList();
+        String instructions = string(arguments, "instructions");
+        String model = string(arguments, "model");
+        Integer maxTokens = integer(arguments, "max_tokens");
+
+        int total = documents.size();
+        AtomicReferenceArray<Map<String, Object>> results = new AtomicReferenceArray<>(total);
+        AtomicInteger completed = new AtomicInteger(0);
+        AtomicInteger failed = new AtomicInteger(0);
+        return Flux.range(0, total)
+                       .flatMap(index -> summarize(documents.get(index), instructions, model, maxTokens)
+                                                 .map(summary -> {
+                                                     Map<String, Object> item = new LinkedHashMap<>();
+                                                     item.put("index", index);
+                                                     item.put("summary", summary);
+                                                     return item;
+                                                 })
+                                                 .onErrorResume(error -> {
+                                                     failed.incrementAndGet();
+                                                     Map<String, Object> item = new LinkedHashMap<>();
+                                                     item.put("index", index);
+                                                     item.put("error", errorMessage(error));
+                                                     return Mono.just(item);
+                                                 })
+                                                 .doOnNext(item -> results.set(index, item)),
+                               properties.getSummarizeConcurrency())
+                       .concatMap(item -> notify(exchange, SUMMARIZE_TOOL,
+                               Map.of("completed", completed.incrementAndGet(), "total", total, "failed", failed.get())))
+                       .then(Mono.fromCallable(() -> {
+                           List<Map<String, Object>> items = new ArrayList<>(total);
+                           for (int i = 0; i < total; i++) {
+                               items.add(results.get(i));
+                           }
+                           // 全部失败时整体标记为错误
+                           return new CallToolResult(objectMapper.writeValueAsString(items), failed.get() == total);
+                       }));
+    }
+
+    /**
+     * 摘要一篇文档；temperature固定为0，重复的文档命中响应缓存
+     */
+    private Mono<String> summarize(String document, String instructions, String model, Integer maxTokens) {
+        ChatRequest request = new ChatRequest();
+        String system = instructions == null || instructions.isBlank()
+                                ? properties.getSummaryPrompt() : properties.getSummaryPrompt() + "\n" + instructions;
+        request.setMessages(List.of(message("system", system), message("user", document)));
+        request.setModel(model);
+        request.setTemperature(0.0);
+        request.setMax_tokens(maxTokens != null ? maxTokens : properties.getSummaryMaxTokens());
+        request.setStream(true);
+        request.setMemory(false);
+        request.setClientKey(properties.getClientKey());
+        return content(request).collect(StringBuilder::new, StringBuilder::append).map(StringBuilder::toString);
+    }
+
+    /**
+     * 走响应式流式调用：排队等待准入期间不占用线程，下游背压传到上游连接
+     */
+    private Flux<String> content(ChatRequest request) {
+        return Flux.defer(() -> openAiCompatibleService.chatStreamReactive(request))
+                       .mapNotNull(ServerSentEvent::data)
+                       .mapNotNull(CompletionMcpTools::delta);
+    }
+
+    private Mono<Void> notify(McpAsyncServerExchange exchange, String tool, Map<String, Object> data) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(data);
+        } catch (JsonProcessingException e) {
+            return Mono.error(e);
+        }
+        // 通知发送失败（如客户端已断开SSE）不影响调用本身
+        return exchange.loggingNotification(new McpSchema.LoggingMessageNotification(McpSchema.LoggingLevel.INFO, tool, json))
+                       .doOnSuccess(ignored -> notifications.incrementAndGet())
+                       .onErrorResume(error -> {
+                           log.debug("MCP进度通知发送失败: {}", error.getMessage());
+                           return Mono.empty();
+                       });
+    }
+
+    private ChatRequest chatRequest(Map<String, Object> arguments) {
+        List<ChatRequest.Message> messages = new ArrayList<>();
+        String system = string(arguments, "system");
+        if (system != null && !system.isBlank()) {
+            messages.add(message("system", system));
+        }
+        if (arguments.get("messages") instanceof List<?> list) {
+            for (Object item : list) {
+                if (!(item instanceof Map<?, ?> map) || map.get("role") == null || map.get("content") == null) {
+                    throw new IllegalArgumentException("messages 中的每一项都需要 role 和 content");
+                }
+                messages.add(message(String.valueOf(map.get("role")), String.valueOf(map.get("content"))));
+            }
+        }
+        String prompt = string(arguments, "prompt");
+        if (prompt != null && !prompt.isBlank()) {
+            messages.add(message("user", prompt));
+        }
+        if (messages.stream().noneMatch(message -> "user".equals(message.getRole()))) {
+            throw new IllegalArgumentException("需要 prompt 或包含用户消息的 messages");
+        }
+
+        ChatRequest request = new ChatRequest();
+        request.setMessages(messages);
+        request.setModel(string(arguments, "model"));
+        if (arguments.get("temperature") instanceof Number temperature) {
+            request.setTemperature(temperature.doubleValue());
+        }
+        request.setMax_tokens(integer(arguments, "max_tokens"));
+        request.setStream(true);
+        request.setMemory(false);
+        request.setClientKey(properties.getClientKey());
+        return request;
+    }
+
+    private static String delta(ChatStreamResponse response) {
+        if (response.getChoices() == null || response.getChoices().isEmpty()) {
+            return null;
+        }
+        ChatStreamResponse.Delta delta = response.getChoices().get(0).getDelta();
+        return delta == null || delta.getContent() == null || delta.getContent().isEmpty() ? null : delta.getContent();
+    }
+
+    private static ChatRequest.Message message(String role, String content) {
+        ChatRequest.Message message = new ChatRequest.Message();
+        message.setRole(role);
+        message.setContent(content);
+        return message;
+    }
+
+    private static String string(Map<String, Object> arguments, String name) {
+        Object value = arguments.get(name);
+        return value == null ? null : String.valueOf(value);
+    }
+
+    private static Integer integer(Map<String, Object> arguments, String name) {
+        Object value = arguments.get(name);
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Number number) {
+            return number.intValue();
+        }
+        throw new IllegalArgumentException(name + " 需要是整数");
+    }
+
+    private static String errorMessage(Throwable error) {
+        if (error instanceof AdmissionRejectedException) {
+            return "服务繁忙：" + error.getMessage();
+        }
+        return error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+    }
+
+    private void record(String tool, String outcome, long nanos) {
+        outcomes.computeIfAbsent(tool, name -> new ConcurrentHashMap<>())
+                .computeIfAbsent(outcome, name -> new AtomicLong(0))
+                .incrementAndGet();
+        registry.counter("ai.mcp.server.calls", "tool", tool, "outcome", outcome).increment();
+        if (nanos > 0) {
+            Timer.builder("ai.mcp.server.duration")
+                    .description("MCP工具调用耗时")
+                    .tag("tool", tool)
+                    .tag("outcome", outcome)
+                    .register(registry)
+                    .record(Duration.ofNanos(nanos));
+        }
+    }
+}
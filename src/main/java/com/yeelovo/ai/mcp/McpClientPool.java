@@ -0,0 +1,465 @@
+package com.yeelovo.ai.mcp;
+
+import io.modelcontextprotocol.client.McpClient;
+import io.modelcontextprotocol.client.McpSyncClient;
+import io.modelcontextprotocol.client.transport.ServerParameters;
+import io.modelcontextprotocol.client.transport.StdioClientTransport;
+import io.modelcontextprotocol.spec.McpSchema;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.mcp.customizer.McpSyncClientCustomizer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单个stdio服务的MCP客户端工作进程池
+ * 每个工作进程是一个独立的MCP服务进程及其同步客户端；调用分配给在途调用最少的进程，
+ * 所有进程都繁忙时后台扩容，空闲进程回收到常驻数，进程意外退出时移出并补足常驻数
+ */
+@Slf4j
+class McpClientPool {
+
+    private final String server;
+    private final ServerParameters parameters;
+    private final String clientName;
+    private final String clientVersion;
+    private final Duration requestTimeout;
+    private final int minWorkers;
+    private final int maxWorkers;
+    private final int busyThreshold;
+    private final long idleTimeoutNanos;
+    private final long restartBackoffNanos;
+    private final ExecutorService executor;
+    private final List<McpSyncClientCustomizer> customizers;
+    private final Runnable toolsListener;
+
+    private final List<Worker> workers = new CopyOnWriteArrayList<>();
+    private final AtomicInteger starting = new AtomicInteger(0);
+    private final AtomicBoolean replenishing = new AtomicBoolean(false);
+    private final AtomicInteger nextId = new AtomicInteger(0);
+    private volatile long lastSpawnFailure;
+    private volatile boolean closed;
+
+    // 工具列表在启动时从第一个就绪的进程获取，所有进程运行同一个服务；服务通知变更时更新
+    private volatile List<McpSchema.Tool> tools = List.of();
+
+    private final AtomicLong calls = new AtomicLong(0);
+    private final AtomicLong spawned = new AtomicLong(0);
+    private final AtomicLong spawnFailures = new AtomicLong(0);
+    private final AtomicLong crashes = new AtomicLong(0);
+    private final AtomicLong retired = new AtomicLong(0);
+
+    McpClientPool(String server, McpPoolProperties.Server config, McpPoolProperties properties,
+                  String clientName, String clientVersion, Duration requestTimeout, ExecutorService executor,
+                  List<McpSyncClientCustomizer> customizers, Runnable toolsListener) {
+        this.server = server;
+        this.parameters = ServerParameters.builder(config.getCommand())
+                                  .args(config.getArgs())
+                                  .env(config.getEnv())
+                                  .build();
+        this.clientName = clientName;
+        this.clientVersion = clientVersion;
+        this.requestTimeout = requestTimeout;
+        this.maxWorkers = Math.max(1, config.getMaxWorkers() != null ? config.getMaxWorkers() : properties.getMaxWorkers());
+        this.minWorkers = Math.max(1, Math.min(maxWorkers,
+                config.getMinWorkers() != null ? config.getMinWorkers() : properties.getMinWorkers()));
+        this.busyThreshold = Math.max(1, properties.getBusyThreshold());
+        this.idleTimeoutNanos = properties.getIdleTimeout().toNanos();
+        this.restartBackoffNanos = properties.getRestartBackoff().toNanos();
+        this.executor = executor;
+        this.customizers = customizers;
+        this.toolsListener = toolsListener;
+    }
+
+    /**
+     * 并行启动常驻进程
+     * @return 所有常驻进程启动（或失败）后完成
+     */
+    CompletableFuture<Void> prewarm() {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        while (reserve(minWorkers)) {
+            futures.add(CompletableFuture.runAsync(this::spawn, executor));
+        }
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * 从一个就绪的进程加载工具列表
+     * @throws IllegalStateException 没有进程启动成功
+     */
+    void loadTools() {
+        if (workers.isEmpty()) {
+            throw new IllegalStateException("MCP服务 " + server + " 没有启动成功的工作进程");
+        }
+        tools = List.copyOf(workers.get(0).client.listTools().tools());
+        log.info("MCP服务 {} 已就绪，工作进程 {} 个，工具 {} 个", server, workers.size(), tools.size());
+    }
+
+    /**
+     * 服务通知工具列表变更；每个进程都会收到通知，更新是幂等的
+     */
+    private void onToolsChanged(List<McpSchema.Tool> changed) {
+        if (changed.equals(tools)) {
+            return;
+        }
+        tools = List.copyOf(changed);
+        log.info("MCP服务 {} 的工具列表已变更，工具 {} 个", server, tools.size());
+        toolsListener.run();
+    }
+
+    /**
+     * 在在途调用最少的进程上调用工具
+     */
+    McpSchema.CallToolResult callTool(McpSchema.CallToolRequest request) {
+        Worker worker = acquire();
+        calls.incrementAndGet();
+        worker.calls.incrementAndGet();
+        worker.register(Thread.currentThread());
+        try {
+            return worker.client.callTool(request);
+        } catch (RuntimeException e) {
+            if (worker.crashed) {
+                throw new IllegalStateException("MCP服务 " + server + " 工作进程 #" + worker.id + " 在调用过程中退出", e);
+            }
+            throw e;
+        } finally {
+            worker.deregister(Thread.currentThread());
+            release(worker);
+        }
+    }
+
+    /**
+     * 定期维护：补足常驻进程，回收超过常驻数且空闲超时的进程
+     */
+    void maintain() {
+        replenish();
+        long now = System.nanoTime();
+        int excess = workers.size() - minWorkers;
+        for (Worker worker : workers) {
+            if (excess <= 0) {
+                break;
+            }
+            if (worker.inFlight.get() == 0 && now - worker.lastUsed > idleTimeoutNanos) {
+                retire(worker);
+                excess--;
+            }
+        }
+    }
+
+    void close() {
+        closed = true;
+        for (Worker worker : workers) {
+            worker.retired = true;
+            worker.close();
+        }
+        workers.clear();
+    }
+
+    String getServer() {
+        return server;
+    }
+
+    String getClientName() {
+        return clientName;
+    }
+
+    List<McpSchema.Tool> getTools() {
+        return tools;
+    }
+
+    int readyCount() {
+        return workers.size();
+    }
+
+    int startingCount() {
+        return starting.get();
+    }
+
+    int inFlight() {
+        int total = 0;
+        for (Worker worker : workers) {
+            total += worker.inFlight.get();
+        }
+        return total;
+    }
+
+    AtomicLong calls() {
+        return calls;
+    }
+
+    AtomicLong crashes() {
+        return crashes;
+    }
+
+    AtomicLong spawnFailures() {
+        return spawnFailures;
+    }
+
+    Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        long now = System.nanoTime();
+        result.put("server", server);
+        result.put("command", parameters.getCommand() + " " + String.join(" ", parameters.getArgs()));
+        result.put("minWorkers", minWorkers);
+        result.put("maxWorkers", maxWorkers);
+        result.put("ready", workers.size());
+        result.put("starting", starting.get());
+        result.put("inFlight", inFlight());
+        result.put("tools", tools.size());
+        result.put("calls", calls.get());
+        result.put("spawned", spawned.get());
+        result.put("spawnFailures", spawnFailures.get());
+        result.put("crashes", crashes.get());
+        result.put("retired", retired.get());
+        List<Map<String, Object>> details = new ArrayList<>();
+        for (Worker worker : workers) {
+            Map<String, Object> detail = new LinkedHashMap<>();
+            detail.put("id", worker.id);
+            detail.put("inFlight", worker.inFlight.get());
+            detail.put("calls", worker.calls.get());
+            detail.put("uptimeSeconds", Duration.ofNanos(now - worker.startedAt).toSeconds());
+            detail.put("idleSeconds", worker.inFlight.get() > 0 ? 0 : Duration.ofNanos(now - worker.lastUsed).toSeconds());
+            details.add(detail);
+        }
+        result.put("workers", details);
+        return result;
+    }
+
+    /**
+     * 选择在途调用最少的进程；进程数不足以让在途调用都低于繁忙阈值时在后台扩容，本次调用不等待新进程
+     */
+    private Worker acquire() {
+        while (true) {
+            Worker best = null;
+            int bestLoad = Integer.MAX_VALUE;
+            for (Worker worker : workers) {
+                int load = worker.inFlight.get();
+                if (load < bestLoad) {
+                    best = worker;
+                    bestLoad = load;
+                }
+            }
+            if (best == null) {
+                executor.execute(this::replenish);
+                throw new IllegalStateException("MCP服务 " + server + " 暂无可用的工作进程");
+            }
+            best.inFlight.incrementAndGet();
+            // 与回收并发时，先计数再检查标记：回收方要么看到在途调用而不关闭，要么这里看到标记后重新选择
+            if (best.retired) {
+                release(best);
+                continue;
+            }
+            best.lastUsed = System.nanoTime();
+            if (bestLoad >= busyThreshold) {
+                grow();
+            }
+            return best;
+        }
+    }
+
+    private void release(Worker worker) {
+        worker.lastUsed = System.nanoTime();
+        if (worker.inFlight.decrementAndGet() == 0 && worker.retired) {
+            worker.close();
+        }
+    }
+
+    /**
+     * 按在途调用数扩容：一次突发的调用可以同时启动多个进程
+     */
+    private void grow() {
+        int demand = (inFlight() + busyThreshold - 1) / busyThreshold;
+        while (!inBackoff() && reserve(Math.min(maxWorkers, demand))) {
+            executor.execute(this::spawn);
+        }
+    }
+
+    /**
+     * 补足常驻进程数，启动失败时等到退避结束后的下一次维护再试
+     */
+    private void replenish() {
+        if (!replenishing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            while (!inBackoff() && reserve(minWorkers)) {
+                if (!spawn()) {
+                    break;
+                }
+            }
+        } finally {
+            replenishing.set(false);
+        }
+    }
+
+    /**
+     * 进程数（含启动中）低于目标时占用一个启动名额，占用后必须调用 spawn
+     */
+    private boolean reserve(int target) {
+        while (!closed) {
+            int current = starting.get();
+            if (workers.size() + current >= target) {
+                return false;
+            }
+            if (starting.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 启动一个进程并完成初始化，调用前需通过 reserve 占用启动名额
+     */
+    private boolean spawn() {
+        int id = nextId.incrementAndGet();
+        McpSyncClient client = null;
+        try {
+            StdioClientTransport transport = new StdioClientTransport(parameters);
+            transport.setStdErrorHandler(line -> log.debug("MCP服务 {}#{} stderr: {}", server, id, line));
+            McpClient.SyncSpec spec = McpClient.sync(transport)
+                                              .clientInfo(new McpSchema.Implementation(clientName, clientVersion))
+                                              .requestTimeout(requestTimeout)
+                                              .toolsChangeConsumer(this::onToolsChanged);
+            customizers.forEach(customizer -> customizer.customize(clientName, spec));
+            client = spec.build();
+            client.initialize();
+
+            Worker worker = new Worker(id, client, transport);
+            workers.add(worker);
+            spawned.incrementAndGet();
+            executor.execute(() -> watch(worker));
+            if (closed) {
+                workers.remove(worker);
+                worker.close();
+                return false;
+            }
+            log.info("MCP服务 {} 启动工作进程 #{}，当前 {} 个", server, id, workers.size());
+            return true;
+        } catch (Exception e) {
+            spawnFailures.incrementAndGet();
+            lastSpawnFailure = System.nanoTime();
+            log.warn("MCP服务 {} 启动工作进程 #{} 失败: {}", server, id, e.getMessage());
+            if (client != null) {
+                client.close();
+            }
+            return false;
+        } finally {
+            starting.decrementAndGet();
+        }
+    }
+
+    /**
+     * 等待进程退出；非主动关闭的退出视为崩溃，移出进程池并补足常驻数
+     * 崩溃时中断该进程上等待结果的调用线程，使其立即失败而不是等到请求超时
+     */
+    private void watch(Worker worker) {
+        try {
+            worker.transport.awaitForExit();
+        } catch (RuntimeException e) {
+            return;
+        }
+        if (worker.retired || closed) {
+            return;
+        }
+        crashes.incrementAndGet();
+        log.warn("MCP服务 {} 工作进程 #{} 意外退出，在途调用 {} 个", server, worker.id, worker.inFlight.get());
+        workers.remove(worker);
+        worker.retired = true;
+        worker.abortCalls();
+        worker.close();
+        replenish();
+    }
+
+    private void retire(Worker worker) {
+        worker.retired = true;
+        workers.remove(worker);
+        retired.incrementAndGet();
+        log.info("MCP服务 {} 回收空闲工作进程 #{}，当前 {} 个", server, worker.id, workers.size());
+        if (worker.inFlight.get() == 0) {
+            worker.close();
+        }
+    }
+
+    private boolean inBackoff() {
+        return lastSpawnFailure != 0 && System.nanoTime() - lastSpawnFailure < restartBackoffNanos;
+    }
+
+    private static final class Worker {
+
+        private final int id;
+        private final McpSyncClient client;
+        private final StdioClientTransport transport;
+        private final long startedAt = System.nanoTime();
+        private final AtomicInteger inFlight = new AtomicInteger(0);
+        private final AtomicLong calls = new AtomicLong(0);
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        private volatile long lastUsed = System.nanoTime();
+        private volatile boolean retired;
+        private volatile boolean crashed;
+
+        // 等待调用结果的线程，进程崩溃时中断；登记、注销和中断在同一把锁下进行，中断不会落到已返回的线程上
+        private final ReentrantLock callersLock = new ReentrantLock();
+        private final Set<Thread> callers = new HashSet<>();
+
+        Worker(int id, McpSyncClient client, StdioClientTransport transport) {
+            this.id = id;
+            this.client = client;
+            this.transport = transport;
+        }
+
+        void register(Thread thread) {
+            callersLock.lock();
+            try {
+                callers.add(thread);
+            } finally {
+                callersLock.unlock();
+            }
+        }
+
+        void deregister(Thread thread) {
+            callersLock.lock();
+            try {
+                callers.remove(thread);
+                if (crashed) {
+                    // 清除崩溃时设置的中断标记
+                    Thread.interrupted();
+                }
+            } finally {
+                callersLock.unlock();
+            }
+        }
+
+        void abortCalls() {
+            callersLock.lock();
+            try {
+                crashed = true;
+                callers.forEach(Thread::interrupt);
+            } finally {
+                callersLock.unlock();
+            }
+        }
+
+        void close() {
+            if (closed.compareAndSet(false, true)) {
+                try {
+                    client.closeGracefully();
+                } catch (Exception e) {
+                    client.close();
+                }
+            }
+        }
+    }
+}
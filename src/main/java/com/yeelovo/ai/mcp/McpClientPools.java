@@ -0,0 +1,172 @@
+package com.yeelovo.ai.mcp;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.mcp.client.autoconfigure.properties.McpClientCommonProperties;
+import org.springframework.ai.mcp.customizer.McpSyncClientCustomizer;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.ToolCallbackProvider;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MCP stdio服务的工作进程池
+ * 替代 spring.ai.mcp.client.stdio 的单连接客户端：启动时为 proxy.mcp-pool.servers 中的每个服务预先启动常驻进程，
+ * 工具以ToolCallbackProvider注册，与其他工具一起由ToolCatalog按请求选择
+ */
+@Slf4j
+@Component
+@EnableConfigurationProperties(McpPoolProperties.class)
+public class McpClientPools implements ToolCallbackProvider, MeterBinder {
+
+    private final McpPoolProperties properties;
+
+    private final Map<String, McpClientPool> pools = new LinkedHashMap<>();
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService maintainer;
+
+    // 任一服务的工具列表变更时重建
+    private volatile ToolCallback[] toolCallbacks = new ToolCallback[0];
+
+    public McpClientPools(McpPoolProperties properties, ObjectProvider<McpClientCommonProperties> commonProperties,
+                          ObjectProvider<McpSyncClientCustomizer> customizers) {
+        this.properties = properties;
+
+        // 进程启动和退出监视都是阻塞操作，每个工作进程占用一个监视线程
+        AtomicInteger threadCount = new AtomicInteger(0);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "mcp-pool-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maintainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mcp-pool-maintainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (properties.isEnabled()) {
+            McpClientCommonProperties common = commonProperties.getIfAvailable(McpClientCommonProperties::new);
+            // 与Spring AI创建的MCP客户端一样应用所有定制器（如工具目录的变更监听）
+            List<McpSyncClientCustomizer> clientCustomizers = customizers.orderedStream().toList();
+            properties.getServers().forEach((server, config) -> pools.put(server, new McpClientPool(server, config, properties,
+                    common.getName() + " - " + server, common.getVersion(), common.getRequestTimeout(), executor,
+                    clientCustomizers, this::refreshToolCallbacks)));
+            start();
+        }
+        refreshToolCallbacks();
+
+        long interval = properties.getMaintenanceInterval().toMillis();
+        maintainer.scheduleWithFixedDelay(this::maintainQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 池化的MCP工具，返回类型收窄为ToolCallback
+     */
+    @Override
+    public ToolCallback[] getToolCallbacks() {
+        return toolCallbacks;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", properties.isEnabled());
+        List<Map<String, Object>> servers = new ArrayList<>();
+        pools.values().forEach(pool -> servers.add(pool.snapshot()));
+        result.put("servers", servers);
+        return result;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (McpClientPool pool : pools.values()) {
+            Gauge.builder("ai.mcp.pool.workers", pool, McpClientPool::readyCount)
+                    .tag("server", pool.getServer())
+                    .tag("state", "ready")
+                    .description("MCP工作进程数")
+                    .register(registry);
+            Gauge.builder("ai.mcp.pool.workers", pool, McpClientPool::startingCount)
+                    .tag("server", pool.getServer())
+                    .tag("state", "starting")
+                    .description("MCP工作进程数")
+                    .register(registry);
+            Gauge.builder("ai.mcp.pool.inflight", pool, McpClientPool::inFlight)
+                    .tag("server", pool.getServer())
+                    .description("进行中的工具调用数")
+                    .register(registry);
+            FunctionCounter.builder("ai.mcp.pool.calls", pool.calls(), Number::doubleValue)
+                    .tag("server", pool.getServer())
+                    .description("工具调用次数")
+                    .register(registry);
+            FunctionCounter.builder("ai.mcp.pool.crashes", pool.crashes(), Number::doubleValue)
+                    .tag("server", pool.getServer())
+                    .description("工作进程意外退出次数")
+                    .register(registry);
+            FunctionCounter.builder("ai.mcp.pool.spawn.failures", pool.spawnFailures(), Number::doubleValue)
+                    .tag("server", pool.getServer())
+                    .description("工作进程启动失败次数")
+                    .register(registry);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        maintainer.shutdownNow();
+        pools.values().forEach(McpClientPool::close);
+        executor.shutdownNow();
+    }
+
+    /**
+     * 并行启动所有服务的常驻进程，等待完成后加载工具列表；任一服务没有进程启动成功时启动失败
+     */
+    private void start() {
+        List<CompletableFuture<Void>> futures = pools.values().stream().map(McpClientPool::prewarm).toList();
+        Duration timeout = properties.getStartupTimeout();
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("MCP工作进程未能在 {} 秒内全部启动，继续使用已就绪的进程", timeout.toSeconds());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("启动MCP工作进程时被中断", e);
+        } catch (Exception e) {
+            throw new IllegalStateException("启动MCP工作进程失败", e);
+        }
+        pools.values().forEach(McpClientPool::loadTools);
+    }
+
+    private void maintainQuietly() {
+        for (McpClientPool pool : pools.values()) {
+            try {
+                pool.maintain();
+            } catch (Exception e) {
+                log.warn("维护MCP服务 {} 的工作进程失败", pool.getServer(), e);
+            }
+        }
+    }
+
+    private void refreshToolCallbacks() {
+        this.toolCallbacks = pools.values().stream()
+                                     .flatMap(pool -> pool.getTools().stream().map(tool -> new PooledMcpToolCallback(pool, tool)))
+                                     .toArray(ToolCallback[]::new);
+    }
+}
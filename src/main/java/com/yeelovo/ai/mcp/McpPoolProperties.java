@@ -0,0 +1,62 @@
+package com.yeelovo.ai.mcp;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MCP stdio工作进程池配置
+ * 每个服务启动多个相同的MCP服务进程，工具调用分配给在途调用最少的进程；
+ * 客户端名称、版本和请求超时沿用 spring.ai.mcp.client 的配置
+ */
+@Data
+@ConfigurationProperties(prefix = "proxy.mcp-pool")
+public class McpPoolProperties {
+
+    private boolean enabled = true;
+
+    // 每个服务常驻的进程数，启动时预先创建并完成初始化
+    private int minWorkers = 2;
+
+    // 每个服务的进程数上限
+    private int maxWorkers = 8;
+
+    // 在途调用数达到该值的进程视为繁忙，所有进程都繁忙时扩容一个
+    private int busyThreshold = 1;
+
+    // 超过常驻数的进程空闲该时长后关闭
+    private Duration idleTimeout = Duration.ofMinutes(2);
+
+    // 补足常驻进程、回收空闲进程的检查间隔
+    private Duration maintenanceInterval = Duration.ofSeconds(10);
+
+    // 启动时等待常驻进程初始化的最长时间（npx首次运行需要下载包）
+    private Duration startupTimeout = Duration.ofSeconds(60);
+
+    // 进程启动失败后，至少间隔该时长再重试
+    private Duration restartBackoff = Duration.ofSeconds(5);
+
+    // stdio服务，键为服务名
+    private Map<String, Server> servers = new LinkedHashMap<>();
+
+    @Data
+    public static class Server {
+
+        private String command;
+
+        private List<String> args = new ArrayList<>();
+
+        private Map<String, String> env = new HashMap<>();
+
+        // 覆盖全局的 minWorkers / maxWorkers
+        private Integer minWorkers;
+
+        private Integer maxWorkers;
+    }
+}
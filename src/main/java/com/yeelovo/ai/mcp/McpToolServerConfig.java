@@ -0,0 +1,68 @@
+package com.yeelovo.ai.mcp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.modelcontextprotocol.server.McpAsyncServer;
+import io.modelcontextprotocol.server.McpServer;
+import io.modelcontextprotocol.server.transport.WebFluxSseServerTransportProvider;
+import io.modelcontextprotocol.spec.McpSchema;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.reactive.ServletHttpHandlerAdapter;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+
+/**
+ * MCP服务端
+ * 不使用 spring.ai.mcp.server 自动配置：它会把所有ToolCallbackProvider（包括高德等MCP客户端工具）原样再导出，
+ * 且在Servlet应用中不会挂载WebFlux传输的路由。这里只注册 CompletionMcpTools 的工具，
+ * 并把WebFlux传输适配为Servlet挂到 base-path 下，SSE连接和消息处理仍是非阻塞的
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "proxy.mcp-server", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class McpToolServerConfig {
+
+    // 由服务端关闭时一并关闭
+    @Bean(destroyMethod = "")
+    public WebFluxSseServerTransportProvider mcpToolServerTransport(ObjectMapper objectMapper, McpToolServerProperties properties) {
+        // 路由相对Servlet映射匹配，base-path 只用于拼接告诉客户端的消息端点地址
+        return WebFluxSseServerTransportProvider.builder()
+                       .objectMapper(objectMapper)
+                       .basePath(properties.getBasePath())
+                       .messageEndpoint(properties.getMessageEndpoint())
+                       .sseEndpoint(properties.getSseEndpoint())
+                       .build();
+    }
+
+    @Bean
+    public ServletRegistrationBean<ServletHttpHandlerAdapter> mcpToolServerServlet(WebFluxSseServerTransportProvider transport,
+                                                                                   McpToolServerProperties properties) {
+        ServletHttpHandlerAdapter servlet = new ServletHttpHandlerAdapter(RouterFunctions.toHttpHandler(transport.getRouterFunction()));
+        ServletRegistrationBean<ServletHttpHandlerAdapter> registration =
+                new ServletRegistrationBean<>(servlet, properties.getBasePath() + "/*");
+        registration.setName("mcpToolServer");
+        registration.setAsyncSupported(true);
+        registration.setLoadOnStartup(1);
+        return registration;
+    }
+
+    // 关闭时通知所有会话并断开SSE连接
+    @Bean(destroyMethod = "close")
+    public McpAsyncServer mcpToolServer(WebFluxSseServerTransportProvider transport,
+                                        McpToolServerProperties properties,
+                                        CompletionMcpTools tools) {
+        McpAsyncServer server = McpServer.async(transport)
+                                        .serverInfo(properties.getName(), properties.getVersion())
+                                        .capabilities(McpSchema.ServerCapabilities.builder()
+                                                              .tools(false)
+                                                              .logging()
+                                                              .build())
+                                        .tools(tools.specifications())
+                                        .build();
+        log.info("MCP服务端已启动: {}{}，工具 {}", properties.getBasePath(), properties.getSseEndpoint(),
+                tools.specifications().stream().map(spec -> spec.tool().name()).toList());
+        return server;
+    }
+}
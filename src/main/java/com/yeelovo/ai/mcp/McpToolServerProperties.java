@@ -0,0 +1,47 @@
+package com.yeelovo.ai.mcp;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * MCP服务端配置
+ * 把补全能力以MCP工具（chat、summarize_batch）提供给其他Agent，走WebFlux SSE传输
+ */
+@Data
+@ConfigurationProperties(prefix = "proxy.mcp-server")
+public class McpToolServerProperties {
+
+    private boolean enabled = true;
+
+    private String name = "ai-demo-mcp-server";
+
+    private String version = "1.0.0";
+
+    // 传输挂载的路径前缀，SSE和消息端点相对该前缀
+    private String basePath = "/mcp";
+
+    private String sseEndpoint = "/sse";
+
+    private String messageEndpoint = "/message";
+
+    // 单个MCP会话同时执行的工具调用数，超出时直接返回错误结果
+    private int perSessionConcurrency = 4;
+
+    // MCP调用以该Key参与准入控制，通过 proxy.admission.key-limits 限制MCP整体占用的并发
+    private String clientKey = "mcp";
+
+    // chat工具的增量合并时间，该时间内生成的增量合并为一条进度通知
+    private Duration progressInterval = Duration.ofMillis(500);
+
+    // summarize_batch 单次调用内并发摘要的文档数
+    private int summarizeConcurrency = 4;
+
+    // summarize_batch 单次调用的文档数上限
+    private int maxDocuments = 100;
+
+    private String summaryPrompt = "请用简洁的中文概括下面的内容，保留关键事实和结论，不要添加原文没有的信息。";
+
+    private int summaryMaxTokens = 256;
+}
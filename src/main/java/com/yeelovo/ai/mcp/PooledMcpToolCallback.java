@@ -0,0 +1,51 @@
+package com.yeelovo.ai.mcp;
+
+import io.modelcontextprotocol.spec.McpSchema;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.mcp.McpToolUtils;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.util.Map;
+
+/**
+ * 通过工作进程池调用的MCP工具
+ * 工具名前缀、参数和结果的转换与 SyncMcpToolCallback 相同，替换后模型看到的工具不变
+ */
+class PooledMcpToolCallback implements ToolCallback {
+
+    private final McpClientPool pool;
+    private final McpSchema.Tool tool;
+    private final ToolDefinition definition;
+
+    PooledMcpToolCallback(McpClientPool pool, McpSchema.Tool tool) {
+        this.pool = pool;
+        this.tool = tool;
+        this.definition = ToolDefinition.builder()
+                                  .name(McpToolUtils.prefixedToolName(pool.getClientName(), tool.name()))
+                                  .description(tool.description())
+                                  .inputSchema(ModelOptionsUtils.toJsonString(tool.inputSchema()))
+                                  .build();
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return definition;
+    }
+
+    @Override
+    public String call(String toolInput) {
+        Map<String, Object> arguments = ModelOptionsUtils.jsonToMap(toolInput);
+        McpSchema.CallToolResult result = pool.callTool(new McpSchema.CallToolRequest(tool.name(), arguments));
+        if (Boolean.TRUE.equals(result.isError())) {
+            throw new IllegalStateException("Error calling tool: " + result.content());
+        }
+        return ModelOptionsUtils.toJsonString(result.content());
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        return call(toolInput);
+    }
+}
@@ -0,0 +1,226 @@
+package com.yeelovo.ai.memory;
+
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 有界的按会话存储的聊天记忆
+ * 每个会话限制消息数和token数，超出时丢弃最早的消息；全局按会话数和token预算做LRU淘汰，
+ * 空闲超过TTL的会话在读写时顺带清理（访问顺序的LinkedHashMap中最久未访问的会话总在最前面），过期会话视为不存在
+ */
+public class BoundedChatMemory implements ChatMemory {
+
+    private final ChatMemoryProperties properties;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // accessOrder=true，迭代顺序即LRU顺序
+    private final LinkedHashMap<String, Conversation> conversations = new LinkedHashMap<>(256, 0.75f, true);
+
+    private long totalTokens;
+    private long totalMessages;
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong lruEvictions = new AtomicLong(0);
+    private final AtomicLong ttlEvictions = new AtomicLong(0);
+    private final AtomicLong trimmedMessages = new AtomicLong(0);
+
+    public BoundedChatMemory(ChatMemoryProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            evictExpired(now);
+
+            Conversation conversation = conversations.computeIfAbsent(conversationId, k -> new Conversation());
+            conversation.lastAccess = now;
+            for (Message message : messages) {
+                Entry entry = new Entry(message, estimateTokens(message.getText()));
+                conversation.entries.addLast(entry);
+                conversation.tokens += entry.tokens;
+                totalTokens += entry.tokens;
+                totalMessages++;
+            }
+            trim(conversation);
+            enforceGlobalBounds(conversationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId, int lastN) {
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            // 先清理过期会话，期间没有写入的过期会话同样记为未命中
+            evictExpired(now);
+            Conversation conversation = conversations.get(conversationId);
+            if (conversation == null) {
+                misses.incrementAndGet();
+                return Collections.emptyList();
+            }
+            hits.incrementAndGet();
+            conversation.lastAccess = now;
+
+            int skip = Math.max(0, conversation.entries.size() - lastN);
+            List<Message> result = new ArrayList<>(conversation.entries.size() - skip);
+            Iterator<Entry> it = conversation.entries.iterator();
+            for (int i = 0; it.hasNext(); i++) {
+                Entry entry = it.next();
+                if (i >= skip) {
+                    result.add(entry.message);
+                }
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 会话是否在内存中（区分“会话不存在”和“会话为空”）
+     */
+    public boolean contains(String conversationId) {
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            evictExpired(now);
+            return conversations.containsKey(conversationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        lock.lock();
+        try {
+            Conversation removed = conversations.remove(conversationId);
+            if (removed != null) {
+                release(removed);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 命中率、淘汰次数和容量统计
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            result.put("conversations", conversations.size());
+            result.put("messages", totalMessages);
+            result.put("tokens", totalTokens);
+        } finally {
+            lock.unlock();
+        }
+        result.put("hits", hits.get());
+        result.put("misses", misses.get());
+        result.put("lruEvictions", lruEvictions.get());
+        result.put("ttlEvictions", ttlEvictions.get());
+        result.put("trimmedMessages", trimmedMessages.get());
+        return result;
+    }
+
+    /**
+     * 单个会话超过消息数或token上限时，从最早的消息开始丢弃
+     */
+    private void trim(Conversation conversation) {
+        while (!conversation.entries.isEmpty()
+                && (conversation.entries.size() > properties.getMaxMessagesPerConversation()
+                    || conversation.tokens > properties.getMaxTokensPerConversation())) {
+            Entry dropped = conversation.entries.pollFirst();
+            conversation.tokens -= dropped.tokens;
+            totalTokens -= dropped.tokens;
+            totalMessages--;
+            trimmedMessages.incrementAndGet();
+        }
+    }
+
+    /**
+     * 按LRU顺序淘汰整个会话，直到会话数和全局token预算满足要求；当前写入的会话不淘汰
+     */
+    private void enforceGlobalBounds(String currentId) {
+        Iterator<Map.Entry<String, Conversation>> it = conversations.entrySet().iterator();
+        while (it.hasNext()
+                && (conversations.size() > properties.getMaxConversations()
+                    || totalTokens > properties.getMaxTotalTokens())) {
+            Map.Entry<String, Conversation> eldest = it.next();
+            if (eldest.getKey().equals(currentId)) {
+                continue;
+            }
+            it.remove();
+            release(eldest.getValue());
+            lruEvictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * 清理空闲超时的会话，遇到第一个未超时的会话即停止
+     */
+    private void evictExpired(long now) {
+        long ttl = properties.getIdleTtl().toMillis();
+        Iterator<Map.Entry<String, Conversation>> it = conversations.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Conversation> eldest = it.next();
+            if (now - eldest.getValue().lastAccess < ttl) {
+                break;
+            }
+            it.remove();
+            release(eldest.getValue());
+            ttlEvictions.incrementAndGet();
+        }
+    }
+
+    private void release(Conversation conversation) {
+        totalTokens -= conversation.tokens;
+        totalMessages -= conversation.entries.size();
+    }
+
+    /**
+     * 粗略估算token数：ASCII字符约4个一个token，其余字符（如中文）按每字一个token计
+     */
+    static int estimateTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 1;
+        }
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < 0x80) {
+                ascii++;
+            } else {
+                other++;
+            }
+        }
+        return (ascii + 3) / 4 + other + 1;
+    }
+
+    private static final class Conversation {
+        private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+        private int tokens;
+        private long lastAccess;
+    }
+
+    private record Entry(Message message, int tokens) {
+    }
+}
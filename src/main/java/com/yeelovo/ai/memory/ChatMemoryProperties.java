@@ -0,0 +1,59 @@
+package com.yeelovo.ai.memory;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 会话记忆配置
+ */
+@Data
+@ConfigurationProperties(prefix = "proxy.memory")
+public class ChatMemoryProperties {
+
+    // 是否启用会话记忆
+    private boolean enabled = true;
+
+    // 每个会话保留的最大消息数
+    private int maxMessagesPerConversation = 50;
+
+    // 每个会话保留的最大token数（估算值）
+    private int maxTokensPerConversation = 8000;
+
+    // 最大会话数，超过后按LRU淘汰
+    private int maxConversations = 10000;
+
+    // 全局token预算（估算值），超过后按LRU淘汰整个会话
+    private long maxTotalTokens = 5_000_000L;
+
+    // 会话空闲超时，超过后淘汰
+    private Duration idleTtl = Duration.ofMinutes(30);
+
+    // 存储方式：memory 仅内存；jdbc 内存热数据 + 数据库持久化
+    private String store = "memory";
+
+    private Jdbc jdbc = new Jdbc();
+
+    @Data
+    public static class Jdbc {
+
+        // 启动时自动建表
+        private boolean initializeSchema = true;
+
+        // 批量写入条数，缓冲达到该值时立即触发一次写入
+        private int batchSize = 200;
+
+        // 定时写入间隔
+        private Duration flushInterval = Duration.ofSeconds(1);
+
+        // 待写入缓冲上限，数据库长时间不可用时丢弃最早的待写入消息，避免占满内存
+        private int maxPending = 100_000;
+
+        // 懒加载查询和批量写入的超时时间
+        private Duration queryTimeout = Duration.ofSeconds(3);
+
+        // 一批写入的最大尝试次数，失败后在下一次定时写入时重试，用完后丢弃该批
+        private int maxWriteAttempts = 5;
+    }
+}
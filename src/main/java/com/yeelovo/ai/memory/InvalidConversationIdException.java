@@ -0,0 +1,11 @@
+package com.yeelovo.ai.memory;
+
+/**
+ * 会话ID不能用于服务端会话记忆（如超过持久化的列宽），对应HTTP 400
+ */
+public class InvalidConversationIdException extends RuntimeException {
+
+    public InvalidConversationIdException(String message) {
+        super(message);
+    }
+}
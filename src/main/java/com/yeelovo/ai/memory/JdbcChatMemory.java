@@ -0,0 +1,474 @@
+package com.yeelovo.ai.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 基于JDBC持久化的聊天记忆
+ * 活跃会话保存在内存热数据层（BoundedChatMemory），读写都只访问内存；
+ * 新消息进入待写入缓冲，按条数或时间批量追加写入数据库；内存中没有的会话在首次访问时从数据库懒加载。
+ * 请求线程不等待写入线程：懒加载按会话各自进行，读到的数据库历史与未写入的缓冲按写入序号去重合并；清空会话也作为写入操作排队执行
+ */
+@Slf4j
+public class JdbcChatMemory implements ChatMemory, AutoCloseable {
+
+    // 与 chat_memory_message.conversation_id 的列宽一致，更长的会话ID在请求入口返回400
+    public static final int MAX_CONVERSATION_ID_LENGTH = 128;
+
+    private static final String INSERT_SQL =
+            "INSERT INTO chat_memory_message (conversation_id, message_type, content, created_at, write_seq) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String SELECT_SQL =
+            "SELECT write_seq, message_type, content FROM chat_memory_message WHERE conversation_id = ? ORDER BY id DESC LIMIT ?";
+
+    private static final String DELETE_SQL = "DELETE FROM chat_memory_message WHERE conversation_id = ?";
+
+    private final BoundedChatMemory hotTier;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ChatMemoryProperties properties;
+
+    // 待写入缓冲，只追加，写入线程按顺序取出
+    private final ConcurrentLinkedQueue<PendingRow> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingSize = new AtomicInteger(0);
+
+    // 尚未提交到数据库的操作（缓冲中、写入中和等待重试的），按序号排序，懒加载时与数据库历史合并
+    private final ConcurrentSkipListMap<Long, PendingRow> uncommitted = new ConcurrentSkipListMap<>();
+    // 写入序号随消息写入 write_seq 列，懒加载时据此识别已提交的缓冲行；
+    // 以微秒级时间戳起始，重启后的序号不会与之前写入的行重复
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    // 每个会话同时只有一个懒加载，其余请求等待同一个结果
+    private final ConcurrentHashMap<String, CompletableFuture<Boolean>> loading = new ConcurrentHashMap<>();
+
+    // 只由写入线程和关闭时持有，请求线程不获取
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    // 已从缓冲取出、尚未写入成功的一批操作，失败后在下一次写入时重试，保持写入顺序
+    private final List<PendingRow> inFlight = new ArrayList<>();
+    private int inFlightAttempts;
+    // 已取出但需单独成批的清空操作，排在当前批次之后
+    private PendingRow deferred;
+
+    private final ScheduledExecutorService flusher;
+
+    private final AtomicLong flushedRows = new AtomicLong(0);
+    private final AtomicLong flushBatches = new AtomicLong(0);
+    private final AtomicLong flushFailures = new AtomicLong(0);
+    private final AtomicLong droppedRows = new AtomicLong(0);
+    private final AtomicLong coldLoads = new AtomicLong(0);
+    private final AtomicLong loadFailures = new AtomicLong(0);
+
+    public JdbcChatMemory(BoundedChatMemory hotTier, JdbcTemplate jdbcTemplate, ChatMemoryProperties properties) {
+        this.hotTier = hotTier;
+        this.properties = properties;
+
+        // 独立的JdbcTemplate设置查询超时，不影响应用中共用的实例
+        DataSource dataSource = jdbcTemplate.getDataSource();
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setQueryTimeout((int) Math.max(1, properties.getJdbc().getQueryTimeout().toSeconds()));
+        // 一批写入在事务中提交，失败重试时不会重复写入部分成功的行
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        if (properties.getJdbc().isInitializeSchema()) {
+            initializeSchema();
+        }
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-memory-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getJdbc().getFlushInterval().toMillis();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        // 先确保热数据层有完整历史，避免后续懒加载把新消息当作旧消息重复加载；
+        // 加载失败时不写热数据层，只持久化新消息，下次访问重新加载
+        if (ensureLoaded(conversationId)) {
+            hotTier.add(conversationId, messages);
+        }
+
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        for (Message message : messages) {
+            if (toType(message) == null) {
+                continue;
+            }
+            enqueue(conversationId, message.getMessageType().getValue(), message.getText(), now);
+        }
+
+        // 达到批量大小时异步触发写入，请求线程不等待数据库
+        if (pendingSize.get() >= properties.getJdbc().getBatchSize()) {
+            scheduleFlush();
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId, int lastN) {
+        if (!ensureLoaded(conversationId)) {
+            return Collections.emptyList();
+        }
+        return hotTier.get(conversationId, lastN);
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        hotTier.clear(conversationId);
+        // 删除排在该会话已缓冲的消息之后执行；热数据层保留空会话，删除完成前不会从数据库加载旧历史
+        enqueue(conversationId, null, null, null);
+        hotTier.add(conversationId, Collections.emptyList());
+        scheduleFlush();
+    }
+
+    /**
+     * 按顺序写入缓冲中的操作，供写入线程和关闭时调用；一批失败时保留到下一次写入重试，超过次数后丢弃
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            while (true) {
+                if (inFlight.isEmpty() && !nextBatch()) {
+                    return;
+                }
+                if (!writeInFlight()) {
+                    return;
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>(hotTier.snapshot());
+        result.put("store", "jdbc");
+        result.put("pendingRows", uncommitted.size());
+        result.put("flushedRows", flushedRows.get());
+        result.put("flushBatches", flushBatches.get());
+        result.put("flushFailures", flushFailures.get());
+        result.put("droppedRows", droppedRows.get());
+        result.put("coldLoads", coldLoads.get());
+        result.put("loadFailures", loadFailures.get());
+        result.put("loadingConversations", loading.size());
+        return result;
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 关闭前写完剩余缓冲
+        flushQuietly();
+        if (!uncommitted.isEmpty()) {
+            log.warn("关闭时仍有 {} 条会话记忆未写入数据库", uncommitted.size());
+        }
+    }
+
+    /**
+     * 热数据层没有该会话时从数据库加载最近的消息；数据库中也没有时建立空会话，后续不再查询数据库。
+     * 同一会话只由第一个请求加载，其余请求等待该结果；加载失败时返回false且不缓存，下次访问重新加载
+     */
+    private boolean ensureLoaded(String conversationId) {
+        if (hotTier.contains(conversationId)) {
+            return true;
+        }
+        CompletableFuture<Boolean> mine = new CompletableFuture<>();
+        CompletableFuture<Boolean> existing = loading.putIfAbsent(conversationId, mine);
+        if (existing != null) {
+            return existing.join();
+        }
+        try {
+            // 前一个加载可能在检查之后刚完成
+            if (hotTier.contains(conversationId)) {
+                mine.complete(true);
+                return true;
+            }
+            coldLoads.incrementAndGet();
+            List<Message> history = load(conversationId);
+            hotTier.add(conversationId, history);
+            mine.complete(true);
+            return true;
+        } catch (Exception e) {
+            // 数据库不可用时本次请求不带历史，不缓存失败的结果
+            loadFailures.incrementAndGet();
+            log.warn("加载会话历史失败: {}", e.getMessage());
+            mine.complete(false);
+            return false;
+        } finally {
+            loading.remove(conversationId, mine);
+        }
+    }
+
+    /**
+     * 读取数据库历史并合并该会话尚未提交的操作，不等待写入线程。
+     * 查询前后各取一次未提交操作：查询期间提交的行可能已在结果中，也可能还不可见，按写入序号去重后两种情况都不重复、不遗漏；
+     * 合并后按序号排列，清空操作丢弃排在它之前的消息。没有写入序号的旧数据排在最前面
+     */
+    private List<Message> load(String conversationId) {
+        TreeMap<Long, PendingRow> ordered = new TreeMap<>();
+        for (PendingRow row : uncommittedRows(conversationId)) {
+            ordered.put(row.seq(), row);
+        }
+        List<Message> merged = new ArrayList<>();
+        List<PendingRow> history = jdbcTemplate.query(SELECT_SQL,
+                (rs, rowNum) -> {
+                    long seq = rs.getLong("write_seq");
+                    return new PendingRow(rs.wasNull() ? 0 : seq, conversationId, rs.getString("message_type"),
+                            rs.getString("content"), null);
+                },
+                conversationId, properties.getMaxMessagesPerConversation());
+        for (int i = history.size() - 1; i >= 0; i--) {
+            PendingRow row = history.get(i);
+            if (row.seq() == 0) {
+                merged.add(toMessage(row.messageType(), row.content()));
+            } else {
+                ordered.put(row.seq(), row);
+            }
+        }
+        for (PendingRow row : uncommittedRows(conversationId)) {
+            ordered.putIfAbsent(row.seq(), row);
+        }
+        for (PendingRow row : ordered.values()) {
+            if (row.isClear()) {
+                merged.clear();
+            } else {
+                merged.add(toMessage(row.messageType(), row.content()));
+            }
+        }
+        merged.removeIf(message -> message == null);
+        return merged;
+    }
+
+    private void enqueue(String conversationId, String messageType, String content, Timestamp createdAt) {
+        PendingRow row = new PendingRow(sequence.incrementAndGet(), conversationId, messageType, content, createdAt);
+        uncommitted.put(row.seq(), row);
+        pending.add(row);
+        if (pendingSize.incrementAndGet() > properties.getJdbc().getMaxPending()) {
+            dropOldest();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushScheduled.set(false);
+                flushQuietly();
+            });
+        }
+    }
+
+    /**
+     * 从缓冲取出下一批：连续的消息最多 batch-size 条，清空会话单独成批
+     */
+    private boolean nextBatch() {
+        int batchSize = properties.getJdbc().getBatchSize();
+        PendingRow row;
+        while (inFlight.size() < batchSize && (row = nextRow()) != null) {
+            if (row.isClear() && !inFlight.isEmpty()) {
+                deferred = row;
+                break;
+            }
+            inFlight.add(row);
+            if (row.isClear()) {
+                break;
+            }
+        }
+        inFlightAttempts = 0;
+        return !inFlight.isEmpty();
+    }
+
+    private PendingRow nextRow() {
+        if (deferred != null) {
+            PendingRow row = deferred;
+            deferred = null;
+            return row;
+        }
+        PendingRow row = pending.poll();
+        if (row != null) {
+            pendingSize.decrementAndGet();
+        }
+        return row;
+    }
+
+    /**
+     * 写入当前批次，成功或放弃后返回true继续下一批；失败且还可重试时返回false，等下一次写入
+     */
+    private boolean writeInFlight() {
+        PendingRow first = inFlight.get(0);
+        int messages = first.isClear() ? 0 : inFlight.size();
+        try {
+            inFlightAttempts++;
+            transactionTemplate.executeWithoutResult(status -> {
+                if (first.isClear()) {
+                    jdbcTemplate.update(DELETE_SQL, first.conversationId());
+                } else {
+                    List<Object[]> batch = new ArrayList<>(inFlight.size());
+                    for (PendingRow row : inFlight) {
+                        batch.add(insertArgs(row));
+                    }
+                    jdbcTemplate.batchUpdate(INSERT_SQL, batch);
+                }
+            });
+            flushedRows.addAndGet(messages);
+            flushBatches.incrementAndGet();
+            completeInFlight();
+            return true;
+        } catch (Exception e) {
+            flushFailures.incrementAndGet();
+            // 一批中有无法写入的行（如超长内容）时逐行写入，只丢弃写不进去的行，不连累同批的其他会话
+            if (messages > 1 && writeRowByRow(e)) {
+                return true;
+            }
+            int maxAttempts = properties.getJdbc().getMaxWriteAttempts();
+            if (inFlightAttempts < maxAttempts) {
+                log.warn("批量写入会话记忆失败（第 {}/{} 次），稍后重试 {} 条: {}",
+                        inFlightAttempts, maxAttempts, inFlight.size(), e.getMessage());
+                return false;
+            }
+            droppedRows.addAndGet(inFlight.size());
+            log.error("批量写入会话记忆失败 {} 次，丢弃 {} 条", inFlightAttempts, inFlight.size(), e);
+            completeInFlight();
+            return true;
+        }
+    }
+
+    /**
+     * 批量写入失败后逐行写入当前批次。部分行写入成功说明数据库可用，失败的行是数据本身的问题，直接丢弃并返回true；
+     * 全部失败时（数据库不可用）不丢弃，返回false按批次重试
+     */
+    private boolean writeRowByRow(Exception batchError) {
+        List<PendingRow> failed = new ArrayList<>();
+        Exception lastError = batchError;
+        for (PendingRow row : inFlight) {
+            try {
+                jdbcTemplate.update(INSERT_SQL, insertArgs(row));
+                flushedRows.incrementAndGet();
+                uncommitted.remove(row.seq());
+            } catch (Exception e) {
+                failed.add(row);
+                lastError = e;
+            }
+        }
+        if (failed.size() == inFlight.size()) {
+            return false;
+        }
+        flushBatches.incrementAndGet();
+        if (!failed.isEmpty()) {
+            droppedRows.addAndGet(failed.size());
+            log.error("会话记忆逐行写入时 {} 条无法写入，已丢弃，会话: {}", failed.size(),
+                    failed.stream().map(PendingRow::conversationId).distinct().toList(), lastError);
+        }
+        completeInFlight();
+        return true;
+    }
+
+    private static Object[] insertArgs(PendingRow row) {
+        return new Object[]{row.conversationId(), row.messageType(), row.content(), row.createdAt(), row.seq()};
+    }
+
+    private void completeInFlight() {
+        for (PendingRow row : inFlight) {
+            uncommitted.remove(row.seq());
+        }
+        inFlight.clear();
+        inFlightAttempts = 0;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("写入会话记忆失败", e);
+        }
+    }
+
+    private List<PendingRow> uncommittedRows(String conversationId) {
+        List<PendingRow> rows = new ArrayList<>();
+        for (PendingRow row : uncommitted.values()) {
+            if (row.conversationId().equals(conversationId)) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private void dropOldest() {
+        PendingRow row = pending.poll();
+        if (row != null) {
+            pendingSize.decrementAndGet();
+            uncommitted.remove(row.seq());
+            droppedRows.incrementAndGet();
+        }
+    }
+
+    private void initializeSchema() {
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator(new ClassPathResource("db/chat-memory-schema.sql"));
+        // 索引已存在时忽略错误（MySQL不支持 CREATE INDEX IF NOT EXISTS）
+        populator.setContinueOnError(true);
+        try {
+            populator.execute(jdbcTemplate.getDataSource());
+        } catch (Exception e) {
+            log.warn("初始化会话记忆表失败: {}", e.getMessage());
+        }
+    }
+
+    private static MessageType toType(Message message) {
+        MessageType type = message.getMessageType();
+        return type == MessageType.USER || type == MessageType.ASSISTANT || type == MessageType.SYSTEM ? type : null;
+    }
+
+    private static Message toMessage(String type, String content) {
+        return switch (MessageType.fromValue(type)) {
+            case USER -> new UserMessage(content);
+            case ASSISTANT -> new AssistantMessage(content);
+            case SYSTEM -> new SystemMessage(content);
+            default -> null;
+        };
+    }
+
+    /**
+     * 待写入的操作，messageType 为空表示清空会话
+     */
+    private record PendingRow(long seq, String conversationId, String messageType, String content, Timestamp createdAt) {
+
+        boolean isClear() {
+            return messageType == null;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.yeelovo.ai.model.openai;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -22,6 +23,29 @@ public class ChatRequest {
     private Map<String, Object> options;
     private String query;
 
+    // 会话ID，携带时启用服务端会话记忆（也可通过 X-Conversation-Id 请求头传入）
+    private String conversation_id;
+
+    // 是否使用服务端会话记忆，客户端已在messages中发送完整历史时设为false
+    private Boolean memory;
+
+    // 流式选项，include_usage=true 时在流末尾追加一个携带用量的数据块
+    private StreamOptions stream_options;
+
+    // 是否把流式增量合并为较少的数据块（见 proxy.delta-batching），未指定时按调用方Key的配置
+    private Boolean batch_deltas;
+
+    // 本次请求可用的服务端工具，OpenAI格式，只使用 function.name（工具在代理内执行，定义以服务端为准）
+    // 空列表表示不携带工具；未指定时按 proxy.tool-selection 的关键词规则预筛选
+    private List<Tool> tools;
+
+    // "none"、"auto"、"required" 或 {"type": "function", "function": {"name": ...}}
+    private Object tool_choice;
+
+    // 调用方标识（取自Authorization头中的API Key），用于按Key准入控制，不参与序列化
+    @JsonIgnore
+    private String clientKey;
+
     public String getModel() {
         if (model == null) {
             return "gpt-4o";
@@ -29,6 +53,22 @@ public class ChatRequest {
         return model;
     }
 
+    /**
+     * 是否为本次请求启用服务端会话记忆
+     */
+    @JsonIgnore
+    public boolean isMemoryEnabled() {
+        return conversation_id != null && !conversation_id.isBlank() && !Boolean.FALSE.equals(memory);
+    }
+
+    /**
+     * 流式响应是否需要追加用量数据块
+     */
+    @JsonIgnore
+    public boolean isIncludeUsage() {
+        return stream_options != null && Boolean.TRUE.equals(stream_options.getInclude_usage());
+    }
+
     @Data
     @Builder
     @NoArgsConstructor
@@ -37,4 +77,31 @@ public class ChatRequest {
         private String role;
         private String content;
     }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Tool {
+        private String type;
+        private Function function;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Function {
+        private String name;
+        private String description;
+        private Map<String, Object> parameters;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class StreamOptions {
+        private Boolean include_usage;
+    }
 } 
\ No newline at end of file
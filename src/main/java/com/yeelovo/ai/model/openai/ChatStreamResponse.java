@@ -1,5 +1,6 @@
 package com.yeelovo.ai.model.openai;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -17,6 +18,10 @@ public class ChatStreamResponse {
     private long created;
     private String model;
     private List<Choice> choices;
+
+    // 只在 stream_options.include_usage 的用量数据块中出现
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private ChatResponse.Usage usage;
     
     @Data
     @Builder
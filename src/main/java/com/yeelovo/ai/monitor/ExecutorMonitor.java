@@ -0,0 +1,149 @@
+package com.yeelovo.ai.monitor;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 执行器运行状态监控
+ * 统计各命名执行器的在途任务数，虚拟线程模式下通过JFR统计线程钉住（pinned）事件。
+ * 平台线程池的队列深度和活跃线程数由 Spring Boot 对 ThreadPoolTaskExecutor 的自动指标（executor.*）导出，
+ * 这里补充在途任务数（虚拟线程执行器没有池和队列，只能看在途数）
+ */
+@Component
+@Slf4j
+public class ExecutorMonitor implements MeterBinder {
+
+    // 各执行器的在途任务数
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    // 虚拟线程钉住事件累计次数
+    private final AtomicLong pinnedEvents = new AtomicLong(0);
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreadsEnabled;
+
+    // 钉住事件的记录阈值
+    @Value("${proxy.executor.pinned-threshold:20ms}")
+    private Duration pinnedThreshold;
+
+    private RecordingStream pinnedRecording;
+
+    // 绑定后创建的计数器也要注册为指标
+    private volatile MeterRegistry registry;
+
+    @PostConstruct
+    public void startPinnedRecording() {
+        if (!isVirtualMode()) {
+            return;
+        }
+        try {
+            pinnedRecording = new RecordingStream();
+            pinnedRecording.enable("jdk.VirtualThreadPinned").withThreshold(pinnedThreshold);
+            pinnedRecording.onEvent("jdk.VirtualThreadPinned", event -> {
+                pinnedEvents.incrementAndGet();
+                log.warn("虚拟线程被钉住 {}ms, 线程: {}", event.getDuration().toMillis(),
+                        event.getThread() != null ? event.getThread().getJavaName() : "unknown");
+            });
+            pinnedRecording.startAsync();
+        } catch (Exception e) {
+            log.warn("无法启动虚拟线程钉住监控: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stopPinnedRecording() {
+        if (pinnedRecording != null) {
+            pinnedRecording.close();
+        }
+    }
+
+    /**
+     * 是否运行在虚拟线程模式（需要开启配置且运行在Java 21+）
+     */
+    public boolean isVirtualMode() {
+        return virtualThreadsEnabled && Runtime.version().feature() >= 21;
+    }
+
+    /**
+     * 为指定执行器创建任务装饰器，统计在途任务数
+     */
+    public TaskDecorator decorator(String executorName) {
+        AtomicInteger counter = counter(executorName);
+        return runnable -> () -> {
+            counter.incrementAndGet();
+            try {
+                runnable.run();
+            } finally {
+                counter.decrementAndGet();
+            }
+        };
+    }
+
+    /**
+     * 获取指定名称的在途计数器，用于追踪直接在请求线程上执行的阻塞调用
+     */
+    public AtomicInteger counter(String name) {
+        AtomicInteger counter = inFlight.get(name);
+        if (counter != null) {
+            return counter;
+        }
+        return inFlight.computeIfAbsent(name, k -> {
+            AtomicInteger created = new AtomicInteger(0);
+            MeterRegistry current = registry;
+            if (current != null) {
+                registerInFlight(current, k, created);
+            }
+            return created;
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        inFlight.forEach((name, counter) -> registerInFlight(registry, name, counter));
+        FunctionCounter.builder("ai.executor.pinned", pinnedEvents, AtomicLong::get)
+                .description("虚拟线程钉住事件数")
+                .register(registry);
+    }
+
+    private static void registerInFlight(MeterRegistry registry, String name, AtomicInteger counter) {
+        Gauge.builder("ai.executor.inflight", counter, AtomicInteger::get)
+                .description("执行器在途任务数")
+                .tag("name", name)
+                .register(registry);
+    }
+
+    public long getPinnedEvents() {
+        return pinnedEvents.get();
+    }
+
+    /**
+     * 汇总当前执行状态
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Integer> inFlightSnapshot = new LinkedHashMap<>();
+        inFlight.forEach((name, counter) -> inFlightSnapshot.put(name, counter.get()));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("mode", isVirtualMode() ? "virtual" : "platform");
+        result.put("inFlight", inFlightSnapshot);
+        result.put("pinnedEvents", pinnedEvents.get());
+        return result;
+    }
+}
@@ -0,0 +1,71 @@
+package com.yeelovo.ai.monitor;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 流式请求提前取消统计
+ * 流式数据块约等于一个token。客户端断开后取消上游生成，节省的token按
+ * max_tokens（若请求指定）或近期完整回复的平均长度，减去已生成的数据块数估算。
+ * 按上游连接统计：合并的请求共享一条上游连接，只有上游真正取消时才计为取消
+ */
+@Component
+public class StreamCancellationStats {
+
+    // 平滑系数，近期完整回复的权重
+    private static final double ALPHA = 0.1;
+
+    // 还没有完整回复样本时的默认回复长度
+    private static final double DEFAULT_COMPLETION_CHUNKS = 300;
+
+    private final AtomicLong completed = new AtomicLong(0);
+    private final AtomicLong cancelled = new AtomicLong(0);
+    private final AtomicLong tokensSaved = new AtomicLong(0);
+
+    // 完整回复数据块数的指数移动平均，只做近似估算，不需要严格同步
+    private volatile double averageCompletionChunks = DEFAULT_COMPLETION_CHUNKS;
+
+    /**
+     * 记录一次正常完成的上游流
+     */
+    public void recordCompleted(int chunks) {
+        completed.incrementAndGet();
+        averageCompletionChunks = averageCompletionChunks + ALPHA * (chunks - averageCompletionChunks);
+    }
+
+    /**
+     * 记录一次提前取消的上游流（所有订阅的客户端都已断开、超时或发送失败）
+     * @param chunks 取消前已生成的数据块数
+     * @param maxTokens 请求的max_tokens，可为null
+     */
+    public void recordCancelled(int chunks, Integer maxTokens) {
+        cancelled.incrementAndGet();
+        double expected = maxTokens != null && maxTokens > 0
+                ? Math.min(maxTokens, averageCompletionChunks * 2)
+                : averageCompletionChunks;
+        long saved = Math.round(expected - chunks);
+        if (saved > 0) {
+            tokensSaved.addAndGet(saved);
+        }
+    }
+
+    public long getCancelled() {
+        return cancelled.get();
+    }
+
+    public long getTokensSaved() {
+        return tokensSaved.get();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("completed", completed.get());
+        result.put("cancelled", cancelled.get());
+        result.put("tokensSaved", tokensSaved.get());
+        result.put("averageCompletionChunks", Math.round(averageCompletionChunks));
+        return result;
+    }
+}
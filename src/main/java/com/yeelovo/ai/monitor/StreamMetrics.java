@@ -0,0 +1,191 @@
+package com.yeelovo.ai.monitor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 补全请求的延迟指标
+ * 按模型记录首token时间（TTFT）、token间隔、总耗时和生成速度。每个流开始时解析一次该模型的指标，
+ * 之后每个数据块只做一次时间戳相减和直方图记录，不查表也不加锁
+ */
+@Component
+public class StreamMetrics {
+
+    // 模型名来自客户端请求，超过该数量的新模型统一归入 other，避免标签基数失控
+    private static final int MAX_MODELS = 64;
+
+    private static final String OTHER_MODEL = "other";
+
+    private final MeterRegistry registry;
+
+    private final Map<String, ModelMeters> meters = new ConcurrentHashMap<>();
+
+    private final AtomicInteger activeStreams = new AtomicInteger(0);
+
+    public StreamMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        registry.gauge("ai.stream.active", activeStreams);
+    }
+
+    /**
+     * 开始记录一个流式补全
+     */
+    public StreamRecorder start(String model) {
+        activeStreams.incrementAndGet();
+        return new StreamRecorder(meters(model), activeStreams, System.nanoTime());
+    }
+
+    /**
+     * 记录一次阻塞调用的耗时
+     * @param outcome completed / error
+     */
+    public void recordBlocking(String model, long nanos, String outcome) {
+        ModelMeters modelMeters = meters(model);
+        Timer timer = "completed".equals(outcome) ? modelMeters.blockingCompleted : modelMeters.blockingError;
+        timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private ModelMeters meters(String model) {
+        String name = model == null ? OTHER_MODEL : model;
+        ModelMeters existing = meters.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        if (meters.size() >= MAX_MODELS) {
+            name = OTHER_MODEL;
+        }
+        return meters.computeIfAbsent(name, this::createMeters);
+    }
+
+    private ModelMeters createMeters(String model) {
+        return new ModelMeters(
+                Timer.builder("ai.stream.ttft")
+                        .description("首token时间")
+                        .tag("model", model)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(10))
+                        .maximumExpectedValue(Duration.ofSeconds(60))
+                        .register(registry),
+                Timer.builder("ai.stream.inter.token")
+                        .description("相邻数据块的时间间隔")
+                        .tag("model", model)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(1))
+                        .maximumExpectedValue(Duration.ofSeconds(10))
+                        .register(registry),
+                streamDuration(model, "completed"),
+                streamDuration(model, "error"),
+                streamDuration(model, "cancelled"),
+                DistributionSummary.builder("ai.stream.tokens.per.second")
+                        .description("首token之后的生成速度")
+                        .tag("model", model)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(1.0)
+                        .maximumExpectedValue(1000.0)
+                        .register(registry),
+                Counter.builder("ai.stream.completion.tokens")
+                        .tag("model", model)
+                        .register(registry),
+                blockingDuration(model, "completed"),
+                blockingDuration(model, "error"));
+    }
+
+    private Timer streamDuration(String model, String outcome) {
+        return Timer.builder("ai.stream.duration")
+                       .description("流式补全总耗时")
+                       .tags("model", model, "outcome", outcome)
+                       .publishPercentileHistogram()
+                       .minimumExpectedValue(Duration.ofMillis(100))
+                       .maximumExpectedValue(Duration.ofMinutes(10))
+                       .register(registry);
+    }
+
+    private Timer blockingDuration(String model, String outcome) {
+        return Timer.builder("ai.chat.duration")
+                       .description("阻塞补全总耗时")
+                       .tags("model", model, "outcome", outcome)
+                       .publishPercentileHistogram()
+                       .minimumExpectedValue(Duration.ofMillis(100))
+                       .maximumExpectedValue(Duration.ofMinutes(10))
+                       .register(registry);
+    }
+
+    private record ModelMeters(Timer ttft, Timer interToken,
+                               Timer completed, Timer error, Timer cancelled,
+                               DistributionSummary tokensPerSecond, Counter completionTokens,
+                               Timer blockingCompleted, Timer blockingError) {
+    }
+
+    /**
+     * 单个流的记录器
+     * onChunk 只在上游发射线程上串行调用；finish 可能来自其他线程，只执行一次
+     */
+    public static final class StreamRecorder {
+
+        private final ModelMeters meters;
+        private final AtomicInteger activeStreams;
+        private final long startNanos;
+        private final AtomicBoolean finished = new AtomicBoolean(false);
+
+        private volatile long firstChunkNanos;
+        private long lastChunkNanos;
+
+        private StreamRecorder(ModelMeters meters, AtomicInteger activeStreams, long startNanos) {
+            this.meters = meters;
+            this.activeStreams = activeStreams;
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * 收到一个数据块
+         */
+        public void onChunk() {
+            long now = System.nanoTime();
+            if (lastChunkNanos == 0) {
+                firstChunkNanos = now;
+                meters.ttft.record(now - startNanos, TimeUnit.NANOSECONDS);
+            } else {
+                meters.interToken.record(now - lastChunkNanos, TimeUnit.NANOSECONDS);
+            }
+            lastChunkNanos = now;
+        }
+
+        public void completed(int completionTokens) {
+            finish(meters.completed, completionTokens);
+        }
+
+        public void error(int completionTokens) {
+            finish(meters.error, completionTokens);
+        }
+
+        public void cancelled(int completionTokens) {
+            finish(meters.cancelled, completionTokens);
+        }
+
+        private void finish(Timer duration, int completionTokens) {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            long now = System.nanoTime();
+            activeStreams.decrementAndGet();
+            duration.record(now - startNanos, TimeUnit.NANOSECONDS);
+            meters.completionTokens.increment(completionTokens);
+
+            // 生成速度按首token之后的时间计算，排除排队和首token等待
+            long first = firstChunkNanos;
+            if (first != 0 && completionTokens > 1 && now > first) {
+                meters.tokensPerSecond.record((completionTokens - 1) * 1e9 / (now - first));
+            }
+        }
+    }
+}
@@ -2,7 +2,10 @@ package com.yeelovo.ai.service;
 
 import com.yeelovo.ai.model.openai.ChatRequest;
 import com.yeelovo.ai.model.openai.ChatResponse;
+import com.yeelovo.ai.model.openai.ChatStreamResponse;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
 
 public interface OpenAiCompatibleService {
     /**
@@ -18,4 +21,12 @@ public interface OpenAiCompatibleService {
      * @return SSE流发射器
      */
     SseEmitter chatStream(ChatRequest request);
+
+    /**
+     * 响应式流式调用
+     * 直接返回上游Flux，不经过执行器中转，下游按需拉取，背压传递到上游连接
+     * @param request 聊天请求
+     * @return SSE事件流
+     */
+    Flux<ServerSentEvent<ChatStreamResponse>> chatStreamReactive(ChatRequest request);
 } 
\ No newline at end of file
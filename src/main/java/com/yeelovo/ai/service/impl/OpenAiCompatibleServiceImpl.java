@@ -1,26 +1,55 @@
 package com.yeelovo.ai.service.impl;
 
+import com.yeelovo.ai.admission.AdmissionPermit;
+import com.yeelovo.ai.admission.AdmissionService;
+import com.yeelovo.ai.cache.ResponseCache;
+import com.yeelovo.ai.context.ContextTrimmer;
+import com.yeelovo.ai.hedge.RequestHedger;
+import com.yeelovo.ai.memory.ChatMemoryProperties;
+import com.yeelovo.ai.memory.InvalidConversationIdException;
+import com.yeelovo.ai.memory.JdbcChatMemory;
 import com.yeelovo.ai.model.openai.ChatRequest;
 import com.yeelovo.ai.model.openai.ChatResponse;
 import com.yeelovo.ai.model.openai.ChatStreamResponse;
+import com.yeelovo.ai.monitor.ExecutorMonitor;
+import com.yeelovo.ai.monitor.StreamCancellationStats;
+import com.yeelovo.ai.monitor.StreamMetrics;
 import com.yeelovo.ai.service.OpenAiCompatibleService;
+import com.yeelovo.ai.stream.DeltaBatcher;
+import com.yeelovo.ai.stream.StreamChunkEncoder;
+import com.yeelovo.ai.stream.StreamCoalescer;
+import com.yeelovo.ai.token.TokenCounter;
+import com.yeelovo.ai.token.TokenUsageStats;
+import com.yeelovo.ai.tool.ToolCatalog;
+import com.yeelovo.ai.upstream.UpstreamLease;
+import com.yeelovo.ai.upstream.UpstreamRouter;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor;
+import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.metadata.Usage;
 import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.tool.ToolCallback;
 import org.springframework.ai.tool.ToolCallbackProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
 
 import java.io.IOException;
@@ -29,14 +58,16 @@ import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class OpenAiCompatibleServiceImpl implements OpenAiCompatibleService {
-    @Qualifier("openAiChatClient")
-    private final ChatClient openaiChatClient;
+    // 在多个上游端点间选择，每个端点的ChatClient只构建一次
+    private final UpstreamRouter upstreamRouter;
 
     // 注入配置的线程池，而不是在服务中创建
     @Qualifier("streamTaskExecutor")
@@ -45,142 +76,509 @@ public class OpenAiCompatibleServiceImpl implements OpenAiCompatibleService {
     @Qualifier("blockingTaskExecutor")
     private final Executor blockingTaskExecutor;
 
-    // 当前活跃连接计数
-    private final AtomicInteger activeConnections = new AtomicInteger(0);
+    private final ExecutorMonitor executorMonitor;
 
-    // 最大并发连接数
-    private static final int MAX_CONCURRENT_CONNECTIONS = 100;
+    // 准入控制，阻塞和流式调用共享并发名额
+    private final AdmissionService admissionService;
+
+    // 按会话挂载的记忆顾问
+    private final MessageChatMemoryAdvisor chatMemoryAdvisor;
+
+    private final ChatMemoryProperties chatMemoryProperties;
+
+    // 确定性请求的响应缓存
+    private final ResponseCache responseCache;
+
+    // 相同的在途流式请求共享一条上游连接
+    private final StreamCoalescer streamCoalescer;
+
+    // 按请求或调用方把流式增量合并为较少的数据块
+    private final DeltaBatcher deltaBatcher;
+
+    // 客户端断开后取消上游生成的统计
+    private final StreamCancellationStats streamCancellationStats;
+
+    // 本地分词器，用于预计数和上游未返回用量时的兜底
+    private final TokenCounter tokenCounter;
+
+    private final TokenUsageStats tokenUsageStats;
+
+    // 调用上游前按模型token预算裁剪历史消息
+    private final ContextTrimmer contextTrimmer;
+
+    // TTFT、token间隔、总耗时等延迟指标
+    private final StreamMetrics streamMetrics;
+
+    // 阻塞请求对冲
+    private final RequestHedger requestHedger;
+
+    // 按请求选择携带的工具
+    private final ToolCatalog toolCatalog;
+
+    // SseEmitter的阻塞写出所在的调度器：虚拟线程模式下在streamTaskExecutor的虚拟线程上写出，否则使用boundedElastic
+    private Scheduler emitterScheduler;
+
+    @PostConstruct
+    void initEmitterScheduler() {
+        emitterScheduler = executorMonitor.isVirtualMode()
+                                   ? Schedulers.fromExecutor(streamTaskExecutor)
+                                   : Schedulers.boundedElastic();
+    }
 
     @Override
     public ChatResponse chat(ChatRequest request) {
+        validate(request);
+        // 命中缓存时不占用准入名额，也不访问上游
+        String cacheKey = cacheKey(request);
+        String cached = cacheKey != null ? responseCache.get(cacheKey) : null;
+        if (cached != null) {
+            return createChatResponse(cached, request.getModel(),
+                    buildUsage(promptTokens(request), tokenCounter.count(request.getModel(), cached)));
+        }
+
+        // 阻塞调用直接运行在请求线程上（虚拟线程模式下为虚拟线程），这里只统计在途数
+        AtomicInteger inFlight = executorMonitor.counter("blockingChat");
+
+        // 每个请求只裁剪一次，对冲的各次调用和用量统计共用同一结果
+        ContextTrimmer.Result context = trimContext(request);
+        // 工具也只选择一次，选择统计按请求计数
+        ToolCallback[] tools = toolCatalog.select(request);
+
+        // 准入被拒绝时直接抛出，由全局异常处理返回429
+        AdmissionPermit permit = admissionService.acquire(request.getClientKey(), request.getModel());
+        inFlight.incrementAndGet();
+        long start = System.nanoTime();
         try {
-            List<Message> messages = createMessages(request);
-
-            // 阻塞式调用
-            String content = openaiChatClient
-                                     .prompt()
-                                     .messages(messages)
-                                     //.user(request.getQuery())
-                                     .options(OpenAiChatOptions.builder().model(request.getModel()).build())
-                                     .call()
-                                     .content();
-
-            return createChatResponse(content, request.getModel());
+            // 阻塞式调用；开启对冲时首个调用超过延迟阈值未返回会再发一个，取先返回的结果
+            // 挂载会话记忆的请求不对冲，避免两个调用都写入记忆；携带工具的请求不对冲，避免服务端工具被执行两次
+            org.springframework.ai.chat.model.ChatResponse response =
+                    requestHedger.isEnabled(request.getModel()) && !isMemoryApplied(request) && tools.length == 0
+                            ? requestHedger.execute(request.getModel(), cancelled -> callUpstream(request, context, tools, cancelled))
+                            : callUpstream(request, context, tools, () -> false);
+            String content = response != null && response.getResult() != null
+                                     ? response.getResult().getOutput().getText() : null;
+            if (cacheKey != null) {
+                responseCache.put(cacheKey, content, System.nanoTime() - start);
+            }
+
+            streamMetrics.recordBlocking(request.getModel(), System.nanoTime() - start, "completed");
+
+            ChatResponse.Usage usage = usage(request, context, response, content);
+            tokenUsageStats.record(request.getModel(), request.getClientKey(), usage.getPrompt_tokens(), usage.getCompletion_tokens());
+            return createChatResponse(content, request.getModel(), usage);
         } catch (Exception e) {
+            streamMetrics.recordBlocking(request.getModel(), System.nanoTime() - start, "error");
             log.error("阻塞调用异常", e);
             throw new RuntimeException("调用AI服务失败", e);
+        } finally {
+            inFlight.decrementAndGet();
+            permit.release();
+        }
+    }
+
+    /**
+     * 请求入口校验，不占用准入名额：指定了未注册的工具或会话ID过长时返回400，没有端点服务该模型时返回404
+     */
+    private void validate(ChatRequest request) {
+        toolCatalog.validate(request);
+        upstreamRouter.validate(request.getModel());
+        if (isMemoryApplied(request) && request.getConversation_id().length() > JdbcChatMemory.MAX_CONVERSATION_ID_LENGTH) {
+            throw new InvalidConversationIdException("conversation_id 长度不能超过 " + JdbcChatMemory.MAX_CONVERSATION_ID_LENGTH);
+        }
+    }
+
+    /**
+     * 在路由选择的端点上执行一次阻塞调用；被对冲取消的调用不计为端点失败
+     */
+    private org.springframework.ai.chat.model.ChatResponse callUpstream(ChatRequest request, ContextTrimmer.Result context,
+                                                                        ToolCallback[] tools, BooleanSupplier cancelled) {
+        UpstreamLease lease = upstreamRouter.acquire(request.getModel(), false);
+        try {
+            org.springframework.ai.chat.model.ChatResponse response = prompt(lease, request, context, tools)
+                                                                      .call()
+                                                                      .chatResponse();
+            lease.success();
+            return response;
+        } catch (RuntimeException e) {
+            if (cancelled.getAsBoolean()) {
+                lease.cancel();
+            } else {
+                lease.failure(e);
+            }
+            throw e;
         }
     }
 
     @Override
     public SseEmitter chatStream(ChatRequest request) {
-        // 高并发限流控制
-        if (activeConnections.get() >= MAX_CONCURRENT_CONNECTIONS) {
-            throw new RuntimeException("服务器当前负载过高，请稍后再试");
+        validate(request);
+        String cacheKey = cacheKey(request);
+        String cached = cacheKey != null ? responseCache.get(cacheKey) : null;
+        if (cached != null) {
+            return replayCached(cached, request);
         }
 
-        // 增加活跃连接计数
-        activeConnections.incrementAndGet();
+        // 高并发限流控制，名额不足时在有界队列中短暂等待，仍不足则抛出准入拒绝
+        AdmissionPermit permit = admissionService.acquire(request.getClientKey(), request.getModel());
 
         // 设置不超时的SseEmitter
         SseEmitter emitter = new SseEmitter(0L);
 
+        // 每次补全一个编码器，id和created在所有数据块中保持一致
+        StreamChunkEncoder encoder = StreamChunkEncoder.forCompletion(request.getModel());
+
         // 使用线程安全的列表收集所有内容，防止数据丢失
         CopyOnWriteArrayList<String> contentBuffer = new CopyOnWriteArrayList<>();
 
+        // 裁剪上下文并预计数提示词token，构建上游请求、用量数据块和统计共用
+        ContextTrimmer.Result context = trimContext(request);
+        int promptTokens = context.promptTokens();
+
+        StreamMetrics.StreamRecorder recorder = streamMetrics.start(request.getModel());
+
+        // 上游订阅句柄：客户端断开、超时或发送失败时取消上游生成；已取消后再设置的订阅会被立即取消
+        Disposable.Swap upstream = Disposables.swap();
+
+        // 上游已正常结束（完成或出错），此后的emitter回调不再视为提前取消
+        AtomicBoolean finished = new AtomicBoolean(false);
+
+        Runnable cancelUpstream = () -> {
+            if (finished.compareAndSet(false, true)) {
+                upstream.dispose();
+                recorder.cancelled(recordStreamUsage(request, promptTokens, String.join("", contentBuffer)));
+                log.info("客户端已断开，取消上游生成，已生成 {} 个数据块", contentBuffer.size());
+            }
+            permit.release();
+        };
+
+        // 设置客户端断开连接时的回调，许可只会归还一次
+        emitter.onCompletion(() -> {
+            log.info("客户端断开连接");
+            cancelUpstream.run();
+        });
+
+        emitter.onTimeout(() -> {
+            log.info("连接超时");
+            cancelUpstream.run();
+        });
+
+        emitter.onError(error -> {
+            log.warn("SSE错误: {}", error.getMessage());
+            cancelUpstream.run();
+        });
+
         // 使用注入的线程池处理请求，而不是自己创建
         streamTaskExecutor.execute(() -> {
             try {
-                List<Message> messages = createMessages(request);
-
-                // 流式调用
-                // 使用Reactor的调度器管理线程
-                Flux<String> contentFlux = openaiChatClient.prompt()
-                                                   .messages(messages)
-                                                   //.user(request.getQuery())
-                                                   .options(OpenAiChatOptions.builder().model(request.getModel()).build())
-                                                   .stream()
-                                                   .content()
-                                                   .publishOn(Schedulers.boundedElastic()); // 使用有边界的弹性线程池
-
-                // 设置客户端断开连接时的回调
-                emitter.onCompletion(() -> {
-                    log.info("客户端断开连接");
-                    decrementConnection();
-                });
-
-                emitter.onTimeout(() -> {
-                    log.info("连接超时");
-                    decrementConnection();
-                });
-
-                emitter.onError(error -> {
-                    log.error("SSE错误", error);
-                    decrementConnection();
-                });
+                // 流式调用：按上游增量记录指标和内容，按请求设置合并增量后再写出
+                Flux<String> contentFlux = sharedStream(request, context, cacheKey)
+                                                   .doOnNext(content -> {
+                                                       recorder.onChunk();
+
+                                                       // 将内容添加到缓冲区
+                                                       contentBuffer.add(content);
+                                                   })
+                                                   .transform(flux -> deltaBatcher.batch(request, flux))
+                                                   // 写出会阻塞，不在上游的Netty线程上执行；虚拟线程模式下由虚拟线程写出
+                                                   .publishOn(emitterScheduler);
 
                 // 订阅Flux流
-                contentFlux.subscribe(
+                upstream.update(contentFlux.subscribe(
                         // 处理每个数据项
                         content -> {
                             try {
-                                // 将内容添加到缓冲区
-                                contentBuffer.add(content);
-
-                                // 创建流式响应并发送
-                                ChatStreamResponse streamResponse = createStreamResponse(content, request.getModel(), false);
-                                emitter.send(streamResponse);
-                            } catch (IOException e) {
-                                log.error("发送流式响应失败", e);
+                                // 编码为SSE帧并直接写出
+                                StreamChunkEncoder.write(emitter, encoder.encode(content));
+                            } catch (IOException | IllegalStateException e) {
+                                // 客户端已断开：不再逐块记录错误，直接取消上游
+                                log.info("发送流式响应失败，取消上游生成: {}", e.getMessage());
+                                cancelUpstream.run();
+                                emitter.completeWithError(e);
                             }
                         },
                         // 处理错误
                         error -> {
+                            if (!finished.compareAndSet(false, true)) {
+                                return;
+                            }
                             log.error("流处理错误", error);
+                            String combinedContent = String.join("", contentBuffer);
+                            recorder.error(recordStreamUsage(request, promptTokens, combinedContent));
                             try {
                                 // 即使发生错误，也尝试发送已缓冲的内容
                                 if (!contentBuffer.isEmpty()) {
-                                    String combinedContent = String.join("", contentBuffer);
-                                    ChatStreamResponse finalResponse = createStreamResponse(combinedContent, request.getModel(), true);
-                                    emitter.send(finalResponse);
+                                    StreamChunkEncoder.write(emitter, encoder.encodeFinal(combinedContent));
                                 }
                                 emitter.completeWithError(error);
                             } catch (IOException e) {
                                 log.error("发送错误响应失败", e);
                             }
-                            decrementConnection();
+                            permit.release();
                         },
                         // 处理完成
                         () -> {
+                            if (!finished.compareAndSet(false, true)) {
+                                return;
+                            }
+                            int completionTokens = recordStreamUsage(request, promptTokens, String.join("", contentBuffer));
+                            recorder.completed(completionTokens);
                             try {
                                 // 发送一个最终的标记完成的响应
-                                ChatStreamResponse finalResponse = createStreamResponse("", request.getModel(), true);
-                                emitter.send(finalResponse);
+                                StreamChunkEncoder.write(emitter, encoder.encodeFinal(""));
+                                if (request.isIncludeUsage()) {
+                                    StreamChunkEncoder.write(emitter, encoder.encodeUsage(promptTokens, completionTokens));
+                                }
                                 log.info("流式响应完成");
                                 emitter.complete();
                             } catch (IOException e) {
                                 log.error("发送完成响应失败", e);
                             }
-                            decrementConnection();
+                            permit.release();
                         }
-                );
+                ));
 
             } catch (Exception e) {
                 log.error("流式调用异常", e);
+                finished.set(true);
+                recorder.error(0);
                 emitter.completeWithError(e);
-                decrementConnection();
+                permit.release();
+            }
+        });
+
+        return emitter;
+    }
+
+    @Override
+    public Flux<ServerSentEvent<ChatStreamResponse>> chatStreamReactive(ChatRequest request) {
+        validate(request);
+        String cacheKey = cacheKey(request);
+        String cached = cacheKey != null ? responseCache.get(cacheKey) : null;
+        if (cached != null) {
+            StreamChunkEncoder encoder = StreamChunkEncoder.forCompletion(request.getModel());
+            Flux<ServerSentEvent<ChatStreamResponse>> replay = Flux.fromIterable(replayChunks(cached))
+                           .map(content -> ServerSentEvent.builder(encoder.toResponse(content, false)).build())
+                           .concatWith(Flux.just(ServerSentEvent.builder(encoder.toResponse("", true)).build()));
+            if (!request.isIncludeUsage()) {
+                return replay;
             }
+            return replay.concatWith(Mono.fromSupplier(() -> ServerSentEvent.builder(encoder.toUsageResponse(
+                    promptTokens(request), tokenCounter.count(request.getModel(), cached))).build()));
+        }
+
+        // 异步获取许可，排队期间不占用线程
+        return admissionService.acquireAsync(request.getClientKey(), request.getModel()).flatMapMany(permit -> {
+            StreamChunkEncoder encoder = StreamChunkEncoder.forCompletion(request.getModel());
+            ContextTrimmer.Result context = trimContext(request);
+            int promptTokens = context.promptTokens();
+            // 单一订阅者串行追加，不需要同步
+            StringBuilder collected = new StringBuilder();
+            StreamMetrics.StreamRecorder recorder = streamMetrics.start(request.getModel());
+
+            // 不切换线程：数据块在上游连接的事件循环线程上直接转换，由订阅方的request(n)驱动上游读取
+            Flux<ServerSentEvent<ChatStreamResponse>> chunks = Flux.defer(() -> sharedStream(request, context, cacheKey))
+                    .doOnNext(content -> {
+                        recorder.onChunk();
+                        collected.append(content);
+                    })
+                    .transform(flux -> deltaBatcher.batch(request, flux))
+                    .map(content -> ServerSentEvent.builder(encoder.toResponse(content, false)).build());
+
+            Flux<ServerSentEvent<ChatStreamResponse>> done = Flux.just(
+                    ServerSentEvent.builder(encoder.toResponse("", true)).build());
+
+            // 用量在流结束后才能确定，延迟到订阅时计算
+            Mono<ServerSentEvent<ChatStreamResponse>> usage = Mono.fromSupplier(() -> {
+                int completionTokens = tokenCounter.count(request.getModel(), collected.toString());
+                return ServerSentEvent.builder(encoder.toUsageResponse(promptTokens, completionTokens)).build();
+            });
+
+            return chunks.concatWith(done)
+                           .concatWith(request.isIncludeUsage() ? usage : Mono.empty())
+                           .doOnError(error -> log.error("流处理错误", error))
+                           // 客户端断开时取消信号沿订阅链传到上游，关闭与模型服务的连接
+                           .doOnCancel(() -> log.info("客户端断开连接，取消上游生成"))
+                           // 完成、出错、取消三种情况只会触发一次
+                           .doFinally(signal -> {
+                               int completionTokens = recordStreamUsage(request, promptTokens, collected.toString());
+                               switch (signal) {
+                                   case ON_COMPLETE -> recorder.completed(completionTokens);
+                                   case ON_ERROR -> recorder.error(completionTokens);
+                                   default -> recorder.cancelled(completionTokens);
+                               }
+                               permit.release();
+                           });
         });
+    }
+
+    /**
+     * 获取流式内容，相同请求已在生成中时加入共享的上游流
+     */
+    private Flux<String> sharedStream(ChatRequest request, ContextTrimmer.Result context, String cacheKey) {
+        return streamCoalescer.join(request, () -> streamContent(request, context, cacheKey));
+    }
+
+    /**
+     * 构建上游流式内容，可缓存的请求在正常完成后写入缓存
+     * 提前取消在上游连接上统计：合并的请求中单个订阅者断开不会取消上游，只有全部订阅者断开、上游真正取消时才计入
+     */
+    private Flux<String> streamContent(ChatRequest request, ContextTrimmer.Result context, String cacheKey) {
+        // 订阅时才选择端点，结束时按结果更新端点的延迟和健康状态
+        Flux<String> contentFlux = Flux.defer(() -> {
+            UpstreamLease lease = upstreamRouter.acquire(request.getModel(), true);
+            AtomicInteger chunks = new AtomicInteger(0);
+            return prompt(lease, request, context, toolCatalog.select(request))
+                           .stream()
+                           .content()
+                           .doOnNext(content -> {
+                               lease.onChunk();
+                               chunks.incrementAndGet();
+                           })
+                           .doOnComplete(() -> {
+                               lease.success();
+                               streamCancellationStats.recordCompleted(chunks.get());
+                           })
+                           .doOnError(lease::failure)
+                           .doOnCancel(() -> {
+                               lease.cancel();
+                               streamCancellationStats.recordCancelled(chunks.get(), request.getMax_tokens());
+                           });
+        });
+        if (cacheKey == null) {
+            return contentFlux;
+        }
+        return Flux.defer(() -> {
+            StringBuilder collected = new StringBuilder();
+            long start = System.nanoTime();
+            return contentFlux.doOnNext(collected::append)
+                           .doOnComplete(() -> responseCache.put(cacheKey, collected.toString(), System.nanoTime() - start));
+        });
+    }
 
+    /**
+     * 以流式数据块回放缓存的回复
+     */
+    private SseEmitter replayCached(String content, ChatRequest request) {
+        SseEmitter emitter = new SseEmitter(0L);
+        StreamChunkEncoder encoder = StreamChunkEncoder.forCompletion(request.getModel());
+        try {
+            for (String chunk : replayChunks(content)) {
+                StreamChunkEncoder.write(emitter, encoder.encode(chunk));
+            }
+            StreamChunkEncoder.write(emitter, encoder.encodeFinal(""));
+            if (request.isIncludeUsage()) {
+                StreamChunkEncoder.write(emitter, encoder.encodeUsage(promptTokens(request),
+                        tokenCounter.count(request.getModel(), content)));
+            }
+            emitter.complete();
+        } catch (IOException e) {
+            log.error("回放缓存响应失败", e);
+            emitter.completeWithError(e);
+        }
         return emitter;
     }
 
-    // 减少活跃连接计数
-    private void decrementConnection() {
-        activeConnections.decrementAndGet();
+    /**
+     * 按固定字符数切分缓存内容，不拆开代理字符对
+     */
+    private List<String> replayChunks(String content) {
+        int size = Math.max(1, responseCache.getReplayChunkSize());
+        List<String> chunks = new ArrayList<>(content.length() / size + 1);
+        int start = 0;
+        while (start < content.length()) {
+            int end = Math.min(content.length(), start + size);
+            if (end < content.length() && Character.isHighSurrogate(content.charAt(end - 1))) {
+                end++;
+            }
+            chunks.add(content.substring(start, end));
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * 本地预计数提示词token（裁剪后实际发往上游的消息，不含服务端会话记忆追加的历史），只用于命中缓存不访问上游的请求
+     */
+    private int promptTokens(ChatRequest request) {
+        return trimContext(request).promptTokens();
+    }
+
+    /**
+     * 优先使用上游返回的用量，上游未返回（或返回0）时用本地分词器计数
+     */
+    private ChatResponse.Usage usage(ChatRequest request, ContextTrimmer.Result context,
+                                     org.springframework.ai.chat.model.ChatResponse response, String content) {
+        Usage upstream = response != null && response.getMetadata() != null ? response.getMetadata().getUsage() : null;
+        Integer prompt = upstream != null ? upstream.getPromptTokens() : null;
+        Integer completion = upstream != null ? upstream.getCompletionTokens() : null;
+        if (prompt == null || prompt == 0) {
+            prompt = context.promptTokens();
+        }
+        if (completion == null || completion == 0) {
+            completion = tokenCounter.count(request.getModel(), content);
+        }
+        return buildUsage(prompt, completion);
+    }
+
+    private static ChatResponse.Usage buildUsage(int promptTokens, int completionTokens) {
+        return ChatResponse.Usage.builder()
+                       .prompt_tokens(promptTokens)
+                       .completion_tokens(completionTokens)
+                       .total_tokens(promptTokens + completionTokens)
+                       .build();
+    }
+
+    /**
+     * 流式请求结束（完成、出错或取消）时记录用量，返回补全token数
+     * 共享流和缓存传递的是纯文本内容，流式用量统一由本地分词器计数
+     */
+    private int recordStreamUsage(ChatRequest request, int promptTokens, String content) {
+        int completionTokens = tokenCounter.count(request.getModel(), content);
+        tokenUsageStats.record(request.getModel(), request.getClientKey(), promptTokens, completionTokens);
+        return completionTokens;
+    }
+
+    private String cacheKey(ChatRequest request) {
+        return responseCache.isCacheable(request) ? responseCache.key(request) : null;
+    }
+
+    /**
+     * 在选定的端点上用已裁剪的消息构建请求，携带按请求选择的工具；携带会话ID且未关闭记忆时挂载会话记忆
+     */
+    private ChatClient.ChatClientRequestSpec prompt(UpstreamLease lease, ChatRequest request, ContextTrimmer.Result context,
+                                                    ToolCallback[] tools) {
+        ChatClient.ChatClientRequestSpec spec = lease.client().prompt()
+                                                        .messages(context.messages())
+                                                        //.user(request.getQuery())
+                                                        .options(OpenAiChatOptions.builder()
+                                                                         .model(lease.model())
+                                                                         .temperature(request.getTemperature())
+                                                                         .maxTokens(request.getMax_tokens())
+                                                                         .build())
+                                                        .tools(tools);
+        if (isMemoryApplied(request)) {
+            spec.advisors(advisor -> advisor.advisors(chatMemoryAdvisor)
+                                            .param(AbstractChatMemoryAdvisor.CHAT_MEMORY_CONVERSATION_ID_KEY, request.getConversation_id()));
+        }
+        return spec;
+    }
+
+    /**
+     * 转换消息并按token预算裁剪；挂载会话记忆时为记忆追加的历史预留其上限
+     */
+    private ContextTrimmer.Result trimContext(ChatRequest request) {
+        int memoryReserve = isMemoryApplied(request) ? chatMemoryProperties.getMaxTokensPerConversation() : 0;
+        return contextTrimmer.trim(request.getModel(), createMessages(request), request.getMax_tokens(), memoryReserve);
+    }
+
+    private boolean isMemoryApplied(ChatRequest request) {
+        return chatMemoryProperties.isEnabled() && request.isMemoryEnabled();
     }
 
-    private List<Message> createMessages(ChatRequest request) {
+    /**
+     * 将请求消息转换为Spring AI消息（包内可见，供基准测试直接调用）
+     */
+    static List<Message> createMessages(ChatRequest request) {
         List<Message> messages = new ArrayList<>();
 
         for (ChatRequest.Message msg : request.getMessages()) {
@@ -197,7 +595,7 @@ public class OpenAiCompatibleServiceImpl implements OpenAiCompatibleService {
 
 
 
-    private ChatResponse createChatResponse(String content, String model) {
+    private ChatResponse createChatResponse(String content, String model, ChatResponse.Usage usage) {
         ChatResponse.Message message = ChatResponse.Message.builder()
                                                .role("assistant")
                                                .content(content)
@@ -212,12 +610,6 @@ public class OpenAiCompatibleServiceImpl implements OpenAiCompatibleService {
         List<ChatResponse.Choice> choices = new ArrayList<>();
         choices.add(choice);
 
-        ChatResponse.Usage usage = ChatResponse.Usage.builder()
-                                           .prompt_tokens(0)
-                                           .completion_tokens(0)
-                                           .total_tokens(0)
-                                           .build();
-
         return ChatResponse.builder()
                        .id("chatcmpl-" + UUID.randomUUID().toString().replace("-", ""))
                        .object("chat.completion")
@@ -227,27 +619,4 @@ public class OpenAiCompatibleServiceImpl implements OpenAiCompatibleService {
                        .usage(usage)
                        .build();
     }
-
-    private ChatStreamResponse createStreamResponse(String content, String model, boolean isDone) {
-        ChatStreamResponse.Delta delta = ChatStreamResponse.Delta.builder()
-                                                 .content(content)
-                                                 .build();
-
-        ChatStreamResponse.Choice choice = ChatStreamResponse.Choice.builder()
-                                                   .index(0)
-                                                   .delta(delta)
-                                                   .finish_reason(isDone ? "stop" : null)
-                                                   .build();
-
-        List<ChatStreamResponse.Choice> choices = new ArrayList<>();
-        choices.add(choice);
-
-        return ChatStreamResponse.builder()
-                       .id("chatcmpl-" + UUID.randomUUID().toString().replace("-", ""))
-                       .object("chat.completion.chunk")
-                       .created(System.currentTimeMillis() / 1000)
-                       .model(model)
-                       .choices(choices)
-                       .build();
-    }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,22 @@
+package com.yeelovo.ai.simulated;
+
+import org.springframework.ai.tool.ToolCallbackProvider;
+import org.springframework.ai.tool.method.MethodToolCallbackProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * 模拟profile：上游地址指向内置的模拟接口（见 application-simulated.yml），本地工具代替MCP工具
+ */
+@Configuration
+@Profile("simulated")
+public class SimulatedConfig {
+
+    @Bean
+    public ToolCallbackProvider simulatedToolCallbackProvider(SimulatedModelProperties properties) {
+        return MethodToolCallbackProvider.builder()
+                       .toolObjects(new SimulatedTools(properties))
+                       .build();
+    }
+}
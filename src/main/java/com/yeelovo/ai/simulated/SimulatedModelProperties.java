@@ -0,0 +1,67 @@
+package com.yeelovo.ai.simulated;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 模拟上游配置（simulated profile）
+ * 控制首token时间、生成速率、回复长度分布以及错误、超时和工具调用的注入比例
+ */
+@Data
+@ConfigurationProperties(prefix = "proxy.simulated")
+public class SimulatedModelProperties {
+
+    // 首token时间的均值
+    private Duration ttft = Duration.ofMillis(300);
+
+    // 首token时间的抖动比例，实际值在 ttft*(1±jitter) 内均匀分布
+    private double ttftJitter = 0.3;
+
+    // 每秒生成的token数，0表示首token之后不再延迟
+    private double tokensPerSecond = 50;
+
+    // 回复长度分布（token数）
+    private Length length = new Length();
+
+    // 直接返回HTTP错误的请求比例
+    private double errorRate = 0.0;
+
+    // 注入错误时返回的状态码
+    private int errorStatus = 500;
+
+    // 流式请求在生成中途断开的比例
+    private double midStreamErrorRate = 0.0;
+
+    // 不返回任何数据（模拟上游挂起）的请求比例
+    private double timeoutRate = 0.0;
+
+    // 挂起请求保持连接的时间，应大于代理侧的超时设置
+    private Duration stallTimeout = Duration.ofMinutes(10);
+
+    // 请求带有 tools 时返回工具调用的比例；工具结果回传后的下一轮始终返回文本
+    private double toolCallRate = 0.0;
+
+    // 返回工具调用时同一轮包含的调用数，大于1时用于测试工具并发执行
+    private int toolCallsPerTurn = 1;
+
+    // 模拟工具的执行耗时
+    private Duration toolLatency = Duration.ofMillis(50);
+
+    @Data
+    public static class Length {
+
+        // fixed：固定为mean；uniform：[min, max]均匀分布；lognormal：中位数为mean的对数正态分布，截断到[min, max]
+        private String distribution = "lognormal";
+
+        private int mean = 200;
+
+        private int min = 10;
+
+        private int max = 2000;
+
+        // 对数正态分布的形状参数，越大长尾越明显
+        private double sigma = 0.6;
+    }
+}
@@ -0,0 +1,28 @@
+package com.yeelovo.ai.simulated;
+
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.ai.tool.annotation.ToolParam;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模拟profile下的本地工具，替代需要外部进程的MCP工具，执行耗时可配置
+ */
+public class SimulatedTools {
+
+    private final SimulatedModelProperties properties;
+
+    public SimulatedTools(SimulatedModelProperties properties) {
+        this.properties = properties;
+    }
+
+    @Tool(description = "根据城市名称查询实时天气（模拟数据）")
+    public String getWeather(@ToolParam(description = "城市名称") String city) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(properties.getToolLatency().toNanos());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "{\"city\":\"" + city + "\",\"weather\":\"晴\",\"temperature\":25,\"humidity\":40}";
+    }
+}
@@ -0,0 +1,431 @@
+package com.yeelovo.ai.simulated;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.yeelovo.ai.model.openai.ChatResponse;
+import com.yeelovo.ai.stream.StreamChunkEncoder;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 模拟的OpenAI兼容上游
+ * 按配置的首token时间、生成速率和长度分布生成回复，并按比例注入HTTP错误、中途断流、挂起和工具调用。
+ * 延迟全部由Reactor定时器驱动，等待期间不占用线程，压测时测到的是代理自身的开销
+ */
+@Component
+@Profile("simulated")
+@EnableConfigurationProperties(SimulatedModelProperties.class)
+public class SimulatedUpstream {
+
+    private static final String[] WORDS = {
+            "the", "proxy", "streams", "each", "token", "to", "the", "client", "as", "soon", "as", "it",
+            "arrives", "from", "the", "upstream", "model", "and", "keeps", "latency", "low", "under", "load",
+            "while", "the", "cache", "and", "admission", "control", "protect", "the", "service", "from",
+            "bursts", "of", "traffic", "that", "would", "otherwise", "exhaust", "threads", "or", "memory",
+            "every", "response", "is", "measured", "so", "that", "regressions", "show", "up", "early"
+    };
+
+    private static final byte[] DONE = "data:[DONE]\n\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final SimulatedModelProperties properties;
+    private final ObjectMapper objectMapper;
+
+    private final AtomicLong requests = new AtomicLong(0);
+    private final AtomicLong streams = new AtomicLong(0);
+    private final AtomicLong injectedErrors = new AtomicLong(0);
+    private final AtomicLong midStreamErrors = new AtomicLong(0);
+    private final AtomicLong stalls = new AtomicLong(0);
+    private final AtomicLong toolCalls = new AtomicLong(0);
+    private final AtomicLong completionTokens = new AtomicLong(0);
+    private final AtomicInteger active = new AtomicInteger(0);
+
+    public SimulatedUpstream(SimulatedModelProperties properties, ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 处理一次 chat/completions 请求
+     * @return 注入错误时为ResponseEntity，流式为SseEmitter，阻塞式为DeferredResult
+     */
+    public Object complete(JsonNode request) {
+        requests.incrementAndGet();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String model = request.path("model").asText("simulated");
+        boolean stream = request.path("stream").asBoolean(false);
+        long stallMillis = properties.getStallTimeout().toMillis();
+
+        if (roll(random, properties.getErrorRate())) {
+            injectedErrors.incrementAndGet();
+            return error(properties.getErrorStatus());
+        }
+        if (roll(random, properties.getTimeoutRate())) {
+            // 挂起：不写任何数据，直到客户端超时断开或达到挂起时间
+            stalls.incrementAndGet();
+            return stream ? new SseEmitter(stallMillis) : new DeferredResult<>(stallMillis);
+        }
+
+        int promptTokens = estimatePromptTokens(request.path("messages"));
+        long ttftNanos = ttftNanos(random);
+        JsonNode function = pickTool(request, random);
+        if (function != null) {
+            // 同一轮返回多个调用时参数互不相同，模拟并行工具调用
+            List<ToolCall> calls = new ArrayList<>();
+            int tokens = 0;
+            for (int i = 0; i < Math.max(1, properties.getToolCallsPerTurn()); i++) {
+                String arguments = arguments(function, i);
+                // 工具调用的补全token按参数长度粗略估算
+                tokens += arguments.length() / 4 + 8;
+                calls.add(new ToolCall("call_" + UUID.randomUUID().toString().replace("-", ""),
+                        function.path("name").asText(), arguments));
+            }
+            toolCalls.addAndGet(calls.size());
+            completionTokens.addAndGet(tokens);
+            return stream ? streamToolCall(request, model, calls, promptTokens, tokens, ttftNanos)
+                           : delayed(toolCallResponse(model, calls, promptTokens, tokens), ttftNanos);
+        }
+
+        int tokens = sampleLength(request, random);
+        completionTokens.addAndGet(tokens);
+        int offset = random.nextInt(WORDS.length);
+        if (stream) {
+            return streamText(request, model, offset, tokens, promptTokens, ttftNanos, random);
+        }
+        return delayed(textResponse(model, text(offset, tokens), promptTokens, tokens), ttftNanos + generationNanos(tokens));
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("requests", requests.get());
+        result.put("streams", streams.get());
+        result.put("activeStreams", active.get());
+        result.put("injectedErrors", injectedErrors.get());
+        result.put("midStreamErrors", midStreamErrors.get());
+        result.put("stalls", stalls.get());
+        result.put("toolCalls", toolCalls.get());
+        result.put("completionTokens", completionTokens.get());
+        result.put("config", Map.of(
+                "ttftMs", properties.getTtft().toMillis(),
+                "tokensPerSecond", properties.getTokensPerSecond(),
+                "lengthDistribution", properties.getLength().getDistribution(),
+                "lengthMean", properties.getLength().getMean()));
+        return result;
+    }
+
+    private SseEmitter streamText(JsonNode request, String model, int offset, int tokens, int promptTokens,
+                                  long ttftNanos, ThreadLocalRandom random) {
+        StreamChunkEncoder encoder = StreamChunkEncoder.forCompletion(model);
+        Duration ttft = Duration.ofNanos(ttftNanos);
+        long interval = generationNanos(1);
+
+        Flux<Integer> ticks = interval > 0
+                ? Flux.interval(ttft, Duration.ofNanos(interval)).take(tokens).map(Long::intValue)
+                : Mono.delay(ttft).thenMany(Flux.range(0, tokens));
+        Flux<byte[]> frames = ticks.map(i -> encoder.encode(word(offset, i)));
+
+        if (roll(random, properties.getMidStreamErrorRate())) {
+            midStreamErrors.incrementAndGet();
+            int cut = random.nextInt(tokens);
+            return subscribe(frames.take(cut).concatWith(
+                    Flux.error(new IllegalStateException("simulated upstream failure after " + cut + " tokens"))));
+        }
+
+        Flux<byte[]> tail = includeUsage(request)
+                ? Flux.just(encoder.encodeFinal(""), encoder.encodeUsage(promptTokens, tokens), DONE)
+                : Flux.just(encoder.encodeFinal(""), DONE);
+        return subscribe(frames.concatWith(tail));
+    }
+
+    private SseEmitter streamToolCall(JsonNode request, String model, List<ToolCall> calls, int promptTokens, int tokens,
+                                      long ttftNanos) {
+        StreamChunkEncoder encoder = StreamChunkEncoder.forCompletion(model);
+        List<Map<String, Object>> toolCalls = new ArrayList<>();
+        for (int i = 0; i < calls.size(); i++) {
+            ToolCall call = calls.get(i);
+            Map<String, Object> toolCall = new LinkedHashMap<>();
+            toolCall.put("index", i);
+            toolCall.put("id", call.id());
+            toolCall.put("type", "function");
+            toolCall.put("function", Map.of("name", call.name(), "arguments", call.arguments()));
+            toolCalls.add(toolCall);
+        }
+
+        Map<String, Object> delta = new LinkedHashMap<>();
+        delta.put("role", "assistant");
+        delta.put("tool_calls", toolCalls);
+
+        Flux<byte[]> frames = Flux.just(
+                        frame(chunk(encoder, model, delta, null)),
+                        frame(chunk(encoder, model, Map.of(), "tool_calls")))
+                .concatWith(includeUsage(request)
+                        ? Flux.just(encoder.encodeUsage(promptTokens, tokens), DONE)
+                        : Flux.just(DONE))
+                .delaySubscription(Duration.ofNanos(ttftNanos));
+        return subscribe(frames);
+    }
+
+    /**
+     * 订阅帧序列并写入SSE发射器，客户端断开或超时时取消定时器
+     */
+    private SseEmitter subscribe(Flux<byte[]> frames) {
+        streams.incrementAndGet();
+        active.incrementAndGet();
+        SseEmitter emitter = new SseEmitter(properties.getStallTimeout().toMillis());
+        Disposable subscription = frames
+                .doFinally(signal -> active.decrementAndGet())
+                .subscribe(frame -> send(emitter, frame), emitter::completeWithError, emitter::complete);
+        emitter.onCompletion(subscription::dispose);
+        emitter.onTimeout(subscription::dispose);
+        emitter.onError(e -> subscription.dispose());
+        return emitter;
+    }
+
+    private static void send(SseEmitter emitter, byte[] frame) {
+        try {
+            StreamChunkEncoder.write(emitter, frame);
+        } catch (IOException e) {
+            // 客户端已断开，由订阅者取消后续帧
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private DeferredResult<Object> delayed(Object body, long delayNanos) {
+        DeferredResult<Object> result = new DeferredResult<>(properties.getStallTimeout().toMillis());
+        Disposable timer = Mono.delay(Duration.ofNanos(delayNanos)).subscribe(tick -> result.setResult(body));
+        result.onCompletion(timer::dispose);
+        return result;
+    }
+
+    private ChatResponse textResponse(String model, String content, int promptTokens, int tokens) {
+        return ChatResponse.builder()
+                       .id("chatcmpl-" + UUID.randomUUID().toString().replace("-", ""))
+                       .object("chat.completion")
+                       .created(System.currentTimeMillis() / 1000)
+                       .model(model)
+                       .choices(List.of(ChatResponse.Choice.builder()
+                                                .index(0)
+                                                .message(ChatResponse.Message.builder().role("assistant").content(content).build())
+                                                .finish_reason("stop")
+                                                .build()))
+                       .usage(usage(promptTokens, tokens))
+                       .build();
+    }
+
+    private Map<String, Object> toolCallResponse(String model, List<ToolCall> calls, int promptTokens, int tokens) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("role", "assistant");
+        message.put("content", null);
+        message.put("tool_calls", calls.stream()
+                                          .map(call -> Map.of(
+                                                  "id", call.id(),
+                                                  "type", "function",
+                                                  "function", Map.of("name", call.name(), "arguments", call.arguments())))
+                                          .toList());
+
+        Map<String, Object> choice = new LinkedHashMap<>();
+        choice.put("index", 0);
+        choice.put("message", message);
+        choice.put("finish_reason", "tool_calls");
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("id", "chatcmpl-" + UUID.randomUUID().toString().replace("-", ""));
+        response.put("object", "chat.completion");
+        response.put("created", System.currentTimeMillis() / 1000);
+        response.put("model", model);
+        response.put("choices", List.of(choice));
+        response.put("usage", usage(promptTokens, tokens));
+        return response;
+    }
+
+    private static Map<String, Object> chunk(StreamChunkEncoder encoder, String model, Map<String, Object> delta,
+                                             String finishReason) {
+        Map<String, Object> choice = new LinkedHashMap<>();
+        choice.put("index", 0);
+        choice.put("delta", delta);
+        choice.put("finish_reason", finishReason);
+
+        Map<String, Object> chunk = new LinkedHashMap<>();
+        chunk.put("id", encoder.getId());
+        chunk.put("object", "chat.completion.chunk");
+        chunk.put("created", encoder.getCreated());
+        chunk.put("model", model);
+        chunk.put("choices", List.of(choice));
+        return chunk;
+    }
+
+    private byte[] frame(Object chunk) {
+        try {
+            return ("data:" + objectMapper.writeValueAsString(chunk) + "\n\n").getBytes(StandardCharsets.UTF_8);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ChatResponse.Usage usage(int promptTokens, int completionTokens) {
+        return ChatResponse.Usage.builder()
+                       .prompt_tokens(promptTokens)
+                       .completion_tokens(completionTokens)
+                       .total_tokens(promptTokens + completionTokens)
+                       .build();
+    }
+
+    private static ResponseEntity<Object> error(int status) {
+        String type = status == 429 ? "rate_limit_exceeded" : "server_error";
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON);
+        if (status == 429) {
+            builder.header(HttpHeaders.RETRY_AFTER, "1");
+        }
+        return builder.body(Map.of("error", Map.of("message", "simulated upstream error", "type", type)));
+    }
+
+    /**
+     * 请求带有工具、上一条不是工具结果且tool_choice不为none时，按比例选择一个工具调用
+     */
+    private JsonNode pickTool(JsonNode request, ThreadLocalRandom random) {
+        JsonNode tools = request.path("tools");
+        if (!tools.isArray() || tools.isEmpty()) {
+            return null;
+        }
+        JsonNode messages = request.path("messages");
+        if (messages.isArray() && !messages.isEmpty()
+                && "tool".equals(messages.get(messages.size() - 1).path("role").asText())) {
+            return null;
+        }
+        JsonNode toolChoice = request.path("tool_choice");
+        if ("none".equals(toolChoice.asText()) || !roll(random, properties.getToolCallRate())) {
+            return null;
+        }
+        String required = toolChoice.path("function").path("name").asText(null);
+        if (required != null) {
+            for (JsonNode tool : tools) {
+                if (required.equals(tool.path("function").path("name").asText())) {
+                    return tool.path("function");
+                }
+            }
+        }
+        return tools.get(random.nextInt(tools.size())).path("function");
+    }
+
+    /**
+     * 按参数的JSON Schema生成调用参数：每个属性取枚举的第一个值或按类型给出示例值，同一轮的第n个调用的字符串参数带有序号
+     */
+    private String arguments(JsonNode function, int index) {
+        ObjectNode arguments = objectMapper.createObjectNode();
+        Iterator<Map.Entry<String, JsonNode>> fields = function.path("parameters").path("properties").fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode schema = field.getValue();
+            if (schema.path("enum").isArray() && !schema.path("enum").isEmpty()) {
+                arguments.set(field.getKey(), schema.path("enum").get(0));
+                continue;
+            }
+            switch (schema.path("type").asText()) {
+                case "integer" -> arguments.put(field.getKey(), 1);
+                case "number" -> arguments.put(field.getKey(), 1.0);
+                case "boolean" -> arguments.put(field.getKey(), true);
+                case "array" -> arguments.putArray(field.getKey());
+                case "object" -> arguments.putObject(field.getKey());
+                default -> arguments.put(field.getKey(), index == 0 ? "simulated" : "simulated-" + (index + 1));
+            }
+        }
+        return arguments.toString();
+    }
+
+    /**
+     * 按配置的分布抽取回复长度，不超过请求的 max_tokens / max_completion_tokens
+     */
+    private int sampleLength(JsonNode request, ThreadLocalRandom random) {
+        SimulatedModelProperties.Length length = properties.getLength();
+        int min = Math.max(1, length.getMin());
+        int max = Math.max(min, length.getMax());
+        double value = switch (length.getDistribution().toLowerCase()) {
+            case "fixed" -> length.getMean();
+            case "uniform" -> min + random.nextDouble() * (max - min);
+            default -> length.getMean() * Math.exp(length.getSigma() * random.nextGaussian());
+        };
+        int tokens = (int) Math.max(min, Math.min(max, Math.round(value)));
+
+        int limit = request.path("max_completion_tokens").asInt(request.path("max_tokens").asInt(0));
+        return limit > 0 ? Math.min(tokens, limit) : tokens;
+    }
+
+    private long ttftNanos(ThreadLocalRandom random) {
+        long mean = properties.getTtft().toNanos();
+        double jitter = Math.max(0, Math.min(1, properties.getTtftJitter()));
+        return (long) (mean * (1 + jitter * (2 * random.nextDouble() - 1)));
+    }
+
+    private long generationNanos(int tokens) {
+        double rate = properties.getTokensPerSecond();
+        return rate > 0 ? (long) (tokens * 1_000_000_000L / rate) : 0;
+    }
+
+    /**
+     * 按字符数粗略估算提示词token数（约4字符一个token，每条消息另加固定开销），不在模拟上游中调用分词器
+     */
+    private static int estimatePromptTokens(JsonNode messages) {
+        int chars = 0;
+        int count = 0;
+        for (JsonNode message : messages) {
+            count++;
+            JsonNode content = message.path("content");
+            if (content.isTextual()) {
+                chars += content.asText().length();
+            } else if (content.isArray()) {
+                for (JsonNode part : content) {
+                    chars += part.path("text").asText().length();
+                }
+            }
+        }
+        return Math.max(1, chars / 4 + count * 3);
+    }
+
+    private static boolean includeUsage(JsonNode request) {
+        return request.path("stream_options").path("include_usage").asBoolean(false);
+    }
+
+    private static boolean roll(ThreadLocalRandom random, double rate) {
+        return rate > 0 && random.nextDouble() < rate;
+    }
+
+    private static String word(int offset, int index) {
+        String word = WORDS[(offset + index) % WORDS.length];
+        return index == 0 ? word : " " + word;
+    }
+
+    private static String text(int offset, int tokens) {
+        StringBuilder builder = new StringBuilder(tokens * 6);
+        for (int i = 0; i < tokens; i++) {
+            builder.append(word(offset, i));
+        }
+        return builder.toString();
+    }
+
+    private record ToolCall(String id, String name, String arguments) {
+    }
+}
@@ -0,0 +1,21 @@
+package com.yeelovo.ai.stream;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 在途流式请求合并配置
+ */
+@Data
+@ConfigurationProperties(prefix = "proxy.coalescing")
+public class CoalescingProperties {
+
+    // 是否合并内容完全相同的在途流式请求
+    private boolean enabled = true;
+
+    // 只合并确定性请求（temperature=0）；关闭后温度不为0的相同请求也会共享同一份生成结果
+    private boolean deterministicOnly = true;
+
+    // 不同调用方Key的相同请求是否共享同一份生成结果；默认只在同一Key内合并
+    private boolean shareAcrossClients = false;
+}
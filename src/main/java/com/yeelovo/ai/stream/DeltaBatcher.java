@@ -0,0 +1,228 @@
+package com.yeelovo.ai.stream;
+
+import com.yeelovo.ai.model.openai.ChatRequest;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.reactivestreams.Subscription;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 流式增量合并
+ * 首个增量立即发送以保证首token时间，之后的增量攒到 max-bytes 或等待 max-delay 后合并为一个数据块发送。
+ * 下游暂时没有需求时继续合并，需求到达后一次发出，慢客户端收到更少、更大的数据块
+ */
+@Component
+@EnableConfigurationProperties(DeltaBatchingProperties.class)
+public class DeltaBatcher {
+
+    private final DeltaBatchingProperties properties;
+
+    private final AtomicLong streams = new AtomicLong(0);
+    private final AtomicLong deltas = new AtomicLong(0);
+    private final AtomicLong frames = new AtomicLong(0);
+
+    public DeltaBatcher(DeltaBatchingProperties properties, MeterRegistry registry) {
+        this.properties = properties;
+        FunctionCounter.builder("ai.stream.batching.deltas", deltas, AtomicLong::get)
+                .description("参与合并的上游增量数")
+                .register(registry);
+        FunctionCounter.builder("ai.stream.batching.frames", frames, AtomicLong::get)
+                .description("合并后发出的数据块数")
+                .register(registry);
+    }
+
+    /**
+     * 请求是否合并增量：请求的 batch_deltas 优先，其次是调用方Key的配置，最后是默认值
+     */
+    public boolean isEnabled(ChatRequest request) {
+        if (request.getBatch_deltas() != null) {
+            return request.getBatch_deltas();
+        }
+        Boolean client = request.getClientKey() != null ? properties.getClients().get(request.getClientKey()) : null;
+        return client != null ? client : properties.isEnabled();
+    }
+
+    /**
+     * 按请求的设置合并增量，未启用时原样返回
+     */
+    public Flux<String> batch(ChatRequest request, Flux<String> source) {
+        if (!isEnabled(request)) {
+            return source;
+        }
+        int maxBytes = properties.getMaxBytes();
+        long maxDelayNanos = properties.getMaxDelay().toNanos();
+        return Flux.create(sink -> {
+            streams.incrementAndGet();
+            Batch batch = new Batch(sink, maxBytes, maxDelayNanos);
+            sink.onRequest(n -> batch.drain());
+            // 下游取消时取消上游
+            sink.onDispose(batch);
+            source.subscribe(batch);
+        });
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        long deltaCount = deltas.get();
+        long frameCount = frames.get();
+        result.put("enabled", properties.isEnabled());
+        result.put("clients", properties.getClients().size());
+        result.put("maxBytes", properties.getMaxBytes());
+        result.put("maxDelayMs", properties.getMaxDelay().toMillis());
+        result.put("streams", streams.get());
+        result.put("deltas", deltaCount);
+        result.put("frames", frameCount);
+        result.put("deltasPerFrame", frameCount == 0 ? 0.0 : (double) deltaCount / frameCount);
+        return result;
+    }
+
+    /**
+     * 单条流的合并状态，上游回调、定时器和下游需求可能来自不同线程，状态由锁保护
+     */
+    private final class Batch extends BaseSubscriber<String> {
+
+        private final FluxSink<String> sink;
+        private final int maxBytes;
+        private final long maxDelayNanos;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final StringBuilder pending = new StringBuilder();
+        // 待发送内容转义后的字节数，与写出的SSE帧一致
+        private int pendingBytes;
+        private int pendingDeltas;
+
+        // 尚未发出过数据块，首个增量不等待
+        private boolean first = true;
+        // 等待时间已到，下游有需求时立即发送
+        private boolean due;
+        // 上游已结束，剩余内容发送后结束下游
+        private boolean done;
+        private boolean terminated;
+        private Throwable error;
+        private Disposable timer;
+
+        private Batch(FluxSink<String> sink, int maxBytes, long maxDelayNanos) {
+            this.sink = sink;
+            this.maxBytes = maxBytes;
+            this.maxDelayNanos = maxDelayNanos;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            // 上游按生成速度推送，未发送的内容在本地合并，不限制上游读取
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        protected void hookOnNext(String delta) {
+            deltas.incrementAndGet();
+            lock.lock();
+            try {
+                pending.append(delta);
+                pendingBytes += StreamChunkEncoder.escapedLength(delta);
+                pendingDeltas++;
+                if (!first && pendingDeltas == 1) {
+                    timer = Schedulers.parallel().schedule(this::onTimeout, maxDelayNanos, TimeUnit.NANOSECONDS);
+                }
+                drain();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            finish(null);
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            finish(throwable);
+        }
+
+        @Override
+        protected void hookFinally(SignalType type) {
+            lock.lock();
+            try {
+                cancelTimer();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void onTimeout() {
+            lock.lock();
+            try {
+                due = true;
+                drain();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void finish(Throwable throwable) {
+            lock.lock();
+            try {
+                done = true;
+                error = throwable;
+                drain();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 满足发送条件且下游有需求时发出待发送内容，全部发出后传递结束信号
+         */
+        void drain() {
+            lock.lock();
+            try {
+                if (terminated) {
+                    return;
+                }
+                if (pendingDeltas > 0 && sink.requestedFromDownstream() > 0
+                        && (first || due || done || pendingBytes >= maxBytes)) {
+                    String content = pending.toString();
+                    pending.setLength(0);
+                    pendingBytes = 0;
+                    pendingDeltas = 0;
+                    first = false;
+                    due = false;
+                    cancelTimer();
+                    frames.incrementAndGet();
+                    sink.next(content);
+                }
+                if (done && pendingDeltas == 0 && !terminated) {
+                    terminated = true;
+                    if (error != null) {
+                        sink.error(error);
+                    } else {
+                        sink.complete();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void cancelTimer() {
+            if (timer != null) {
+                timer.dispose();
+                timer = null;
+            }
+        }
+    }
+}
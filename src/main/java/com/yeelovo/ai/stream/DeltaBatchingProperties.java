@@ -0,0 +1,29 @@
+package com.yeelovo.ai.stream;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 流式增量合并配置
+ * 上游常常每次只返回一两个字符，合并后每个SSE帧携带多个增量，减少序列化、写出和刷新的次数
+ */
+@Data
+@ConfigurationProperties(prefix = "proxy.delta-batching")
+public class DeltaBatchingProperties {
+
+    // 请求未指定 batch_deltas 且调用方Key未单独配置时是否合并
+    private boolean enabled = false;
+
+    // 按调用方API Key开启或关闭，覆盖默认值
+    private Map<String, Boolean> clients = new HashMap<>();
+
+    // 待发送内容（JSON转义后的UTF-8字节数）达到该值时立即发送
+    private int maxBytes = 256;
+
+    // 待发送内容最长等待时间，从第一个未发送的增量开始计算
+    private Duration maxDelay = Duration.ofMillis(30);
+}
@@ -0,0 +1,244 @@
+package com.yeelovo.ai.stream;
+
+import com.yeelovo.ai.model.openai.ChatResponse;
+import com.yeelovo.ai.model.openai.ChatStreamResponse;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 流式响应数据块编码器
+ * 每次补全创建一个实例，id 和 created 在整个补全中保持不变（与OpenAI客户端预期一致）。
+ * SSE帧的前后缀预先编码为字节，每个token只转义并拼接delta内容，编码结果直接写入响应，不经过Jackson
+ */
+public final class StreamChunkEncoder {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] CHUNK_SUFFIX = "\"},\"finish_reason\":null}]}\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] FINAL_SUFFIX = "\"},\"finish_reason\":\"stop\"}]}\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final String id;
+    private final long created;
+    private final String model;
+
+    // data:{...,"model":"xxx
+    private final byte[] header;
+
+    // data:{...,"choices":[{"index":0,"delta":{"content":"
+    private final byte[] prefix;
+
+    private StreamChunkEncoder(String model) {
+        this.id = "chatcmpl-" + UUID.randomUUID().toString().replace("-", "");
+        this.created = System.currentTimeMillis() / 1000;
+        this.model = model;
+
+        String start = "data:{\"id\":\"" + id
+                + "\",\"object\":\"chat.completion.chunk\",\"created\":" + created
+                + ",\"model\":\"";
+        byte[] startBytes = start.getBytes(StandardCharsets.UTF_8);
+        byte[] modelBytes = escape(model);
+        byte[] tail = "\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\"".getBytes(StandardCharsets.UTF_8);
+
+        this.header = new byte[startBytes.length + modelBytes.length];
+        System.arraycopy(startBytes, 0, header, 0, startBytes.length);
+        System.arraycopy(modelBytes, 0, header, startBytes.length, modelBytes.length);
+
+        this.prefix = new byte[header.length + tail.length];
+        System.arraycopy(header, 0, prefix, 0, header.length);
+        System.arraycopy(tail, 0, prefix, header.length, tail.length);
+    }
+
+    /**
+     * 为一次补全创建编码器
+     */
+    public static StreamChunkEncoder forCompletion(String model) {
+        return new StreamChunkEncoder(model);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * 编码一个中间数据块为完整的SSE帧
+     */
+    public byte[] encode(String content) {
+        return frame(content, CHUNK_SUFFIX);
+    }
+
+    /**
+     * 编码带结束标记的数据块为完整的SSE帧
+     */
+    public byte[] encodeFinal(String content) {
+        return frame(content, FINAL_SUFFIX);
+    }
+
+    /**
+     * 编码用量数据块（stream_options.include_usage），choices为空，在结束数据块之后发送
+     */
+    public byte[] encodeUsage(int promptTokens, int completionTokens) {
+        byte[] usage = ("\",\"choices\":[],\"usage\":{\"prompt_tokens\":" + promptTokens
+                + ",\"completion_tokens\":" + completionTokens
+                + ",\"total_tokens\":" + (promptTokens + completionTokens)
+                + "}}\n\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] out = new byte[header.length + usage.length];
+        System.arraycopy(header, 0, out, 0, header.length);
+        System.arraycopy(usage, 0, out, header.length, usage.length);
+        return out;
+    }
+
+    /**
+     * 将已编码的帧直接写入SSE发射器，绕过消息转换器中的JSON序列化
+     */
+    public static void write(SseEmitter emitter, byte[] frame) throws IOException {
+        emitter.send(Set.of(new ResponseBodyEmitter.DataWithMediaType(frame, MediaType.TEXT_EVENT_STREAM)));
+    }
+
+    /**
+     * 构建对象形式的数据块，供需要ChatStreamResponse的路径使用，id和created与字节帧一致
+     */
+    public ChatStreamResponse toResponse(String content, boolean isDone) {
+        ChatStreamResponse.Delta delta = ChatStreamResponse.Delta.builder()
+                                                 .content(content)
+                                                 .build();
+
+        ChatStreamResponse.Choice choice = ChatStreamResponse.Choice.builder()
+                                                   .index(0)
+                                                   .delta(delta)
+                                                   .finish_reason(isDone ? "stop" : null)
+                                                   .build();
+
+        List<ChatStreamResponse.Choice> choices = Collections.singletonList(choice);
+
+        return ChatStreamResponse.builder()
+                       .id(id)
+                       .object("chat.completion.chunk")
+                       .created(created)
+                       .model(model)
+                       .choices(choices)
+                       .build();
+    }
+
+    /**
+     * 构建对象形式的用量数据块，与 encodeUsage 的输出一致
+     */
+    public ChatStreamResponse toUsageResponse(int promptTokens, int completionTokens) {
+        ChatResponse.Usage usage = ChatResponse.Usage.builder()
+                                           .prompt_tokens(promptTokens)
+                                           .completion_tokens(completionTokens)
+                                           .total_tokens(promptTokens + completionTokens)
+                                           .build();
+
+        return ChatStreamResponse.builder()
+                       .id(id)
+                       .object("chat.completion.chunk")
+                       .created(created)
+                       .model(model)
+                       .choices(Collections.emptyList())
+                       .usage(usage)
+                       .build();
+    }
+
+    private byte[] frame(String content, byte[] suffix) {
+        String text = content == null ? "" : content;
+        int contentLength = escapedLength(text);
+        byte[] out = new byte[prefix.length + contentLength + suffix.length];
+        System.arraycopy(prefix, 0, out, 0, prefix.length);
+        writeEscaped(text, out, prefix.length);
+        System.arraycopy(suffix, 0, out, prefix.length + contentLength, suffix.length);
+        return out;
+    }
+
+    static byte[] escape(String text) {
+        byte[] out = new byte[escapedLength(text)];
+        writeEscaped(text, out, 0);
+        return out;
+    }
+
+    /**
+     * 计算JSON字符串转义并UTF-8编码后的字节数
+     */
+    static int escapedLength(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\' || c == '\n' || c == '\r' || c == '\t' || c == '\b' || c == '\f') {
+                length += 2;
+            } else if (c < 0x20) {
+                length += 6;
+            } else if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // 不成对的代理字符按替换字符'?'输出
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 将文本按JSON字符串转义规则以UTF-8写入目标数组
+     */
+    static int writeEscaped(String text, byte[] out, int pos) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> { out[pos++] = '\\'; out[pos++] = '"'; }
+                case '\\' -> { out[pos++] = '\\'; out[pos++] = '\\'; }
+                case '\n' -> { out[pos++] = '\\'; out[pos++] = 'n'; }
+                case '\r' -> { out[pos++] = '\\'; out[pos++] = 'r'; }
+                case '\t' -> { out[pos++] = '\\'; out[pos++] = 't'; }
+                case '\b' -> { out[pos++] = '\\'; out[pos++] = 'b'; }
+                case '\f' -> { out[pos++] = '\\'; out[pos++] = 'f'; }
+                default -> {
+                    if (c < 0x20) {
+                        out[pos++] = '\\';
+                        out[pos++] = 'u';
+                        out[pos++] = '0';
+                        out[pos++] = '0';
+                        out[pos++] = HEX[c >> 4];
+                        out[pos++] = HEX[c & 0xF];
+                    } else if (c < 0x80) {
+                        out[pos++] = (byte) c;
+                    } else if (c < 0x800) {
+                        out[pos++] = (byte) (0xC0 | (c >> 6));
+                        out[pos++] = (byte) (0x80 | (c & 0x3F));
+                    } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                        int cp = Character.toCodePoint(c, text.charAt(++i));
+                        out[pos++] = (byte) (0xF0 | (cp >> 18));
+                        out[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                        out[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                        out[pos++] = (byte) (0x80 | (cp & 0x3F));
+                    } else if (Character.isSurrogate(c)) {
+                        out[pos++] = '?';
+                    } else {
+                        out[pos++] = (byte) (0xE0 | (c >> 12));
+                        out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                        out[pos++] = (byte) (0x80 | (c & 0x3F));
+                    }
+                }
+            }
+        }
+        return pos;
+    }
+}
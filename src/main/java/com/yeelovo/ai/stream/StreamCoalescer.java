@@ -0,0 +1,100 @@
+package com.yeelovo.ai.stream;
+
+import com.yeelovo.ai.cache.RequestFingerprint;
+import com.yeelovo.ai.model.openai.ChatRequest;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 在途流式请求合并（single-flight）
+ * 同一调用方Key的相同请求在上游生成期间只建立一条上游连接：首个请求订阅上游，后到的请求共享同一个Flux，
+ * 先回放已生成的数据块再接收实时数据。每个订阅者按自己的速度消费，所有订阅者都取消时上游连接随之取消
+ */
+@Component
+@EnableConfigurationProperties(CoalescingProperties.class)
+public class StreamCoalescer {
+
+    private final CoalescingProperties properties;
+
+    private final Map<String, Flux<String>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong leaders = new AtomicLong(0);
+    private final AtomicLong joiners = new AtomicLong(0);
+
+    public StreamCoalescer(CoalescingProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * 请求是否可以合并：携带服务端会话记忆的请求结果依赖会话状态，不能合并
+     */
+    public boolean isCoalescable(ChatRequest request) {
+        if (!properties.isEnabled() || request.isMemoryEnabled()
+                || request.getMessages() == null || request.getMessages().isEmpty()) {
+            return false;
+        }
+        if (request.getN() != null && request.getN() > 1) {
+            return false;
+        }
+        return !properties.isDeterministicOnly()
+                || (request.getTemperature() != null && request.getTemperature() == 0.0);
+    }
+
+    /**
+     * 获取共享的上游流，相同请求已在生成中时直接加入
+     * @param upstream 创建上游流，只有首个请求会调用
+     */
+    public Flux<String> join(ChatRequest request, Supplier<Flux<String>> upstream) {
+        if (!isCoalescable(request)) {
+            return upstream.get();
+        }
+        String key = key(request);
+        AtomicReference<Flux<String>> created = new AtomicReference<>();
+        Flux<String> shared = inFlight.computeIfAbsent(key, k -> {
+            // replay保存本次生成的全部数据块供后来者回放；refCount在所有订阅者取消后断开上游
+            Flux<String> flux = Flux.defer(upstream)
+                                        .doFinally(signal -> inFlight.remove(k, created.get()))
+                                        .replay()
+                                        .refCount();
+            created.set(flux);
+            return flux;
+        });
+        if (created.get() != null) {
+            leaders.incrementAndGet();
+        } else {
+            joiners.incrementAndGet();
+        }
+        return shared;
+    }
+
+    /**
+     * 合并键：请求指纹，未开启跨Key共享时加上调用方Key，不同调用方的请求互不合并
+     */
+    private String key(ChatRequest request) {
+        String fingerprint = RequestFingerprint.of(request);
+        if (properties.isShareAcrossClients()) {
+            return fingerprint;
+        }
+        return (request.getClientKey() == null ? "" : request.getClientKey()) + ":" + fingerprint;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("inFlight", inFlight.size());
+        result.put("leaders", leaders.get());
+        result.put("joiners", joiners.get());
+        return result;
+    }
+
+    public long getJoiners() {
+        return joiners.get();
+    }
+}
@@ -0,0 +1,167 @@
+package com.yeelovo.ai.token;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingRegistry;
+import com.knuddels.jtokkit.api.EncodingType;
+import com.yeelovo.ai.model.openai.ChatRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 本地BPE分词计数
+ * 词表（cl100k_base / o200k_base）从classpath加载，只在首次使用时初始化；
+ * 计数不生成token列表，可以在每个请求上调用。
+ * 客户端每轮都会重发完整历史，较长消息的计数结果按内容缓存，同一段历史只分词一次
+ */
+@Component
+public class TokenCounter {
+
+    // 每条消息的固定开销（<|start|>{role}\n ... <|end|>\n），与OpenAI的计数规则一致
+    private static final int TOKENS_PER_MESSAGE = 3;
+
+    // 每次回复的引导token（<|start|>assistant<|message|>）
+    public static final int TOKENS_PER_REPLY = 3;
+
+    // 短于该长度的内容直接分词，比查缓存更快
+    private static final int CACHE_MIN_LENGTH = 64;
+
+    private static final int CACHE_MAX_ENTRIES = 20_000;
+
+    private final EncodingRegistry registry = Encodings.newLazyEncodingRegistry();
+
+    // 模型名到词表的映射，避免每次请求重复解析模型名
+    private final Map<String, EncodingType> encodingTypes = new ConcurrentHashMap<>();
+
+    private final ReentrantLock cacheLock = new ReentrantLock();
+
+    // accessOrder=true，迭代顺序即LRU顺序
+    private final LinkedHashMap<CacheKey, Integer> messageCache = new LinkedHashMap<>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CacheKey, Integer> eldest) {
+            return size() > CACHE_MAX_ENTRIES;
+        }
+    };
+
+    private final AtomicLong cacheHits = new AtomicLong(0);
+    private final AtomicLong cacheMisses = new AtomicLong(0);
+
+    /**
+     * 按模型选择词表：gpt-4o、gpt-4.1、o系列推理模型使用o200k_base，其余使用cl100k_base
+     */
+    public Encoding encodingFor(String model) {
+        return registry.getEncoding(encodingType(model));
+    }
+
+    /**
+     * 统计一段文本的token数
+     */
+    public int count(String model, String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return encodingFor(model).countTokensOrdinary(text);
+    }
+
+    /**
+     * 统计单条消息的token数（含消息固定开销）
+     */
+    public int countMessage(String model, ChatRequest.Message message) {
+        return countMessage(model, message.getRole(), message.getContent());
+    }
+
+    /**
+     * 统计单条消息的token数（含消息固定开销），较长内容的结果会被缓存
+     */
+    public int countMessage(String model, String role, String content) {
+        EncodingType type = encodingType(model);
+        int tokens = TOKENS_PER_MESSAGE;
+        if (role != null) {
+            tokens += registry.getEncoding(type).countTokensOrdinary(role);
+        }
+        if (content == null || content.isEmpty()) {
+            return tokens;
+        }
+        if (content.length() < CACHE_MIN_LENGTH) {
+            return tokens + registry.getEncoding(type).countTokensOrdinary(content);
+        }
+
+        // 键只保存长度和哈希，不持有消息内容；哈希碰撞的代价只是一次计数偏差
+        CacheKey key = new CacheKey(type, content.length(), content.hashCode());
+        Integer cached;
+        cacheLock.lock();
+        try {
+            cached = messageCache.get(key);
+        } finally {
+            cacheLock.unlock();
+        }
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+            return tokens + cached;
+        }
+
+        cacheMisses.incrementAndGet();
+        int contentTokens = registry.getEncoding(type).countTokensOrdinary(content);
+        cacheLock.lock();
+        try {
+            messageCache.put(key, contentTokens);
+        } finally {
+            cacheLock.unlock();
+        }
+        return tokens + contentTokens;
+    }
+
+    /**
+     * 统计提示词的token数（所有消息加上回复引导）
+     */
+    public int countPrompt(String model, List<ChatRequest.Message> messages) {
+        if (messages == null) {
+            return 0;
+        }
+        int tokens = TOKENS_PER_REPLY;
+        for (ChatRequest.Message message : messages) {
+            tokens += countMessage(model, message);
+        }
+        return tokens;
+    }
+
+    /**
+     * 消息计数缓存的命中统计
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        cacheLock.lock();
+        try {
+            result.put("cachedMessages", messageCache.size());
+        } finally {
+            cacheLock.unlock();
+        }
+        result.put("cacheHits", cacheHits.get());
+        result.put("cacheMisses", cacheMisses.get());
+        return result;
+    }
+
+    private EncodingType encodingType(String model) {
+        if (model == null) {
+            return EncodingType.CL100K_BASE;
+        }
+        return encodingTypes.computeIfAbsent(model, TokenCounter::resolveEncodingType);
+    }
+
+    private static EncodingType resolveEncodingType(String model) {
+        String name = model.toLowerCase();
+        boolean o200k = name.startsWith("gpt-4o") || name.startsWith("gpt-4.1") || name.startsWith("gpt-5")
+                || name.startsWith("chatgpt-4o")
+                || (name.length() > 1 && name.charAt(0) == 'o' && Character.isDigit(name.charAt(1)));
+        return o200k ? EncodingType.O200K_BASE : EncodingType.CL100K_BASE;
+    }
+
+    private record CacheKey(EncodingType type, int length, int hash) {
+    }
+}
@@ -0,0 +1,122 @@
+package com.yeelovo.ai.token;
+
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 按模型和API Key累计的token用量，用于容量规划
+ * API Key按完整密钥的SHA-256前缀区分，前缀相同的不同密钥（如都以 sk-proj- 开头）分别统计，脱敏后的密钥只作为展示标签
+ * 模型名和API Key都来自客户端请求，超过上限的新值统一归入 other，避免任意请求头把统计撑大
+ */
+@Component
+public class TokenUsageStats {
+
+    // 超过该数量的新模型统一归入 other
+    private static final int MAX_MODELS = 64;
+
+    // 超过该数量的新API Key统一归入 other
+    private static final int MAX_KEYS = 1024;
+
+    private static final String OTHER = "other";
+
+    private static final String ANONYMOUS = "anonymous";
+
+    // SHA-256十六进制前缀长度
+    private static final int KEY_ID_LENGTH = 16;
+
+    private final Map<String, Counter> byModel = new ConcurrentHashMap<>();
+
+    // 以完整API Key为键只在进程内使用，摘要在首次出现时计算一次，之后的请求只做一次查找
+    private final Map<String, Counter> byKey = new ConcurrentHashMap<>();
+
+    /**
+     * 记录一次请求的用量
+     */
+    public void record(String model, String clientKey, int promptTokens, int completionTokens) {
+        counter(byModel, model == null ? OTHER : model, MAX_MODELS, name -> new Counter(name, null))
+                .add(promptTokens, completionTokens);
+        counter(byKey, clientKey == null || clientKey.isBlank() ? "" : clientKey, MAX_KEYS,
+                key -> key.isEmpty() ? new Counter(ANONYMOUS, ANONYMOUS) : new Counter(keyId(key), mask(key)))
+                .add(promptTokens, completionTokens);
+    }
+
+    private static Counter counter(Map<String, Counter> counters, String name, int limit, Function<String, Counter> factory) {
+        Counter existing = counters.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        if (counters.size() >= limit) {
+            return counters.computeIfAbsent(OTHER, k -> new Counter(OTHER, null));
+        }
+        return counters.computeIfAbsent(name, factory);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("byModel", toMap(byModel));
+        result.put("byKey", toMap(byKey));
+        return result;
+    }
+
+    private static Map<String, Object> toMap(Map<String, Counter> counters) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        counters.values().forEach(counter -> {
+            Map<String, Object> usage = new LinkedHashMap<>();
+            if (counter.label != null) {
+                usage.put("label", counter.label);
+            }
+            usage.put("requests", counter.requests.sum());
+            usage.put("prompt_tokens", counter.promptTokens.sum());
+            usage.put("completion_tokens", counter.completionTokens.sum());
+            result.put(counter.id, usage);
+        });
+        return result;
+    }
+
+    /**
+     * 完整API Key的SHA-256前缀，作为统计的键
+     */
+    private static String keyId(String clientKey) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(clientKey.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest).substring(0, KEY_ID_LENGTH);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * API Key只保留前缀作为展示标签，避免在统计接口中暴露完整密钥
+     */
+    private static String mask(String clientKey) {
+        return clientKey.length() <= 8 ? clientKey.charAt(0) + "***" : clientKey.substring(0, 6) + "***";
+    }
+
+    private static final class Counter {
+        private final String id;
+        private final String label;
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder promptTokens = new LongAdder();
+        private final LongAdder completionTokens = new LongAdder();
+
+        private Counter(String id, String label) {
+            this.id = id;
+            this.label = label;
+        }
+
+        private void add(int prompt, int completion) {
+            requests.increment();
+            promptTokens.add(prompt);
+            completionTokens.add(completion);
+        }
+    }
+}
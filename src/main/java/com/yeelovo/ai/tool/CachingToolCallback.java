@@ -0,0 +1,60 @@
+package com.yeelovo.ai.tool;
+
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+/**
+ * 带结果缓存的工具回调，定义和元数据与被装饰的工具相同
+ * 调用携带自定义工具上下文时结果可能依赖上下文，不走缓存
+ */
+class CachingToolCallback implements ToolCallback {
+
+    private final ToolCallback delegate;
+    private final ToolResultCache.Region region;
+    private final ToolResultCache cache;
+
+    // MCP工具每次获取定义都会重新构建，这里只取一次
+    private final ToolDefinition definition;
+
+    CachingToolCallback(ToolCallback delegate, ToolResultCache.Region region, ToolResultCache cache) {
+        this.delegate = delegate;
+        this.region = region;
+        this.cache = cache;
+        this.definition = delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return definition;
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return call(toolInput, null);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        if (toolContext != null && !toolContext.getContext().isEmpty()) {
+            return delegate.call(toolInput, toolContext);
+        }
+        String key = cache.key(definition.name(), toolInput);
+        String cached = region.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        long start = System.nanoTime();
+        String result = delegate.call(toolInput, toolContext);
+        if (cache.isCacheable(result)) {
+            region.put(key, result, System.nanoTime() - start);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,439 @@
+package com.yeelovo.ai.tool;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.execution.ToolExecutionException;
+import org.springframework.ai.tool.execution.ToolExecutionExceptionProcessor;
+import org.springframework.ai.tool.resolution.ToolCallbackResolver;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import org.springframework.util.CollectionUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 并发执行同一轮回复中的工具调用
+ * 替换Spring AI默认的ToolCallingManager（逐个执行）：模型一次请求多个工具调用时，在有界的 toolExecutor 上同时执行，
+ * 每个调用有独立的超时，结果按模型给出的调用顺序返回。工具查找、returnDirect、异常处理和对话历史与默认实现相同
+ */
+@Slf4j
+@Component
+@EnableConfigurationProperties(ToolExecutionProperties.class)
+public class ParallelToolCallingManager implements ToolCallingManager {
+
+    // 超过该数量的新工具名统一归入 other，避免标签基数失控
+    private static final int MAX_TOOLS = 64;
+
+    private static final String OTHER_TOOL = "other";
+
+    private final ToolExecutionProperties properties;
+    private final ToolCallbackResolver toolCallbackResolver;
+    private final ToolExecutionExceptionProcessor exceptionProcessor;
+    private final Executor toolExecutor;
+    private final MeterRegistry registry;
+
+    // 工具定义在目录加载时构建，避免每次请求重新序列化JSON Schema
+    private final ToolCatalog toolCatalog;
+
+    private final Map<String, ToolMeters> meters = new ConcurrentHashMap<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final AtomicLong turns = new AtomicLong(0);
+    private final AtomicLong parallelTurns = new AtomicLong(0);
+    private final AtomicLong calls = new AtomicLong(0);
+    private final AtomicLong timeouts = new AtomicLong(0);
+    // 各调用耗时之和与工具阶段墙钟时间之和，两者之比为平均并行度，之差为并发节省的时间
+    private final AtomicLong busyNanos = new AtomicLong(0);
+    private final AtomicLong wallNanos = new AtomicLong(0);
+
+    private final DistributionSummary turnCalls;
+    private final DistributionSummary turnParallelism;
+    private final Timer turnDuration;
+
+    public ParallelToolCallingManager(ToolExecutionProperties properties,
+                                      ToolCallbackResolver toolCallbackResolver,
+                                      ToolExecutionExceptionProcessor exceptionProcessor,
+                                      @Qualifier("toolExecutor") Executor toolExecutor,
+                                      MeterRegistry registry,
+                                      ToolCatalog toolCatalog) {
+        this.properties = properties;
+        this.toolCallbackResolver = toolCallbackResolver;
+        this.exceptionProcessor = exceptionProcessor;
+        this.toolExecutor = toolExecutor;
+        this.registry = registry;
+        this.toolCatalog = toolCatalog;
+
+        this.turnCalls = DistributionSummary.builder("ai.tool.turn.calls")
+                                 .description("每轮回复的工具调用数")
+                                 .register(registry);
+        this.turnParallelism = DistributionSummary.builder("ai.tool.turn.parallelism")
+                                       .description("每轮工具调用耗时之和与墙钟时间之比")
+                                       .register(registry);
+        this.turnDuration = Timer.builder("ai.tool.turn.duration")
+                                    .description("每轮工具调用阶段的墙钟时间")
+                                    .publishPercentileHistogram()
+                                    .minimumExpectedValue(Duration.ofMillis(1))
+                                    .maximumExpectedValue(Duration.ofSeconds(60))
+                                    .register(registry);
+        FunctionCounter.builder("ai.tool.turn.saved", this, manager -> Math.max(0, manager.busyNanos.get() - manager.wallNanos.get()) / 1e9)
+                .baseUnit("seconds")
+                .description("并发执行节省的时间（调用耗时之和减去墙钟时间）")
+                .register(registry);
+        registry.gauge("ai.tool.inflight", inFlight);
+    }
+
+    /**
+     * 与默认实现相同：请求选项中的工具加上按名称解析的工具；目录中的工具直接使用缓存的定义
+     */
+    @Override
+    public List<ToolDefinition> resolveToolDefinitions(ToolCallingChatOptions chatOptions) {
+        Assert.notNull(chatOptions, "chatOptions cannot be null");
+        List<ToolCallback> optionCallbacks = toolCallbacks(chatOptions);
+        List<ToolCallback> callbacks = new ArrayList<>(optionCallbacks);
+        for (String toolName : chatOptions.getToolNames()) {
+            if (optionCallbacks.stream().anyMatch(callback -> name(callback).equals(toolName))) {
+                continue;
+            }
+            ToolCallback callback = resolve(toolName);
+            if (callback == null) {
+                throw new IllegalStateException("No ToolCallback found for tool name: " + toolName);
+            }
+            callbacks.add(callback);
+        }
+        List<ToolDefinition> definitions = new ArrayList<>(callbacks.size());
+        for (ToolCallback callback : callbacks) {
+            definitions.add(definition(callback));
+        }
+        return definitions;
+    }
+
+    @Override
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse) {
+        Assert.notNull(prompt, "prompt cannot be null");
+        Assert.notNull(chatResponse, "chatResponse cannot be null");
+
+        AssistantMessage assistantMessage = chatResponse.getResults().stream()
+                                                    .map(Generation::getOutput)
+                                                    .filter(AssistantMessage::hasToolCalls)
+                                                    .findFirst()
+                                                    .orElseThrow(() -> new IllegalStateException("No tool call requested by the chat model"));
+        ToolContext toolContext = buildToolContext(prompt, assistantMessage);
+        List<ToolCallback> callbacks = prompt.getOptions() instanceof ToolCallingChatOptions options
+                                               ? toolCallbacks(options) : List.of();
+
+        // 先解析全部工具，找不到时与默认实现一样直接失败，不启动任何调用
+        List<Invocation> invocations = new ArrayList<>();
+        boolean returnDirect = true;
+        for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+            ToolCallback callback = resolve(toolCall.name(), callbacks);
+            if (callback == null) {
+                throw new IllegalStateException("No ToolCallback found for tool name: " + toolCall.name());
+            }
+            returnDirect &= callback.getToolMetadata().returnDirect();
+            invocations.add(new Invocation(toolCall, callback, timeout(toolCall.name())));
+        }
+
+        long start = System.nanoTime();
+        boolean parallel = properties.isParallel() && invocations.size() > 1;
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(invocations.size());
+        try {
+            if (parallel) {
+                invocations.forEach(invocation -> invocation.submit(toolContext));
+            }
+            for (Invocation invocation : invocations) {
+                if (!parallel) {
+                    invocation.submit(toolContext);
+                }
+                responses.add(new ToolResponseMessage.ToolResponse(
+                        invocation.toolCall.id(), invocation.toolCall.name(), invocation.await()));
+            }
+        } catch (RuntimeException | Error e) {
+            invocations.forEach(Invocation::cancel);
+            throw e;
+        }
+        recordTurn(invocations, System.nanoTime() - start, parallel);
+
+        List<Message> conversationHistory = new ArrayList<>(prompt.getInstructions());
+        conversationHistory.add(assistantMessage);
+        conversationHistory.add(new ToolResponseMessage(responses, Map.of()));
+        return ToolExecutionResult.builder()
+                       .conversationHistory(conversationHistory)
+                       .returnDirect(returnDirect)
+                       .build();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        long turnCount = turns.get();
+        long busy = busyNanos.get();
+        long wall = wallNanos.get();
+        result.put("parallel", properties.isParallel());
+        result.put("defaultTimeoutMs", properties.getDefaultTimeout().toMillis());
+        result.put("inFlight", inFlight.get());
+        result.put("turns", turnCount);
+        result.put("parallelTurns", parallelTurns.get());
+        result.put("calls", calls.get());
+        result.put("timeouts", timeouts.get());
+        result.put("avgCallsPerTurn", turnCount == 0 ? 0.0 : (double) calls.get() / turnCount);
+        result.put("avgParallelism", wall == 0 ? 0.0 : (double) busy / wall);
+        result.put("savedMs", Math.max(0, busy - wall) / 1_000_000);
+        List<Map<String, Object>> tools = new ArrayList<>();
+        meters.forEach((tool, toolMeters) -> tools.add(toolMeters.snapshot(tool)));
+        result.put("tools", tools);
+        return result;
+    }
+
+    private void recordTurn(List<Invocation> invocations, long wall, boolean parallel) {
+        long busy = 0;
+        for (Invocation invocation : invocations) {
+            busy += invocation.durationNanos;
+        }
+        turns.incrementAndGet();
+        if (parallel) {
+            parallelTurns.incrementAndGet();
+        }
+        calls.addAndGet(invocations.size());
+        busyNanos.addAndGet(busy);
+        wallNanos.addAndGet(wall);
+        turnCalls.record(invocations.size());
+        turnDuration.record(wall, TimeUnit.NANOSECONDS);
+        if (wall > 0) {
+            turnParallelism.record((double) busy / wall);
+        }
+    }
+
+    /**
+     * 按工具名匹配超时配置：完全相同，或为带客户端名前缀的MCP工具名 "<前缀>_<name>"
+     */
+    private Duration timeout(String toolName) {
+        for (ToolExecutionProperties.Tool tool : properties.getTools()) {
+            if (tool.getTimeout() != null && tool.getName() != null
+                        && (toolName.equals(tool.getName()) || toolName.endsWith("_" + tool.getName()))) {
+                return tool.getTimeout();
+            }
+        }
+        return properties.getDefaultTimeout();
+    }
+
+    /**
+     * 优先使用请求选项中的工具（按请求选择的工具），找不到时交给解析器
+     */
+    private ToolCallback resolve(String toolName, List<ToolCallback> callbacks) {
+        for (ToolCallback callback : callbacks) {
+            if (toolName.equals(name(callback))) {
+                return callback;
+            }
+        }
+        return resolve(toolName);
+    }
+
+    /**
+     * 按名称交给解析器查找；解析器接口仍声明为已弃用的 FunctionCallback，只接受ToolCallback
+     */
+    private ToolCallback resolve(String toolName) {
+        Object callback = toolCallbackResolver.resolve(toolName);
+        return callback == null ? null : toolCallback(callback);
+    }
+
+    /**
+     * 请求选项中的工具；选项接口仍声明为已弃用的 FunctionCallback 列表，只接受ToolCallback
+     */
+    private static List<ToolCallback> toolCallbacks(ToolCallingChatOptions options) {
+        List<?> callbacks = options.getToolCallbacks();
+        List<ToolCallback> result = new ArrayList<>(callbacks.size());
+        for (Object callback : callbacks) {
+            result.add(toolCallback(callback));
+        }
+        return result;
+    }
+
+    private static ToolCallback toolCallback(Object callback) {
+        if (callback instanceof ToolCallback toolCallback) {
+            return toolCallback;
+        }
+        throw new IllegalStateException("Unsupported tool callback type: " + callback.getClass().getName());
+    }
+
+    /**
+     * 与默认实现相同：请求选项带有工具上下文时，附加工具调用前的对话历史
+     */
+    private static ToolContext buildToolContext(Prompt prompt, AssistantMessage assistantMessage) {
+        Map<String, Object> context = Map.of();
+        if (prompt.getOptions() instanceof ToolCallingChatOptions options && !CollectionUtils.isEmpty(options.getToolContext())) {
+            context = new HashMap<>(options.getToolContext());
+            List<Message> history = new ArrayList<>(prompt.copy().getInstructions());
+            history.add(new AssistantMessage(assistantMessage.getText(), assistantMessage.getMetadata(), assistantMessage.getToolCalls()));
+            context.put(ToolContext.TOOL_CALL_HISTORY, history);
+        }
+        return new ToolContext(context);
+    }
+
+    /**
+     * 目录中的工具直接使用缓存的定义，其余由工具构建
+     */
+    private ToolDefinition definition(ToolCallback callback) {
+        ToolDefinition definition = toolCatalog.definition(callback);
+        return definition != null ? definition : callback.getToolDefinition();
+    }
+
+    private String name(ToolCallback callback) {
+        return definition(callback).name();
+    }
+
+    private ToolMeters meters(String tool) {
+        ToolMeters existing = meters.get(tool);
+        if (existing != null) {
+            return existing;
+        }
+        String name = meters.size() >= MAX_TOOLS ? OTHER_TOOL : tool;
+        return meters.computeIfAbsent(name, this::createMeters);
+    }
+
+    private ToolMeters createMeters(String tool) {
+        return new ToolMeters(timer(tool, "success"), timer(tool, "error"), timer(tool, "timeout"));
+    }
+
+    private Timer timer(String tool, String outcome) {
+        return Timer.builder("ai.tool.duration")
+                       .description("单次工具调用耗时")
+                       .tag("tool", tool)
+                       .tag("outcome", outcome)
+                       .publishPercentileHistogram()
+                       .minimumExpectedValue(Duration.ofMillis(1))
+                       .maximumExpectedValue(Duration.ofSeconds(60))
+                       .register(registry);
+    }
+
+    /**
+     * 一轮中的单个工具调用
+     */
+    private final class Invocation {
+
+        private final AssistantMessage.ToolCall toolCall;
+        private final ToolCallback callback;
+        private final Duration timeout;
+        private final ToolMeters toolMeters;
+
+        private FutureTask<String> task;
+        private long submittedAt;
+        private volatile boolean timedOut;
+        private volatile long durationNanos;
+
+        Invocation(AssistantMessage.ToolCall toolCall, ToolCallback callback, Duration timeout) {
+            this.toolCall = toolCall;
+            this.callback = callback;
+            this.timeout = timeout;
+            this.toolMeters = meters(toolCall.name());
+        }
+
+        /**
+         * 提交到工具执行器；执行器饱和时由当前线程直接执行，此时超时不生效
+         */
+        void submit(ToolContext toolContext) {
+            task = new FutureTask<>(() -> execute(toolContext));
+            submittedAt = System.nanoTime();
+            toolExecutor.execute(task);
+        }
+
+        private String execute(ToolContext toolContext) {
+            inFlight.incrementAndGet();
+            long start = System.nanoTime();
+            boolean success = false;
+            try {
+                String result = callback.call(toolCall.arguments(), toolContext);
+                success = true;
+                return result;
+            } catch (ToolExecutionException e) {
+                return exceptionProcessor.process(e);
+            } finally {
+                inFlight.decrementAndGet();
+                if (!timedOut) {
+                    durationNanos = System.nanoTime() - start;
+                    (success ? toolMeters.success : toolMeters.error).record(durationNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+
+        /**
+         * 等待结果；超时时中断执行线程，并像工具抛出异常一样把超时说明作为结果返回给模型
+         */
+        String await() {
+            long remaining = timeout.toNanos() - (System.nanoTime() - submittedAt);
+            try {
+                return task.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                timedOut = true;
+                task.cancel(true);
+                durationNanos = System.nanoTime() - submittedAt;
+                toolMeters.timeout.record(durationNanos, TimeUnit.NANOSECONDS);
+                timeouts.incrementAndGet();
+                log.warn("工具调用超时，工具: {}, 超时: {}ms", toolCall.name(), timeout.toMillis());
+                return exceptionProcessor.process(new ToolExecutionException(definition(callback),
+                        new TimeoutException("Tool call timed out after " + timeout.toMillis() + " ms")));
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                if (cause instanceof Error error) {
+                    throw error;
+                }
+                throw new IllegalStateException(cause);
+            } catch (InterruptedException e) {
+                // 上层取消（如对冲请求落败）时一并取消工具调用
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("等待工具调用结果时被中断", e);
+            }
+        }
+
+        void cancel() {
+            if (task != null) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    private record ToolMeters(Timer success, Timer error, Timer timeout) {
+
+        Map<String, Object> snapshot(String tool) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("tool", tool);
+            result.put("calls", success.count() + error.count() + timeout.count());
+            result.put("errors", error.count());
+            result.put("timeouts", timeout.count());
+            result.put("meanMs", success.mean(TimeUnit.MILLISECONDS));
+            result.put("maxMs", success.max(TimeUnit.MILLISECONDS));
+            return result;
+        }
+    }
+}
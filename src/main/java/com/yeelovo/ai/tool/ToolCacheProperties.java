@@ -0,0 +1,45 @@
+package com.yeelovo.ai.tool;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 工具调用结果缓存配置
+ * 只有 tools 中列出的工具会被缓存（白名单），结果必须只由参数决定，且短时间内可以复用
+ */
+@Data
+@ConfigurationProperties(prefix = "proxy.tool-cache")
+public class ToolCacheProperties {
+
+    // 是否启用工具结果缓存
+    private boolean enabled = true;
+
+    // 工具未单独配置时的有效期
+    private Duration defaultTtl = Duration.ofMinutes(10);
+
+    // 工具未单独配置时的最大缓存条数
+    private int defaultMaxEntries = 1000;
+
+    // 超过该字节数（按UTF-16估算）的结果不缓存
+    private long maxResultBytes = 256L * 1024;
+
+    // 可缓存的工具
+    private List<Tool> tools = new ArrayList<>();
+
+    @Data
+    public static class Tool {
+
+        // 工具名；MCP工具注册时带有客户端名前缀，按 "<前缀>_<name>" 后缀匹配
+        private String name;
+
+        // 有效期，未配置时使用 defaultTtl
+        private Duration ttl;
+
+        // 最大缓存条数，未配置时使用 defaultMaxEntries
+        private Integer maxEntries;
+    }
+}
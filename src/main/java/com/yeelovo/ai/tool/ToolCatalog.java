@@ -0,0 +1,368 @@
+package com.yeelovo.ai.tool;
+
+import com.yeelovo.ai.model.openai.ChatRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.modelcontextprotocol.client.McpClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.mcp.customizer.McpSyncClientCustomizer;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.ToolCallbackProvider;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * 工具目录
+ * 汇总所有ToolCallbackProvider注册的工具（白名单工具经过结果缓存），按请求选择要携带的工具：
+ * 请求的 tools / tool_choice 优先，未指定时按 proxy.tool-selection 的关键词规则预筛选，避免每个请求都携带全部工具的JSON Schema。
+ * 工具定义只在加载目录时构建一次；MCP服务通知工具列表变更后，下次选择工具时重新加载
+ */
+@Slf4j
+@Component
+@EnableConfigurationProperties(ToolSelectionProperties.class)
+public class ToolCatalog implements McpSyncClientCustomizer {
+
+    private static final String MODE_EXPLICIT = "explicit";
+    private static final String MODE_RULES = "rules";
+    private static final String MODE_FALLBACK = "fallback";
+    private static final String MODE_NONE = "none";
+    private static final String MODE_ALL = "all";
+
+    private static final ToolCallback[] NO_TOOLS = new ToolCallback[0];
+
+    private final ToolSelectionProperties properties;
+    // 延迟获取：MCP客户端的自动配置依赖本类（作为McpSyncClientCustomizer），构造时不能反过来依赖MCP工具
+    private final ObjectProvider<ToolCallbackProvider> toolCallbackProviders;
+    private final ToolResultCache toolResultCache;
+    private final MeterRegistry registry;
+
+    // 关键词预先转为小写，英文关键词编译为按单词边界匹配的正则
+    private final List<Rule> rules;
+
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private volatile Catalog catalog;
+    // 工具列表变更通知到达后置位，下次选择工具时重新加载
+    private volatile boolean stale = true;
+
+    private final AtomicLong refreshes = new AtomicLong(0);
+    private final AtomicLong omittedBytes = new AtomicLong(0);
+    private final Map<String, Counter> selections = new ConcurrentHashMap<>();
+    private final DistributionSummary selectedTools;
+
+    public ToolCatalog(ToolSelectionProperties properties,
+                       ObjectProvider<ToolCallbackProvider> toolCallbackProviders,
+                       ToolResultCache toolResultCache,
+                       MeterRegistry registry) {
+        this.properties = properties;
+        this.toolCallbackProviders = toolCallbackProviders;
+        this.toolResultCache = toolResultCache;
+        this.registry = registry;
+        this.rules = properties.getRules().stream()
+                             .map(rule -> new Rule(rule.getKeywords().stream()
+                                                                 .filter(keyword -> !keyword.isBlank())
+                                                                 .map(ToolCatalog::keywordMatcher)
+                                                                 .toList(),
+                                     List.copyOf(rule.getTools())))
+                             .toList();
+
+        this.selectedTools = DistributionSummary.builder("ai.tool.selection.tools")
+                                     .description("每个请求携带的工具数")
+                                     .register(registry);
+        FunctionCounter.builder("ai.tool.selection.omitted", omittedBytes, Number::doubleValue)
+                .baseUnit("bytes")
+                .description("未携带的工具定义字节数")
+                .register(registry);
+        FunctionCounter.builder("ai.tool.catalog.refreshes", refreshes, Number::doubleValue)
+                .description("工具目录加载次数")
+                .register(registry);
+        Gauge.builder("ai.tool.catalog.tools", this, ToolCatalog::size)
+                .description("已注册的工具数")
+                .register(registry);
+    }
+
+    /**
+     * 为MCP客户端注册工具列表变更的监听
+     */
+    @Override
+    public void customize(String name, McpClient.SyncSpec spec) {
+        spec.toolsChangeConsumer(tools -> {
+            log.info("MCP客户端 {} 的工具列表已变更，共 {} 个工具", name, tools.size());
+            invalidate();
+        });
+    }
+
+    /**
+     * 标记目录过期，下次选择工具时重新加载
+     */
+    public void invalidate() {
+        stale = true;
+    }
+
+    /**
+     * 校验请求指定的工具都已注册
+     * @throws UnknownToolException 指定了未注册的工具
+     */
+    public void validate(ChatRequest request) {
+        if (MODE_NONE.equals(request.getTool_choice())) {
+            return;
+        }
+        Catalog current = catalog();
+        String forced = forcedTool(request.getTool_choice());
+        if (forced != null) {
+            matching(current, List.of(forced), true);
+        } else if (request.getTools() != null) {
+            matching(current, requestedTools(request), true);
+        }
+    }
+
+    /**
+     * 选择请求携带的工具
+     */
+    public ToolCallback[] select(ChatRequest request) {
+        if (MODE_NONE.equals(request.getTool_choice())) {
+            return record(catalog(), NO_TOOLS, MODE_NONE);
+        }
+        Catalog current = catalog();
+        // 工具在代理内执行并自动回传结果，tool_choice 不转发上游（强制调用会使每一轮都再次调用工具），只用来限定工具
+        String forced = forcedTool(request.getTool_choice());
+        if (forced != null) {
+            return record(current, matching(current, List.of(forced), true), MODE_EXPLICIT);
+        }
+        if (request.getTools() != null) {
+            return record(current, matching(current, requestedTools(request), true), MODE_EXPLICIT);
+        }
+        return select(current, recentUserText(request));
+    }
+
+    /**
+     * 按关键词规则为一段用户输入选择工具
+     */
+    public ToolCallback[] select(String text) {
+        return select(catalog(), text == null ? "" : text.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * 目录加载时缓存的工具定义，不在目录中时返回null
+     */
+    public ToolDefinition definition(ToolCallback callback) {
+        Catalog current = catalog;
+        return current != null ? current.definitions.get(callback) : null;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        Catalog current = catalog;
+        result.put("enabled", properties.isEnabled());
+        result.put("fallback", properties.getFallback());
+        result.put("stale", stale);
+        result.put("refreshes", refreshes.get());
+        result.put("tools", current != null ? current.callbacks.stream().map(callback -> current.name(callback)).toList() : List.of());
+        result.put("schemaBytes", current != null ? current.totalBytes : 0);
+        Map<String, Object> modes = new LinkedHashMap<>();
+        selections.forEach((mode, counter) -> modes.put(mode, (long) counter.count()));
+        result.put("selections", modes);
+        result.put("avgToolsPerRequest", selectedTools.count() == 0 ? 0.0 : selectedTools.mean());
+        result.put("omittedBytes", omittedBytes.get());
+        return result;
+    }
+
+    private ToolCallback[] select(Catalog current, String text) {
+        if (!properties.isEnabled()) {
+            return record(current, current.callbacks.toArray(ToolCallback[]::new), MODE_ALL);
+        }
+        Set<String> patterns = new LinkedHashSet<>();
+        for (Rule rule : rules) {
+            for (Predicate<String> keyword : rule.keywords) {
+                if (keyword.test(text)) {
+                    patterns.addAll(rule.tools);
+                    break;
+                }
+            }
+        }
+        if (patterns.isEmpty()) {
+            return MODE_ALL.equalsIgnoreCase(properties.getFallback())
+                           ? record(current, current.callbacks.toArray(ToolCallback[]::new), MODE_FALLBACK)
+                           : record(current, NO_TOOLS, MODE_NONE);
+        }
+        return record(current, matching(current, patterns, false), MODE_RULES);
+    }
+
+    /**
+     * 含英文字母或数字的关键词按单词边界匹配（where 不匹配 anywhere，route 不匹配 router），
+     * 其余（中文等没有单词分隔的）按包含匹配
+     */
+    private static Predicate<String> keywordMatcher(String keyword) {
+        String lower = keyword.toLowerCase(Locale.ROOT);
+        if (lower.chars().noneMatch(ch -> ch < 128 && Character.isLetterOrDigit(ch))) {
+            return text -> text.contains(lower);
+        }
+        Pattern pattern = Pattern.compile("(?<![\\p{Alnum}_])" + Pattern.quote(lower) + "(?![\\p{Alnum}_])");
+        return text -> pattern.matcher(text).find();
+    }
+
+    /**
+     * 按目录顺序返回与任一名称匹配的工具
+     * @param strict 为true时每个名称都必须至少匹配一个工具
+     */
+    private static ToolCallback[] matching(Catalog current, Collection<String> patterns, boolean strict) {
+        if (strict) {
+            for (String pattern : patterns) {
+                if (current.callbacks.stream().noneMatch(callback -> matches(current.name(callback), pattern))) {
+                    throw new UnknownToolException("Unknown tool: " + pattern);
+                }
+            }
+        }
+        return current.callbacks.stream()
+                       .filter(callback -> patterns.stream().anyMatch(pattern -> matches(current.name(callback), pattern)))
+                       .toArray(ToolCallback[]::new);
+    }
+
+    /**
+     * 完全相同或为带客户端名前缀的MCP工具名 "<前缀>_<name>"；以 * 结尾时按前缀匹配
+     */
+    private static boolean matches(String toolName, String pattern) {
+        if (pattern.endsWith("*")) {
+            String base = pattern.substring(0, pattern.length() - 1);
+            return toolName.startsWith(base) || toolName.contains("_" + base);
+        }
+        return toolName.equals(pattern) || toolName.endsWith("_" + pattern);
+    }
+
+    private static List<String> requestedTools(ChatRequest request) {
+        List<String> names = new ArrayList<>();
+        for (ChatRequest.Tool tool : request.getTools()) {
+            if (tool == null || tool.getFunction() == null || tool.getFunction().getName() == null) {
+                throw new UnknownToolException("Tool function name is required");
+            }
+            names.add(tool.getFunction().getName());
+        }
+        return names;
+    }
+
+    private static String forcedTool(Object toolChoice) {
+        if (toolChoice instanceof Map<?, ?> choice && choice.get("function") instanceof Map<?, ?> function
+                    && function.get("name") instanceof String name) {
+            return name;
+        }
+        return null;
+    }
+
+    private String recentUserText(ChatRequest request) {
+        StringBuilder text = new StringBuilder();
+        List<ChatRequest.Message> messages = request.getMessages();
+        int remaining = Math.max(1, properties.getLookbackMessages());
+        for (int i = messages.size() - 1; i >= 0 && remaining > 0; i--) {
+            ChatRequest.Message message = messages.get(i);
+            if ("user".equalsIgnoreCase(message.getRole()) && message.getContent() != null) {
+                text.append(message.getContent()).append('\n');
+                remaining--;
+            }
+        }
+        return text.toString().toLowerCase(Locale.ROOT);
+    }
+
+    private ToolCallback[] record(Catalog current, ToolCallback[] selected, String mode) {
+        selections.computeIfAbsent(mode, key -> Counter.builder("ai.tool.selection.requests")
+                                                        .tag("mode", key)
+                                                        .description("按选择方式统计的请求数")
+                                                        .register(registry))
+                .increment();
+        selectedTools.record(selected.length);
+        long bytes = 0;
+        for (ToolCallback callback : selected) {
+            bytes += current.bytes.getOrDefault(callback, 0);
+        }
+        omittedBytes.addAndGet(current.totalBytes - bytes);
+        return selected;
+    }
+
+    private int size() {
+        Catalog current = catalog;
+        return current != null ? current.callbacks.size() : 0;
+    }
+
+    private Catalog catalog() {
+        Catalog current = catalog;
+        if (current != null && !stale) {
+            return current;
+        }
+        refreshLock.lock();
+        try {
+            if (catalog == null || stale) {
+                // 先清除标记，加载期间到达的变更通知会触发下一次加载
+                stale = false;
+                try {
+                    catalog = load();
+                    refreshes.incrementAndGet();
+                } catch (RuntimeException e) {
+                    stale = true;
+                    if (catalog == null) {
+                        throw e;
+                    }
+                    log.warn("重新加载工具目录失败，继续使用已加载的工具", e);
+                }
+            }
+            return catalog;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private Catalog load() {
+        List<ToolCallback> callbacks = new ArrayList<>();
+        toolCallbackProviders.orderedStream()
+                .forEach(provider -> callbacks.addAll(List.of(toolResultCache.decorate(provider))));
+        Map<ToolCallback, ToolDefinition> definitions = new IdentityHashMap<>();
+        Map<ToolCallback, Integer> bytes = new IdentityHashMap<>();
+        long totalBytes = 0;
+        for (ToolCallback callback : callbacks) {
+            // MCP工具每次获取定义都会重新构建，只在加载时取一次
+            ToolDefinition definition = callback.getToolDefinition();
+            definitions.put(callback, definition);
+            int size = length(definition.name()) + length(definition.description()) + length(definition.inputSchema());
+            bytes.put(callback, size);
+            totalBytes += size;
+        }
+        log.info("工具目录已加载，共 {} 个工具", callbacks.size());
+        return new Catalog(List.copyOf(callbacks), definitions, bytes, totalBytes);
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private record Rule(List<Predicate<String>> keywords, List<String> tools) {
+    }
+
+    /**
+     * 一次加载的工具及其定义，加载后不再修改
+     */
+    private record Catalog(List<ToolCallback> callbacks, Map<ToolCallback, ToolDefinition> definitions,
+                           Map<ToolCallback, Integer> bytes, long totalBytes) {
+
+        String name(ToolCallback callback) {
+            return definitions.get(callback).name();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.yeelovo.ai.tool;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 工具调用执行配置
+ */
+@Data
+@ConfigurationProperties(prefix = "proxy.tool-execution")
+public class ToolExecutionProperties {
+
+    // 同一轮的多个工具调用是否并发执行，关闭时按顺序逐个执行（仍受超时限制）
+    private boolean parallel = true;
+
+    // 工具未单独配置时的超时
+    private Duration defaultTimeout = Duration.ofSeconds(30);
+
+    // 按工具配置的超时
+    private List<Tool> tools = new ArrayList<>();
+
+    @Data
+    public static class Tool {
+
+        // 工具名；MCP工具注册时带有客户端名前缀，按 "<前缀>_<name>" 后缀匹配
+        private String name;
+
+        private Duration timeout;
+    }
+}
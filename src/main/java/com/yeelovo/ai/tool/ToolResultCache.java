@@ -0,0 +1,301 @@
+package com.yeelovo.ai.tool;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.ToolCallbackProvider;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 工具调用结果缓存
+ * 对白名单中的工具（如高德MCP的地理编码、天气查询），以工具名加规范化的JSON参数为键缓存调用结果，
+ * 每个工具独立的有效期和条数上限，按LRU淘汰；调用失败（抛出异常）的结果不缓存
+ */
+@Slf4j
+@Component
+@EnableConfigurationProperties(ToolCacheProperties.class)
+public class ToolResultCache implements MeterBinder {
+
+    private final ToolCacheProperties properties;
+    private final ObjectMapper objectMapper;
+
+    // 配置的工具名 -> 缓存分区，启动时按配置建立
+    private final Map<String, Region> regions = new LinkedHashMap<>();
+
+    public ToolResultCache(ToolCacheProperties properties, ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        for (ToolCacheProperties.Tool tool : properties.getTools()) {
+            if (tool.getName() == null || tool.getName().isBlank()) {
+                continue;
+            }
+            Duration ttl = tool.getTtl() != null ? tool.getTtl() : properties.getDefaultTtl();
+            int maxEntries = tool.getMaxEntries() != null ? tool.getMaxEntries() : properties.getDefaultMaxEntries();
+            regions.put(tool.getName(), new Region(tool.getName(), ttl.toNanos(), Math.max(1, maxEntries)));
+        }
+    }
+
+    /**
+     * 取出提供者的工具，白名单中的工具用缓存装饰，其余原样返回；不是ToolCallback的旧式回调不再支持，跳过
+     */
+    public ToolCallback[] decorate(ToolCallbackProvider provider) {
+        List<ToolCallback> result = new ArrayList<>();
+        // M7的提供者接口仍声明为已弃用的 FunctionCallback[]，按Object遍历后只保留ToolCallback
+        Object[] callbacks = provider.getToolCallbacks();
+        for (Object callback : callbacks) {
+            if (!(callback instanceof ToolCallback toolCallback)) {
+                log.warn("跳过不是ToolCallback的工具回调: {}", callback.getClass().getName());
+                continue;
+            }
+            result.add(decorate(toolCallback));
+        }
+        return result.toArray(ToolCallback[]::new);
+    }
+
+    private ToolCallback decorate(ToolCallback callback) {
+        if (!properties.isEnabled() || regions.isEmpty() || callback instanceof CachingToolCallback) {
+            return callback;
+        }
+        String name = callback.getToolDefinition().name();
+        Region region = regionFor(name);
+        if (region == null) {
+            return callback;
+        }
+        log.debug("工具 {} 的结果将缓存 {} 秒", name, Duration.ofNanos(region.ttlNanos).toSeconds());
+        return new CachingToolCallback(callback, region, this);
+    }
+
+    /**
+     * 缓存键：工具名加规范化参数（对象按键排序、去掉空白、数值去掉末尾的0），
+     * 参数不是合法JSON时使用去掉首尾空白的原文
+     */
+    String key(String toolName, String arguments) {
+        StringBuilder builder = new StringBuilder(toolName).append('\n');
+        if (arguments == null || arguments.isBlank()) {
+            return builder.append("{}").toString();
+        }
+        try {
+            appendCanonical(objectMapper.readTree(arguments), builder);
+        } catch (JsonProcessingException e) {
+            builder.setLength(toolName.length() + 1);
+            builder.append(arguments.trim());
+        }
+        return builder.toString();
+    }
+
+    boolean isCacheable(String result) {
+        return result != null && weigh(result) <= properties.getMaxResultBytes();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", properties.isEnabled());
+        long hits = 0;
+        long misses = 0;
+        List<Map<String, Object>> tools = new ArrayList<>();
+        for (Region region : regions.values()) {
+            Map<String, Object> snapshot = region.snapshot();
+            hits += region.hits.get();
+            misses += region.misses.get();
+            tools.add(snapshot);
+        }
+        result.put("hits", hits);
+        result.put("misses", misses);
+        result.put("hitRatio", ratio(hits, misses));
+        result.put("tools", tools);
+        return result;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (Region region : regions.values()) {
+            FunctionCounter.builder("ai.tool.cache.requests", region.hits, AtomicLong::get)
+                    .tag("tool", region.name)
+                    .tag("result", "hit")
+                    .description("工具结果缓存查询次数")
+                    .register(registry);
+            FunctionCounter.builder("ai.tool.cache.requests", region.misses, AtomicLong::get)
+                    .tag("tool", region.name)
+                    .tag("result", "miss")
+                    .description("工具结果缓存查询次数")
+                    .register(registry);
+            FunctionCounter.builder("ai.tool.cache.evictions", region.evictions, AtomicLong::get)
+                    .tag("tool", region.name)
+                    .description("因条数上限淘汰的缓存条目数")
+                    .register(registry);
+            FunctionCounter.builder("ai.tool.cache.saved", region.savedNanos, value -> value.get() / 1e9)
+                    .tag("tool", region.name)
+                    .baseUnit("seconds")
+                    .description("命中缓存节省的工具调用耗时")
+                    .register(registry);
+            Gauge.builder("ai.tool.cache.entries", region, Region::size)
+                    .tag("tool", region.name)
+                    .description("当前缓存条数")
+                    .register(registry);
+        }
+    }
+
+    /**
+     * 按工具名匹配分区：完全相同，或为带客户端名前缀的MCP工具名 "<前缀>_<name>"
+     */
+    private Region regionFor(String toolName) {
+        Region region = regions.get(toolName);
+        if (region != null) {
+            return region;
+        }
+        for (Map.Entry<String, Region> entry : regions.entrySet()) {
+            if (toolName.endsWith("_" + entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private void appendCanonical(JsonNode node, StringBuilder builder) {
+        if (node.isObject()) {
+            List<String> names = new ArrayList<>();
+            node.fieldNames().forEachRemaining(names::add);
+            names.sort(null);
+            builder.append('{');
+            for (int i = 0; i < names.size(); i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(objectMapper.getNodeFactory().textNode(names.get(i))).append(':');
+                appendCanonical(node.get(names.get(i)), builder);
+            }
+            builder.append('}');
+        } else if (node.isArray()) {
+            builder.append('[');
+            for (int i = 0; i < node.size(); i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                appendCanonical(node.get(i), builder);
+            }
+            builder.append(']');
+        } else if (node.isNumber()) {
+            builder.append(node.decimalValue().stripTrailingZeros().toPlainString());
+        } else {
+            builder.append(node);
+        }
+    }
+
+    private static long weigh(String value) {
+        return 2L * value.length() + 64;
+    }
+
+    private static double ratio(long hits, long misses) {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    /**
+     * 单个工具的缓存分区，按访问顺序做LRU淘汰，过期条目在读取时丢弃
+     */
+    static final class Region {
+
+        private final String name;
+        private final long ttlNanos;
+        private final int maxEntries;
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        // accessOrder=true，迭代顺序即LRU顺序
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+        private final AtomicLong hits = new AtomicLong(0);
+        private final AtomicLong misses = new AtomicLong(0);
+        private final AtomicLong evictions = new AtomicLong(0);
+        private final AtomicLong savedNanos = new AtomicLong(0);
+
+        Region(String name, long ttlNanos, int maxEntries) {
+            this.name = name;
+            this.ttlNanos = ttlNanos;
+            this.maxEntries = maxEntries;
+        }
+
+        /**
+         * @return 缓存的结果，未命中返回null
+         */
+        String get(String key) {
+            long now = System.nanoTime();
+            Entry entry;
+            lock.lock();
+            try {
+                entry = entries.get(key);
+                if (entry != null && now - entry.expiresAt > 0) {
+                    entries.remove(key);
+                    entry = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            savedNanos.addAndGet(entry.callNanos);
+            return entry.result;
+        }
+
+        void put(String key, String result, long callNanos) {
+            Entry entry = new Entry(result, callNanos, System.nanoTime() + ttlNanos);
+            lock.lock();
+            try {
+                entries.put(key, entry);
+                Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+                while (entries.size() > maxEntries && it.hasNext()) {
+                    it.next();
+                    it.remove();
+                    evictions.incrementAndGet();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return entries.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Map<String, Object> snapshot() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("tool", name);
+            result.put("ttlSeconds", Duration.ofNanos(ttlNanos).toSeconds());
+            result.put("maxEntries", maxEntries);
+            result.put("entries", size());
+            result.put("hits", hits.get());
+            result.put("misses", misses.get());
+            result.put("hitRatio", ratio(hits.get(), misses.get()));
+            result.put("evictions", evictions.get());
+            result.put("latencySavedMs", savedNanos.get() / 1_000_000);
+            return result;
+        }
+    }
+
+    private record Entry(String result, long callNanos, long expiresAt) {
+    }
+}
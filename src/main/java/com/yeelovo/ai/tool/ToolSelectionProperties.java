@@ -0,0 +1,36 @@
+package com.yeelovo.ai.tool;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按请求选择工具的配置
+ */
+@Data
+@ConfigurationProperties(prefix = "proxy.tool-selection")
+public class ToolSelectionProperties {
+
+    // 请求未指定 tools / tool_choice 时按关键词规则预筛选，关闭时携带全部工具
+    private boolean enabled = true;
+
+    // 没有规则命中时：none 不携带工具（闲聊等请求不为整份工具目录付费），all 携带全部工具（需显式开启，关键词未覆盖时不丢失工具）
+    private String fallback = "none";
+
+    // 参与关键词匹配的最近用户消息数
+    private int lookbackMessages = 2;
+
+    private List<Rule> rules = new ArrayList<>();
+
+    @Data
+    public static class Rule {
+
+        // 用户消息包含任一关键词（忽略大小写）时命中，英文关键词按整词匹配
+        private List<String> keywords = new ArrayList<>();
+
+        // 命中时携带的工具；按 "<前缀>_<name>" 后缀匹配，以 * 结尾时按前缀匹配
+        private List<String> tools = new ArrayList<>();
+    }
+}
@@ -0,0 +1,11 @@
+package com.yeelovo.ai.tool;
+
+/**
+ * 请求指定的工具未在服务端注册，对应HTTP 400
+ */
+public class UnknownToolException extends RuntimeException {
+
+    public UnknownToolException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,122 @@
+package com.yeelovo.ai.upstream;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.SocketAddress;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.ToIntFunction;
+
+/**
+ * 上游连接池统计
+ * Reactor Netty 为每个上游地址创建一个连接池，创建时回调注册；指标按上游地址区分，池销毁时移除
+ */
+@Component
+public class ConnectionPoolStats implements ConnectionProvider.MeterRegistrar, MeterBinder {
+
+    private final Map<String, Pool> pools = new ConcurrentHashMap<>();
+
+    private final List<MeterRegistry> registries = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void registerMetrics(String poolName, String id, SocketAddress remoteAddress, ConnectionPoolMetrics metrics) {
+        String remote = remote(remoteAddress);
+        Pool pool = new Pool(remote, metrics);
+        Pool previous = pools.put(key(id, remote), pool);
+        if (previous != null) {
+            previous.remove();
+        }
+        registries.forEach(pool::register);
+    }
+
+    @Override
+    public void deRegisterMetrics(String poolName, String id, SocketAddress remoteAddress) {
+        Pool pool = pools.remove(key(id, remote(remoteAddress)));
+        if (pool != null) {
+            pool.remove();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        registries.add(registry);
+        pools.values().forEach(pool -> pool.register(registry));
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        pools.values().forEach(pool -> {
+            ConnectionPoolMetrics metrics = pool.metrics;
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("active", metrics.acquiredSize());
+            item.put("idle", metrics.idleSize());
+            item.put("total", metrics.allocatedSize());
+            item.put("pending", metrics.pendingAcquireSize());
+            item.put("maxConnections", metrics.maxAllocatedSize());
+            item.put("maxPending", metrics.maxPendingAcquireSize());
+            result.put(pool.remote, item);
+        });
+        return result;
+    }
+
+    private static String key(String id, String remote) {
+        return id + "|" + remote;
+    }
+
+    private static String remote(SocketAddress address) {
+        // InetSocketAddress 未解析时输出 "host/<unresolved>:port"
+        return String.valueOf(address).replace("/<unresolved>", "");
+    }
+
+    private static final class Pool {
+
+        private final String remote;
+        private final ConnectionPoolMetrics metrics;
+        // 每个指标只能从注册它的注册表移除
+        private final List<Map.Entry<MeterRegistry, Meter>> meters = new CopyOnWriteArrayList<>();
+
+        Pool(String remote, ConnectionPoolMetrics metrics) {
+            this.remote = remote;
+            this.metrics = metrics;
+        }
+
+        void register(MeterRegistry registry) {
+            add(registry, connections(registry, "active", ConnectionPoolMetrics::acquiredSize));
+            add(registry, connections(registry, "idle", ConnectionPoolMetrics::idleSize));
+            add(registry, Gauge.builder("ai.upstream.http.pending", metrics, ConnectionPoolMetrics::pendingAcquireSize)
+                               .description("等待获取连接的请求数")
+                               .tag("remote", remote)
+                               .register(registry));
+            add(registry, Gauge.builder("ai.upstream.http.connections.max", metrics, ConnectionPoolMetrics::maxAllocatedSize)
+                               .description("连接池最大连接数")
+                               .tag("remote", remote)
+                               .register(registry));
+        }
+
+        private Meter connections(MeterRegistry registry, String state, ToIntFunction<ConnectionPoolMetrics> value) {
+            return Gauge.builder("ai.upstream.http.connections", metrics, value::applyAsInt)
+                           .description("上游连接数")
+                           .tag("remote", remote)
+                           .tag("state", state)
+                           .register(registry);
+        }
+
+        private void add(MeterRegistry registry, Meter meter) {
+            meters.add(Map.entry(registry, meter));
+        }
+
+        void remove() {
+            meters.forEach(entry -> entry.getKey().remove(entry.getValue()));
+            meters.clear();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.yeelovo.ai.upstream;
+
+/**
+ * 没有上游端点服务请求的模型，对应HTTP 404
+ */
+public class UnknownModelException extends RuntimeException {
+
+    public UnknownModelException(String message) {
+        super(message);
+    }
+}
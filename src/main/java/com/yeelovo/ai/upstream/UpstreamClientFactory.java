@@ -0,0 +1,58 @@
+package com.yeelovo.ai.upstream;
+
+import io.micrometer.observation.ObservationRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.ai.retry.RetryUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+
+/**
+ * 为配置的上游端点构建ChatClient
+ * 与默认客户端共用HTTP客户端构建器、重试模板和工具调用管理器，每个端点只构建一次；工具由ToolCatalog按请求选择
+ */
+@Component
+@RequiredArgsConstructor
+public class UpstreamClientFactory {
+
+    private final ObjectProvider<RestClient.Builder> restClientBuilder;
+    private final ObjectProvider<WebClient.Builder> webClientBuilder;
+    private final ObjectProvider<RetryTemplate> retryTemplate;
+    private final ObjectProvider<ToolCallingManager> toolCallingManager;
+    private final ObjectProvider<ObservationRegistry> observationRegistry;
+
+    public ChatClient create(UpstreamProperties.Endpoint endpoint) {
+        MultiValueMap<String, String> headers = new LinkedMultiValueMap<>();
+        endpoint.getHeaders().forEach(headers::add);
+
+        OpenAiApi api = OpenAiApi.builder()
+                                .baseUrl(endpoint.getBaseUrl())
+                                .apiKey(endpoint.getApiKey() != null ? endpoint.getApiKey() : "")
+                                .completionsPath(endpoint.getCompletionsPath())
+                                .headers(headers)
+                                .restClientBuilder(restClientBuilder.getIfAvailable(RestClient::builder))
+                                .webClientBuilder(webClientBuilder.getIfAvailable(WebClient::builder))
+                                .build();
+
+        OpenAiChatModel chatModel = OpenAiChatModel.builder()
+                                            .openAiApi(api)
+                                            .defaultOptions(OpenAiChatOptions.builder().model("gpt-4o").build())
+                                            .retryTemplate(retryTemplate.getIfAvailable(() -> RetryUtils.DEFAULT_RETRY_TEMPLATE))
+                                            .toolCallingManager(toolCallingManager.getIfAvailable(() -> ToolCallingManager.builder().build()))
+                                            .observationRegistry(observationRegistry.getIfAvailable(() -> ObservationRegistry.NOOP))
+                                            .build();
+
+        ChatClient.Builder builder = ChatClient.builder(chatModel);
+        builder.defaultOptions(OpenAiChatOptions.builder().model("gpt-4o").build());
+        return builder.build();
+    }
+}
@@ -0,0 +1,181 @@
+package com.yeelovo.ai.upstream;
+
+import org.springframework.ai.chat.client.ChatClient;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 一个上游端点：缓存的ChatClient、在途请求数、延迟EWMA和摘除状态
+ * 状态只由 UpstreamRouter 修改
+ */
+public final class UpstreamEndpoint {
+
+    enum State {
+        HEALTHY, EJECTED, PROBING
+    }
+
+    private final String name;
+    private final ChatClient client;
+    private final List<String> models;
+    private final Map<String, String> modelMapping;
+    private final double weight;
+    private final String probeModel;
+
+    private final AtomicInteger outstanding = new AtomicInteger(0);
+
+    // 保护延迟EWMA的读-改-写；读取不加锁
+    private final ReentrantLock latencyLock = new ReentrantLock();
+    private volatile double latencyNanos;
+    private long lastSampleAt;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger(0);
+    private volatile State state = State.HEALTHY;
+    private volatile long ejectedUntil;
+    private int consecutiveEjections;
+    private long reinstatedAt;
+
+    private final AtomicLong requests = new AtomicLong(0);
+    private final AtomicLong failures = new AtomicLong(0);
+    private final AtomicLong slowCalls = new AtomicLong(0);
+    private final AtomicLong ejections = new AtomicLong(0);
+
+    UpstreamEndpoint(String name, ChatClient client, List<String> models, Map<String, String> modelMapping,
+                     double weight, String probeModel) {
+        this.name = name;
+        this.client = client;
+        this.models = models;
+        this.modelMapping = modelMapping;
+        this.weight = weight > 0 ? weight : 1.0;
+        this.probeModel = probeModel;
+        this.reinstatedAt = System.nanoTime();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    ChatClient getClient() {
+        return client;
+    }
+
+    String getProbeModel() {
+        return probeModel;
+    }
+
+    /**
+     * 端点是否服务该逻辑模型：未配置模型列表时服务所有模型，否则按前缀匹配
+     */
+    boolean serves(String model) {
+        if (models.isEmpty()) {
+            return true;
+        }
+        for (String prefix : models) {
+            if (model != null && model.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 逻辑模型名映射为该端点的模型名
+     */
+    String upstreamModel(String model) {
+        return model == null ? null : modelMapping.getOrDefault(model, model);
+    }
+
+    /**
+     * 选择代价：(在途数+1) × 延迟 / 权重；还没有延迟样本时使用调用方给出的估计值
+     */
+    double score(double fallbackLatency) {
+        double latency = latencyNanos > 0 ? latencyNanos : fallbackLatency;
+        return (outstanding.get() + 1) * latency / weight;
+    }
+
+    /**
+     * 按时间衰减的EWMA：距上个样本越久，新样本的权重越大
+     */
+    void recordLatency(long nanos, long now, long decayNanos) {
+        latencyLock.lock();
+        try {
+            if (latencyNanos == 0) {
+                latencyNanos = nanos;
+            } else {
+                double alpha = 1 - Math.exp(-(double) Math.max(0, now - lastSampleAt) / decayNanos);
+                latencyNanos = latencyNanos + alpha * (nanos - latencyNanos);
+            }
+            lastSampleAt = now;
+        } finally {
+            latencyLock.unlock();
+        }
+    }
+
+    double getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    AtomicInteger outstanding() {
+        return outstanding;
+    }
+
+    AtomicInteger consecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    State getState() {
+        return state;
+    }
+
+    boolean isHealthy() {
+        return state == State.HEALTHY;
+    }
+
+    long getEjectedUntil() {
+        return ejectedUntil;
+    }
+
+    /**
+     * 摘除端点，返回本次摘除时长：每次连续摘除时长翻倍，恢复后持续健康超过最长摘除时间的端点从基础时长重新计算
+     */
+    long eject(long now, long baseNanos, long maxNanos) {
+        if (state == State.HEALTHY && now - reinstatedAt > maxNanos) {
+            consecutiveEjections = 0;
+        }
+        long duration = Math.min(maxNanos, baseNanos << Math.min(consecutiveEjections, 16));
+        consecutiveEjections++;
+        ejectedUntil = now + duration;
+        state = State.EJECTED;
+        ejections.incrementAndGet();
+        return duration;
+    }
+
+    void startProbe() {
+        state = State.PROBING;
+    }
+
+    void reinstate(long now) {
+        consecutiveFailures.set(0);
+        reinstatedAt = now;
+        state = State.HEALTHY;
+    }
+
+    AtomicLong requests() {
+        return requests;
+    }
+
+    AtomicLong failures() {
+        return failures;
+    }
+
+    AtomicLong slowCalls() {
+        return slowCalls;
+    }
+
+    AtomicLong ejections() {
+        return ejections;
+    }
+}
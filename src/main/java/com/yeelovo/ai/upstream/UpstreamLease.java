@@ -0,0 +1,89 @@
+package com.yeelovo.ai.upstream;
+
+import org.springframework.ai.chat.client.ChatClient;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 一次上游调用占用的端点
+ * 流式调用以首token时间作为延迟样本，阻塞调用以总耗时作为延迟样本；
+ * 无论从完成、出错还是取消哪个回调结束，在途数都只归还一次
+ */
+public final class UpstreamLease {
+
+    private final UpstreamRouter router;
+    private final UpstreamEndpoint endpoint;
+    // 路由使用的逻辑模型，请求未指定时为默认模型
+    private final String model;
+    private final boolean streaming;
+    private final long start = System.nanoTime();
+
+    private volatile boolean firstToken;
+    private volatile boolean slow;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    UpstreamLease(UpstreamRouter router, UpstreamEndpoint endpoint, String model, boolean streaming) {
+        this.router = router;
+        this.endpoint = endpoint;
+        this.model = model;
+        this.streaming = streaming;
+    }
+
+    public ChatClient client() {
+        return endpoint.getClient();
+    }
+
+    public String endpointName() {
+        return endpoint.getName();
+    }
+
+    /**
+     * 该端点使用的模型名
+     */
+    public String model() {
+        return endpoint.upstreamModel(model);
+    }
+
+    /**
+     * 流式调用收到数据块，只有第一次调用记录首token时间
+     */
+    public void onChunk() {
+        if (!firstToken) {
+            firstToken = true;
+            slow = router.recordLatency(endpoint, System.nanoTime() - start, true);
+        }
+    }
+
+    public void success() {
+        if (released.compareAndSet(false, true)) {
+            if (!streaming || !firstToken) {
+                slow = router.recordLatency(endpoint, System.nanoTime() - start, streaming);
+            }
+            router.complete(endpoint, slow ? UpstreamRouter.Outcome.SLOW : UpstreamRouter.Outcome.SUCCESS);
+        }
+    }
+
+    /**
+     * 端点自身的失败记为一个等于慢调用阈值的延迟样本：快速失败的端点在途数始终很低，不加惩罚会吸走大部分流量
+     */
+    public void failure(Throwable error) {
+        if (released.compareAndSet(false, true)) {
+            if (!UpstreamRouter.isEndpointFault(error)) {
+                router.complete(endpoint, UpstreamRouter.Outcome.NEUTRAL);
+                return;
+            }
+            router.recordFailurePenalty(endpoint, streaming);
+            router.complete(endpoint, UpstreamRouter.Outcome.FAILURE);
+        }
+    }
+
+    /**
+     * 调用方取消：一直没有等到首token且已超过慢调用阈值时视为慢调用，其余情况不影响端点健康
+     */
+    public void cancel() {
+        if (released.compareAndSet(false, true)) {
+            boolean stalled = streaming && !firstToken && router.isSlow(System.nanoTime() - start, true);
+            router.complete(endpoint, stalled || slow ? UpstreamRouter.Outcome.SLOW : UpstreamRouter.Outcome.NEUTRAL);
+        }
+    }
+}
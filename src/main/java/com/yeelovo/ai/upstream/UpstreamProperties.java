@@ -0,0 +1,116 @@
+package com.yeelovo.ai.upstream;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 多上游路由配置
+ * 未配置 endpoints 时只使用 spring.ai.openai 对应的默认上游
+ */
+@Data
+@ConfigurationProperties(prefix = "proxy.upstream")
+public class UpstreamProperties {
+
+    // OpenAI兼容的上游端点
+    private List<Endpoint> endpoints = new ArrayList<>();
+
+    // 连续失败次数达到该值时摘除端点（慢调用也计为失败）
+    private int failureThreshold = 5;
+
+    // 流式请求首token时间超过该值计为慢调用
+    private Duration slowTtftThreshold = Duration.ofSeconds(10);
+
+    // 阻塞请求总耗时超过该值计为慢调用
+    private Duration slowCallThreshold = Duration.ofSeconds(60);
+
+    // 首次摘除时间，之后每次连续摘除翻倍
+    private Duration baseEjectionTime = Duration.ofSeconds(30);
+
+    private Duration maxEjectionTime = Duration.ofMinutes(5);
+
+    // 同时被摘除的端点占比上限（百分比），至少保留一个端点
+    private int maxEjectionPercent = 50;
+
+    // 摘除期满后先发送探测请求，成功才恢复；关闭时期满直接恢复
+    private boolean probeEnabled = true;
+
+    private Duration probeInterval = Duration.ofSeconds(5);
+
+    private Duration probeTimeout = Duration.ofSeconds(10);
+
+    // 探测请求使用的模型，端点可单独覆盖
+    private String probeModel = "gpt-4o";
+
+    // 延迟EWMA的时间常数，越小越快反映最近的延迟
+    private Duration latencyDecay = Duration.ofSeconds(10);
+
+    // 上游HTTP连接池，默认上游和所有端点共用
+    private Http http = new Http();
+
+    @Data
+    public static class Endpoint {
+
+        private String name;
+
+        private String baseUrl;
+
+        private String apiKey;
+
+        private String completionsPath = "/v1/chat/completions";
+
+        // 额外的请求头
+        private Map<String, String> headers = new LinkedHashMap<>();
+
+        // 该端点服务的逻辑模型（按前缀匹配），为空表示所有模型
+        private List<String> models = new ArrayList<>();
+
+        // 逻辑模型名到上游模型名的映射，键含"."时需写成 "[gpt-4.1]"
+        private Map<String, String> modelMapping = new HashMap<>();
+
+        // 权重，越大分到的请求越多
+        private double weight = 1.0;
+
+        private String probeModel;
+    }
+
+    @Data
+    public static class Http {
+
+        // 每个上游主机的最大连接数；HTTP/2 下每个连接可复用多个流
+        private int maxConnections = 500;
+
+        // 等待空闲连接的最大请求数，小于0时为 maxConnections 的两倍
+        private int pendingAcquireMaxCount = -1;
+
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(10);
+
+        // 空闲超过该时间的连接被关闭，应小于上游或负载均衡器的空闲超时
+        private Duration maxIdleTime = Duration.ofSeconds(60);
+
+        // 连接的最长存活时间，定期重建连接以跟随上游DNS变化
+        private Duration maxLifeTime = Duration.ofMinutes(10);
+
+        // 后台清理空闲和过期连接的间隔，为0时只在获取连接时检查
+        private Duration evictInBackground = Duration.ofSeconds(30);
+
+        private Duration connectTimeout = Duration.ofSeconds(5);
+
+        // 发出请求后两次读之间的最长间隔（包括等待响应头）；阻塞调用在回复生成完之前上游不返回任何数据
+        private Duration responseTimeout = Duration.ofMinutes(5);
+
+        private boolean tcpKeepAlive = true;
+
+        // 开启后HTTPS上游通过ALPN协商HTTP/2，不支持时回退到HTTP/1.1；明文HTTP上游始终使用HTTP/1.1
+        private boolean http2 = false;
+
+        // 连接时间、TLS握手时间、DNS解析时间等 reactor.netty.http.client.* 指标
+        private boolean metrics = true;
+    }
+}
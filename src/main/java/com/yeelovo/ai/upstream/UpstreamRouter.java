@@ -0,0 +1,368 @@
+package com.yeelovo.ai.upstream;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 多上游路由
+ * 在服务该模型的健康端点中选择 (在途数+1)×延迟EWMA/权重 最小的端点；
+ * 连续失败或慢调用达到阈值时被动摘除，摘除期满后由后台探测请求确认恢复。
+ * 所有端点都被摘除时退化为在全部端点中选择，不拒绝请求
+ */
+@Slf4j
+@Component
+@EnableConfigurationProperties(UpstreamProperties.class)
+public class UpstreamRouter implements MeterBinder {
+
+    enum Outcome {
+        SUCCESS, SLOW, FAILURE, NEUTRAL
+    }
+
+    private final UpstreamProperties properties;
+
+    private final List<UpstreamEndpoint> endpoints;
+
+    // 请求未指定模型时按默认上游配置的模型路由
+    private final String defaultModel;
+
+    // 串行化摘除和恢复，保证摘除比例上限
+    private final ReentrantLock ejectionLock = new ReentrantLock();
+
+    private final ScheduledExecutorService prober;
+
+    private final AtomicLong panicSelections = new AtomicLong(0);
+
+    public UpstreamRouter(UpstreamProperties properties,
+                          @Qualifier("openAiChatClient") ChatClient defaultClient,
+                          UpstreamClientFactory clientFactory,
+                          @Value("${spring.ai.openai.chat.options.model:}") String defaultModel) {
+        this.properties = properties;
+        this.defaultModel = defaultModel.isBlank() ? null : defaultModel;
+        this.endpoints = createEndpoints(properties, defaultClient, clientFactory);
+
+        this.prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "upstream-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getProbeInterval().toMillis();
+        prober.scheduleWithFixedDelay(this::probeQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("上游端点: {}", endpoints.stream().map(UpstreamEndpoint::getName).toList());
+    }
+
+    /**
+     * 为一次调用选择端点，在途数立即加一
+     * @param streaming 流式调用以首token时间作为延迟样本
+     * @throws UnknownModelException 没有端点服务该模型
+     */
+    public UpstreamLease acquire(String model, boolean streaming) {
+        String resolved = resolveModel(model);
+        UpstreamEndpoint endpoint = select(resolved);
+        endpoint.outstanding().incrementAndGet();
+        endpoint.requests().incrementAndGet();
+        return new UpstreamLease(this, endpoint, resolved, streaming);
+    }
+
+    /**
+     * 在占用准入名额前校验模型：未指定时使用默认模型，没有端点服务该模型时抛出，由全局异常处理返回404
+     */
+    public void validate(String model) {
+        String resolved = resolveModel(model);
+        if (endpoints.stream().noneMatch(endpoint -> endpoint.serves(resolved))) {
+            throw unknownModel(resolved);
+        }
+    }
+
+    private String resolveModel(String model) {
+        return model != null && !model.isBlank() ? model : defaultModel;
+    }
+
+    private static UnknownModelException unknownModel(String model) {
+        return new UnknownModelException(model == null ? "请求未指定模型且没有配置默认模型" : "没有服务模型 " + model + " 的上游端点");
+    }
+
+    private UpstreamEndpoint select(String model) {
+        // 没有延迟样本的端点按已知最快的端点估计，使其尽快获得样本
+        double fallback = Double.MAX_VALUE;
+        boolean anyServing = false;
+        for (UpstreamEndpoint endpoint : endpoints) {
+            if (endpoint.serves(model)) {
+                anyServing = true;
+                double latency = endpoint.getLatencyNanos();
+                if (latency > 0 && latency < fallback) {
+                    fallback = latency;
+                }
+            }
+        }
+        if (!anyServing) {
+            throw unknownModel(model);
+        }
+        if (fallback == Double.MAX_VALUE) {
+            fallback = 1.0;
+        }
+
+        UpstreamEndpoint best = pick(model, fallback, true);
+        if (best == null) {
+            panicSelections.incrementAndGet();
+            best = pick(model, fallback, false);
+        }
+        return best;
+    }
+
+    private UpstreamEndpoint pick(String model, double fallback, boolean healthyOnly) {
+        UpstreamEndpoint best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (UpstreamEndpoint endpoint : endpoints) {
+            if (!endpoint.serves(model) || (healthyOnly && !endpoint.isHealthy())) {
+                continue;
+            }
+            double score = endpoint.score(fallback);
+            // 代价相同时随机选择，避免总是落在列表靠前的端点
+            if (best == null || score < bestScore || (score == bestScore && ThreadLocalRandom.current().nextBoolean())) {
+                best = endpoint;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 记录延迟样本，返回是否为慢调用
+     */
+    boolean recordLatency(UpstreamEndpoint endpoint, long nanos, boolean firstToken) {
+        endpoint.recordLatency(nanos, System.nanoTime(), properties.getLatencyDecay().toNanos());
+        return isSlow(nanos, firstToken);
+    }
+
+    void recordFailurePenalty(UpstreamEndpoint endpoint, boolean firstToken) {
+        long penalty = (firstToken ? properties.getSlowTtftThreshold() : properties.getSlowCallThreshold()).toNanos();
+        endpoint.recordLatency(Math.max(penalty, (long) endpoint.getLatencyNanos()), System.nanoTime(),
+                properties.getLatencyDecay().toNanos());
+    }
+
+    boolean isSlow(long nanos, boolean firstToken) {
+        long threshold = (firstToken ? properties.getSlowTtftThreshold() : properties.getSlowCallThreshold()).toNanos();
+        return threshold > 0 && nanos > threshold;
+    }
+
+    void complete(UpstreamEndpoint endpoint, Outcome outcome) {
+        endpoint.outstanding().decrementAndGet();
+        switch (outcome) {
+            case SUCCESS -> endpoint.consecutiveFailures().set(0);
+            case SLOW, FAILURE -> {
+                (outcome == Outcome.SLOW ? endpoint.slowCalls() : endpoint.failures()).incrementAndGet();
+                if (endpoint.consecutiveFailures().incrementAndGet() >= properties.getFailureThreshold()) {
+                    eject(endpoint, outcome == Outcome.SLOW ? "连续慢调用" : "连续失败");
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * 只有端点自身的问题计为失败：网络错误、超时、5xx、408和429；其他4xx是请求本身的问题
+     */
+    static boolean isEndpointFault(Throwable error) {
+        if (error instanceof WebClientResponseException e) {
+            int status = e.getStatusCode().value();
+            return status >= 500 || status == 408 || status == 429;
+        }
+        if (error instanceof NonTransientAiException) {
+            // 阻塞调用的4xx被转换为NonTransientAiException，消息以状态码开头
+            String message = String.valueOf(error.getMessage());
+            return message.startsWith("408") || message.startsWith("429");
+        }
+        return true;
+    }
+
+    private void eject(UpstreamEndpoint endpoint, String reason) {
+        ejectionLock.lock();
+        try {
+            if (!endpoint.isHealthy()) {
+                return;
+            }
+            long ejected = endpoints.stream().filter(e -> !e.isHealthy()).count();
+            long maxEjected = Math.min(endpoints.size() - 1L, endpoints.size() * (long) properties.getMaxEjectionPercent() / 100);
+            if (ejected >= maxEjected) {
+                log.warn("上游端点 {} {}，已达摘除比例上限，保留", endpoint.getName(), reason);
+                return;
+            }
+            long duration = endpoint.eject(System.nanoTime(), properties.getBaseEjectionTime().toNanos(),
+                    properties.getMaxEjectionTime().toNanos());
+            log.warn("上游端点 {} {}，摘除 {} 秒", endpoint.getName(), reason, TimeUnit.NANOSECONDS.toSeconds(duration));
+        } finally {
+            ejectionLock.unlock();
+        }
+    }
+
+    /**
+     * 摘除期满的端点：开启探测时发送一个 max_tokens=1 的请求，成功才恢复，失败则以加倍时长再次摘除
+     */
+    private void probe() {
+        long now = System.nanoTime();
+        for (UpstreamEndpoint endpoint : endpoints) {
+            if (endpoint.getState() != UpstreamEndpoint.State.EJECTED || now - endpoint.getEjectedUntil() < 0) {
+                continue;
+            }
+            if (!properties.isProbeEnabled()) {
+                reinstate(endpoint);
+                continue;
+            }
+            endpoint.startProbe();
+            String model = endpoint.getProbeModel() != null ? endpoint.getProbeModel() : properties.getProbeModel();
+            endpoint.getClient().prompt()
+                    .user("ping")
+                    .options(OpenAiChatOptions.builder().model(endpoint.upstreamModel(model)).maxTokens(1).build())
+                    .stream()
+                    .content()
+                    .then()
+                    .timeout(properties.getProbeTimeout())
+                    .subscribe(null,
+                            error -> {
+                                log.warn("上游端点 {} 探测失败: {}", endpoint.getName(), error.getMessage());
+                                reEject(endpoint);
+                            },
+                            () -> reinstate(endpoint));
+        }
+    }
+
+    private void probeQuietly() {
+        try {
+            probe();
+        } catch (Exception e) {
+            log.error("上游探测失败", e);
+        }
+    }
+
+    private void reinstate(UpstreamEndpoint endpoint) {
+        ejectionLock.lock();
+        try {
+            endpoint.reinstate(System.nanoTime());
+        } finally {
+            ejectionLock.unlock();
+        }
+        log.info("上游端点 {} 已恢复", endpoint.getName());
+    }
+
+    private void reEject(UpstreamEndpoint endpoint) {
+        ejectionLock.lock();
+        try {
+            endpoint.eject(System.nanoTime(), properties.getBaseEjectionTime().toNanos(),
+                    properties.getMaxEjectionTime().toNanos());
+        } finally {
+            ejectionLock.unlock();
+        }
+    }
+
+    public List<UpstreamEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public Map<String, Object> snapshot() {
+        List<Map<String, Object>> list = new ArrayList<>();
+        long now = System.nanoTime();
+        for (UpstreamEndpoint endpoint : endpoints) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("name", endpoint.getName());
+            item.put("state", endpoint.getState());
+            item.put("outstanding", endpoint.outstanding().get());
+            item.put("latencyMs", Math.round(endpoint.getLatencyNanos() / 1_000) / 1_000.0);
+            item.put("requests", endpoint.requests().get());
+            item.put("failures", endpoint.failures().get());
+            item.put("slowCalls", endpoint.slowCalls().get());
+            item.put("consecutiveFailures", endpoint.consecutiveFailures().get());
+            item.put("ejections", endpoint.ejections().get());
+            if (endpoint.getState() == UpstreamEndpoint.State.EJECTED) {
+                item.put("ejectedForSeconds", Math.max(0, TimeUnit.NANOSECONDS.toSeconds(endpoint.getEjectedUntil() - now)));
+            }
+            list.add(item);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("endpoints", list);
+        result.put("panicSelections", panicSelections.get());
+        return result;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (UpstreamEndpoint endpoint : endpoints) {
+            String name = endpoint.getName();
+            Gauge.builder("ai.upstream.outstanding", endpoint, e -> e.outstanding().get())
+                    .description("上游端点在途请求数")
+                    .tag("endpoint", name)
+                    .register(registry);
+            Gauge.builder("ai.upstream.latency", endpoint, e -> e.getLatencyNanos() / 1_000_000_000.0)
+                    .description("上游端点延迟EWMA（流式为首token时间）")
+                    .baseUnit("seconds")
+                    .tag("endpoint", name)
+                    .register(registry);
+            Gauge.builder("ai.upstream.ejected", endpoint, e -> e.isHealthy() ? 0 : 1)
+                    .description("上游端点是否被摘除")
+                    .tag("endpoint", name)
+                    .register(registry);
+            FunctionCounter.builder("ai.upstream.requests", endpoint, e -> e.requests().get())
+                    .tag("endpoint", name)
+                    .register(registry);
+            FunctionCounter.builder("ai.upstream.failures", endpoint, e -> e.failures().get())
+                    .tag("endpoint", name)
+                    .register(registry);
+            FunctionCounter.builder("ai.upstream.slow", endpoint, e -> e.slowCalls().get())
+                    .tag("endpoint", name)
+                    .register(registry);
+            FunctionCounter.builder("ai.upstream.ejections", endpoint, e -> e.ejections().get())
+                    .tag("endpoint", name)
+                    .register(registry);
+        }
+        FunctionCounter.builder("ai.upstream.panic", panicSelections, AtomicLong::get)
+                .description("所有端点都被摘除时的兜底选择次数")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prober.shutdownNow();
+    }
+
+    private static List<UpstreamEndpoint> createEndpoints(UpstreamProperties properties, ChatClient defaultClient,
+                                                          UpstreamClientFactory clientFactory) {
+        List<UpstreamEndpoint> result = new ArrayList<>();
+        if (properties.getEndpoints().isEmpty()) {
+            // 未配置端点时沿用 spring.ai.openai 的默认客户端
+            result.add(new UpstreamEndpoint("default", defaultClient, List.of(), Map.of(), 1.0, null));
+            return List.copyOf(result);
+        }
+        for (UpstreamProperties.Endpoint config : properties.getEndpoints()) {
+            if (config.getBaseUrl() == null || config.getBaseUrl().isBlank()) {
+                throw new IllegalArgumentException("上游端点缺少 base-url: " + config.getName());
+            }
+            String name = config.getName() != null ? config.getName() : config.getBaseUrl();
+            result.add(new UpstreamEndpoint(name, clientFactory.create(config), List.copyOf(config.getModels()),
+                    Map.copyOf(config.getModelMapping()), config.getWeight(), config.getProbeModel()));
+        }
+        return List.copyOf(result);
+    }
+}
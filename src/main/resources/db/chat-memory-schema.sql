@@ -0,0 +1,15 @@
+CREATE TABLE IF NOT EXISTS chat_memory_message
+(
+    id              BIGINT AUTO_INCREMENT PRIMARY KEY,
+    conversation_id VARCHAR(128) NOT NULL,
+    message_type    VARCHAR(16)  NOT NULL,
+    content         MEDIUMTEXT,
+    created_at      TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    write_seq       BIGINT
+);
+
+CREATE INDEX idx_chat_memory_conversation ON chat_memory_message (conversation_id, id);
+
+-- 升级已有的表：content 由 TEXT（64KB）改为 MEDIUMTEXT，增加写入序号；已是新结构时报错并被忽略
+ALTER TABLE chat_memory_message MODIFY content MEDIUMTEXT;
+ALTER TABLE chat_memory_message ADD COLUMN write_seq BIGINT;
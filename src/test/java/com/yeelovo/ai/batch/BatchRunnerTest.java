@@ -0,0 +1,176 @@
+package com.yeelovo.ai.batch;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.yeelovo.ai.model.openai.ChatRequest;
+import com.yeelovo.ai.model.openai.ChatResponse;
+import com.yeelovo.ai.service.OpenAiCompatibleService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * BatchRunner 中途停止、写入失败后续跑：每行恰好请求一次（写入失败的行除外）且恰好写入一条结果
+ */
+class BatchRunnerTest {
+
+    private static final int LINES = 40;
+    private static final int CONCURRENCY = 4;
+    private static final int STOP_AFTER = 10;
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Integer, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private final AtomicInteger active = new AtomicInteger(0);
+    private final AtomicInteger calls = new AtomicInteger(0);
+    // 第 STOP_AFTER 个请求开始时停止该批次，不依赖测试线程的调度时机
+    private volatile BatchJob stopTarget;
+    private final BatchProperties properties = new BatchProperties();
+
+    private ExecutorService batchExecutor;
+    private OpenAiCompatibleService service;
+    private Path input;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        batchExecutor = Executors.newFixedThreadPool(CONCURRENCY);
+        input = directory.resolve("input.jsonl");
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < LINES; i++) {
+            lines.add("{\"custom_id\":\"req-" + i + "\",\"body\":{\"model\":\"test\",\"messages\":[{\"role\":\"user\",\"content\":\"" + i + "\"}]}}");
+        }
+        Files.write(input, lines);
+
+        service = mock(OpenAiCompatibleService.class);
+        when(service.chat(any())).thenAnswer(invocation -> {
+            ChatRequest request = invocation.getArgument(0);
+            int line = Integer.parseInt(request.getMessages().get(0).getContent());
+            requests.computeIfAbsent(line, k -> new AtomicInteger()).incrementAndGet();
+            active.incrementAndGet();
+            BatchJob target = stopTarget;
+            if (calls.incrementAndGet() == STOP_AFTER && target != null) {
+                target.requestStop();
+            }
+            try {
+                Thread.sleep(30);
+            } finally {
+                active.decrementAndGet();
+            }
+            return ChatResponse.builder().model("test").build();
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        batchExecutor.shutdownNow();
+    }
+
+    @Test
+    void stoppedBatchResumesWithoutRepeatingOrLosingLines() throws Exception {
+        BatchJob first = newJob();
+        stopTarget = first;
+        start(new BatchRunner(first, service, objectMapper, properties, batchExecutor));
+
+        assertThat(first.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(first.getStatus()).isEqualTo(BatchJob.Status.STOPPED);
+        assertThat(active.get()).isZero();
+        assertThat(results()).hasSizeBetween(STOP_AFTER, STOP_AFTER + CONCURRENCY);
+        stopTarget = null;
+
+        BatchJob resumed = newJob();
+        start(new BatchRunner(resumed, service, objectMapper, properties, batchExecutor));
+        assertThat(resumed.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(resumed.getStatus()).isEqualTo(BatchJob.Status.COMPLETED);
+
+        assertEveryLineWrittenOnce();
+        assertThat(requests).hasSize(LINES);
+        assertThat(requests.values()).allMatch(count -> count.get() == 1);
+    }
+
+    @Test
+    void writeFailureWaitsForInFlightRequestsBeforeFailing() throws Exception {
+        int failingLine = 12;
+        ObjectMapper failingMapper = new ObjectMapper() {
+            @Override
+            public byte[] writeValueAsBytes(Object value) throws JsonProcessingException {
+                if (value instanceof ObjectNode record && record.path("line").asInt(-1) == failingLine) {
+                    throw new JsonProcessingException("disk full") {
+                    };
+                }
+                return super.writeValueAsBytes(value);
+            }
+        };
+        BatchJob first = newJob();
+        start(new BatchRunner(first, service, failingMapper, properties, batchExecutor));
+
+        // 批次结束时其余在途请求都已结束，结果已写入
+        assertThat(first.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(first.getStatus()).isEqualTo(BatchJob.Status.FAILED);
+        assertThat(active.get()).isZero();
+        assertThat(first.getInFlight()).isZero();
+        assertThat(results()).doesNotContainKey((long) failingLine);
+
+        BatchJob resumed = newJob();
+        start(new BatchRunner(resumed, service, objectMapper, properties, batchExecutor));
+        assertThat(resumed.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(resumed.getStatus()).isEqualTo(BatchJob.Status.COMPLETED);
+
+        assertEveryLineWrittenOnce();
+        // 只有写入失败的行重新请求
+        requests.forEach((line, count) -> assertThat(count.get()).as("line %d", line).isEqualTo(line == failingLine ? 2 : 1));
+        assertThat(requests).hasSize(LINES);
+    }
+
+    private BatchJob newJob() {
+        return new BatchJob("test", input, directory.resolve("output.jsonl"), directory.resolve("checkpoint.json"),
+                CONCURRENCY, 0, null);
+    }
+
+    private static void start(BatchRunner runner) {
+        Thread thread = new Thread(runner, "batch-test");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 输出文件中每个行号的记录数
+     */
+    private Map<Long, Integer> results() throws IOException {
+        Map<Long, Integer> counts = new TreeMap<>();
+        for (String line : Files.readAllLines(directory.resolve("output.jsonl"))) {
+            JsonNode record = objectMapper.readTree(line);
+            assertThat(record.path("error").isNull()).isTrue();
+            counts.merge(record.get("line").asLong(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    private void assertEveryLineWrittenOnce() throws IOException {
+        Map<Long, Integer> counts = results();
+        assertThat(counts).hasSize(LINES);
+        assertThat(counts.values()).allMatch(count -> count == 1);
+    }
+}
@@ -0,0 +1,35 @@
+package com.yeelovo.ai.memory;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * BoundedChatMemory 的空闲TTL：过期会话即使期间没有写入也不再返回
+ */
+class BoundedChatMemoryTest {
+
+    @Test
+    void expiredConversationIsMissWithoutInterveningWrite() throws InterruptedException {
+        ChatMemoryProperties properties = new ChatMemoryProperties();
+        properties.setIdleTtl(Duration.ofMillis(50));
+        BoundedChatMemory memory = new BoundedChatMemory(properties);
+        memory.add("c1", List.of(new UserMessage("你好")));
+        assertThat(memory.contains("c1")).isTrue();
+        assertThat(memory.get("c1", 10)).hasSize(1);
+
+        Thread.sleep(100);
+
+        assertThat(memory.contains("c1")).isFalse();
+        assertThat(memory.get("c1", 10)).isEmpty();
+        assertThat(memory.snapshot())
+                .containsEntry("conversations", 0)
+                .containsEntry("tokens", 0L)
+                .containsEntry("ttlEvictions", 1L)
+                .containsEntry("misses", 1L);
+    }
+}
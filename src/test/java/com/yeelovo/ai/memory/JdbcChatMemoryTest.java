@@ -0,0 +1,153 @@
+package com.yeelovo.ai.memory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * JdbcChatMemory 在H2上的懒加载、批量写入和淘汰后重新加载
+ */
+class JdbcChatMemoryTest {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private final List<JdbcChatMemory> memories = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                           .setType(EmbeddedDatabaseType.H2)
+                           .generateUniqueName(true)
+                           .build();
+        jdbcTemplate = new JdbcTemplate(database);
+    }
+
+    @AfterEach
+    void tearDown() {
+        memories.forEach(JdbcChatMemory::close);
+        database.shutdown();
+    }
+
+    @Test
+    void flushWritesRowsAndColdLoadReadsThem() {
+        JdbcChatMemory memory = newMemory(10);
+        memory.add("c1", List.of(new UserMessage("你好"), new AssistantMessage("你好，有什么可以帮你？")));
+        assertThat(rowCount("c1")).isZero();
+
+        memory.flush();
+        assertThat(rowCount("c1")).isEqualTo(2);
+
+        // 新实例的热数据层为空，首次访问从数据库加载
+        JdbcChatMemory restarted = newMemory(10);
+        assertThat(texts(restarted.get("c1", 10))).containsExactly("你好", "你好，有什么可以帮你？");
+        assertThat(restarted.snapshot()).containsEntry("coldLoads", 1L);
+    }
+
+    @Test
+    void evictedConversationReloadsPendingRowsExactlyOnce() {
+        JdbcChatMemory memory = newMemory(1);
+        memory.add("c1", List.of(new UserMessage("first")));
+        memory.flush();
+        memory.add("c1", List.of(new UserMessage("second")));
+        // 只保留一个会话，c1 被淘汰时 second 仍在缓冲中
+        memory.add("c2", List.of(new UserMessage("other")));
+
+        assertThat(texts(memory.get("c1", 10))).containsExactly("first", "second");
+
+        memory.flush();
+        memory.add("c2", List.of(new UserMessage("other again")));
+        assertThat(texts(memory.get("c1", 10))).containsExactly("first", "second");
+        assertThat(rowCount("c1")).isEqualTo(2);
+    }
+
+    @Test
+    void clearDeletesAfterBufferedRows() {
+        JdbcChatMemory memory = newMemory(10);
+        memory.add("c1", List.of(new UserMessage("first")));
+        memory.clear("c1");
+        assertThat(memory.get("c1", 10)).isEmpty();
+
+        memory.add("c1", List.of(new UserMessage("after clear")));
+        memory.flush();
+        assertThat(rowCount("c1")).isEqualTo(1);
+        assertThat(texts(newMemory(10).get("c1", 10))).containsExactly("after clear");
+    }
+
+    @Test
+    void failedWritesAreRetriedAndFailedLoadsAreNotCached() {
+        JdbcChatMemory memory = newMemory(1);
+        jdbcTemplate.execute("ALTER TABLE chat_memory_message RENAME TO chat_memory_message_bak");
+
+        memory.add("c1", List.of(new UserMessage("kept")));
+        memory.flush();
+        // 表不可用时加载失败，本次不带历史，也不缓存空历史
+        assertThat(memory.get("c1", 10)).isEmpty();
+        assertThat(memory.snapshot()).containsEntry("conversations", 0).containsEntry("loadFailures", 2L);
+
+        jdbcTemplate.execute("ALTER TABLE chat_memory_message_bak RENAME TO chat_memory_message");
+        memory.flush();
+        assertThat(rowCount("c1")).isEqualTo(1);
+        assertThat(memory.snapshot()).containsEntry("droppedRows", 0L);
+        assertThat(texts(memory.get("c1", 10))).containsExactly("kept");
+    }
+
+    @Test
+    void rowThatCannotBeWrittenIsDroppedWithoutLosingTheRestOfTheBatch() {
+        JdbcChatMemory memory = newMemory(10);
+        String tooLong = "x".repeat(JdbcChatMemory.MAX_CONVERSATION_ID_LENGTH + 1);
+        memory.add("c1", List.of(new UserMessage("first")));
+        memory.add(tooLong, List.of(new UserMessage("bad")));
+        memory.add("c2", List.of(new UserMessage("other")));
+        memory.add("c1", List.of(new UserMessage("second")));
+
+        memory.flush();
+
+        assertThat(rowCount("c1")).isEqualTo(2);
+        assertThat(rowCount("c2")).isEqualTo(1);
+        assertThat(memory.snapshot()).containsEntry("droppedRows", 1L).containsEntry("pendingRows", 0);
+        assertThat(texts(newMemory(10).get("c1", 10))).containsExactly("first", "second");
+    }
+
+    @Test
+    void rowsWrittenBeforeWriteSeqExistAreLoadedFirst() {
+        JdbcChatMemory memory = newMemory(10);
+        jdbcTemplate.update("INSERT INTO chat_memory_message (conversation_id, message_type, content) VALUES (?, ?, ?)",
+                "c1", "user", "legacy");
+        memory.add("c1", List.of(new UserMessage("new")));
+        memory.flush();
+
+        assertThat(texts(newMemory(10).get("c1", 10))).containsExactly("legacy", "new");
+    }
+
+    private JdbcChatMemory newMemory(int maxConversations) {
+        ChatMemoryProperties properties = new ChatMemoryProperties();
+        properties.setMaxConversations(maxConversations);
+        properties.getJdbc().setFlushInterval(Duration.ofHours(1));
+        JdbcChatMemory memory = new JdbcChatMemory(new BoundedChatMemory(properties), jdbcTemplate, properties);
+        memories.add(memory);
+        return memory;
+    }
+
+    private int rowCount(String conversationId) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM chat_memory_message WHERE conversation_id = ?", Integer.class, conversationId);
+        return count == null ? 0 : count;
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+}